@@ -0,0 +1,76 @@
+package org.es.ngram.benchmark;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.es.ngram.index.analysis.EdgeNGramAnalyzer;
+import org.es.ngram.index.analysis.NGramAnalyzer;
+import org.es.ngram.index.analysis.STConvertType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author yida
+ * @package org.es.ngram.benchmark
+ * @date 2024-06-22 17:20
+ * @description The full ngram-analyzer and edge-ngram-analyzer chains, as used at index time.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AnalyzerBenchmark {
+	private static final String FIELD_NAME = "text";
+
+	@Param({"2"})
+	public int minGram;
+
+	@Param({"3", "20", "100"})
+	public int maxGram;
+
+	@Param({"64", "1024", "16384"})
+	public int textLength;
+
+	@Param({"LATIN", "SIMPLIFIED", "TRADITIONAL", "SUPPLEMENTARY"})
+	public BenchmarkTexts.Script script;
+
+	private String text;
+	private Analyzer nGramAnalyzer;
+	private Analyzer edgeNGramAnalyzer;
+
+	@Setup
+	public void setup() {
+		text = BenchmarkTexts.text(script, textLength);
+		nGramAnalyzer = new NGramAnalyzer(minGram, maxGram, false, STConvertType.TRADITIONAL_2_SIMPLE);
+		edgeNGramAnalyzer = new EdgeNGramAnalyzer(minGram, maxGram, false, STConvertType.TRADITIONAL_2_SIMPLE);
+	}
+
+	@TearDown
+	public void tearDown() {
+		nGramAnalyzer.close();
+		edgeNGramAnalyzer.close();
+	}
+
+	@Benchmark
+	public int nGramAnalyzer(TokenCounter counter) throws IOException {
+		return counter.consume(nGramAnalyzer.tokenStream(FIELD_NAME, text));
+	}
+
+	@Benchmark
+	public int edgeNGramAnalyzer(TokenCounter counter) throws IOException {
+		return counter.consume(edgeNGramAnalyzer.tokenStream(FIELD_NAME, text));
+	}
+}
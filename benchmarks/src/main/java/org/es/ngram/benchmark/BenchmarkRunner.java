@@ -0,0 +1,30 @@
+package org.es.ngram.benchmark;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+
+/**
+ * @author yida
+ * @package org.es.ngram.benchmark
+ * @date 2024-06-22 15:12
+ * @description Entry point of benchmarks.jar. Accepts the usual JMH command line and always
+ * adds the GC profiler, so every result carries gc.alloc.rate.norm (bytes allocated per op).
+ */
+public class BenchmarkRunner {
+	public static void main(String[] args) throws Exception {
+		if (Arrays.asList(args).contains("-h") || Arrays.asList(args).contains("-l")) {
+			Main.main(args);
+			return;
+		}
+		CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+		new Runner(new OptionsBuilder()
+				.parent(commandLineOptions)
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
@@ -0,0 +1,129 @@
+package org.es.ngram.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * @author yida
+ * @package org.es.ngram.benchmark
+ * @date 2024-06-22 14:03
+ * @description Deterministic benchmark input for the different scripts the plugin has to handle.
+ */
+public final class BenchmarkTexts {
+	private static final long SEED = 0x5EEDL;
+	private static final int MAX_WORD_LENGTH = 8;
+
+	public enum Script {
+		/** lower and upper case ASCII letters and digits */
+		LATIN,
+		/** simplified Chinese, taken from the values of t2s.properties */
+		SIMPLIFIED,
+		/** traditional Chinese, taken from the keys of t2s.properties */
+		TRADITIONAL,
+		/** CJK Unified Ideographs Extension B, i.e. surrogate pairs */
+		SUPPLEMENTARY
+	}
+
+	private static int[] simplified;
+	private static int[] traditional;
+
+	private BenchmarkTexts() {
+	}
+
+	/**
+	 * Builds whitespace separated words of 1 to {@value #MAX_WORD_LENGTH} code points until the
+	 * text is {@code length} chars long.
+	 */
+	public static String text(Script script, int length) {
+		Random random = new Random(SEED + script.ordinal());
+		int[] alphabet = alphabet(script);
+		StringBuilder builder = new StringBuilder(length + 2 * MAX_WORD_LENGTH);
+		while (builder.length() < length) {
+			if (builder.length() > 0) {
+				builder.append(' ');
+			}
+			int wordLength = 1 + random.nextInt(MAX_WORD_LENGTH);
+			for (int i = 0; i < wordLength; i++) {
+				builder.appendCodePoint(alphabet[random.nextInt(alphabet.length)]);
+			}
+		}
+		builder.setLength(length);
+		if (Character.isHighSurrogate(builder.charAt(length - 1))) {
+			builder.setCharAt(length - 1, ' ');
+		}
+		return builder.toString();
+	}
+
+	private static synchronized int[] alphabet(Script script) {
+		switch (script) {
+			case LATIN:
+				return codePoints("abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789");
+			case SIMPLIFIED:
+				if (simplified == null) {
+					loadT2S();
+				}
+				return simplified;
+			case TRADITIONAL:
+				if (traditional == null) {
+					loadT2S();
+				}
+				return traditional;
+			case SUPPLEMENTARY:
+				int[] supplementary = new int[0x2A6DF - 0x20000 + 1];
+				for (int i = 0; i < supplementary.length; i++) {
+					supplementary[i] = 0x20000 + i;
+				}
+				return supplementary;
+			default:
+				throw new IllegalArgumentException("Unknown script: " + script);
+		}
+	}
+
+	private static void loadT2S() {
+		Properties properties = new Properties();
+		try (InputStream in = BenchmarkTexts.class.getResourceAsStream("/t2s.properties");
+			 Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot load t2s.properties", e);
+		}
+		TreeSet<Integer> keys = new TreeSet<>();
+		TreeSet<Integer> values = new TreeSet<>();
+		for (String key : properties.stringPropertyNames()) {
+			addIdeographs(key, keys);
+			addIdeographs(properties.getProperty(key), values);
+		}
+		values.removeAll(keys);
+		traditional = toArray(keys);
+		simplified = toArray(values);
+	}
+
+	private static void addIdeographs(String s, TreeSet<Integer> target) {
+		for (int i = 0; i < s.length(); ) {
+			int cp = s.codePointAt(i);
+			if (Character.isIdeographic(cp)) {
+				target.add(cp);
+			}
+			i += Character.charCount(cp);
+		}
+	}
+
+	private static int[] codePoints(String s) {
+		return s.codePoints().toArray();
+	}
+
+	private static int[] toArray(TreeSet<Integer> set) {
+		int[] array = new int[set.size()];
+		int i = 0;
+		for (Integer cp : set) {
+			array[i++] = cp;
+		}
+		return array;
+	}
+}
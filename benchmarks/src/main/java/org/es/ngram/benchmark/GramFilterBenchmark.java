@@ -0,0 +1,75 @@
+package org.es.ngram.benchmark;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.es.ngram.index.analysis.EdgeNGramTokenFilter;
+import org.es.ngram.index.analysis.NGramTokenFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author yida
+ * @package org.es.ngram.benchmark
+ * @date 2024-06-22 16:05
+ * @description Throughput of the gram filters on top of a WhitespaceTokenizer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GramFilterBenchmark {
+	@Param({"2"})
+	public int minGram;
+
+	@Param({"3", "20", "100"})
+	public int maxGram;
+
+	@Param({"64", "1024", "16384"})
+	public int textLength;
+
+	@Param({"LATIN", "SIMPLIFIED", "TRADITIONAL", "SUPPLEMENTARY"})
+	public BenchmarkTexts.Script script;
+
+	private String text;
+	private Tokenizer nGramSource;
+	private TokenStream nGramTokenFilter;
+	private Tokenizer edgeNGramSource;
+	private TokenStream edgeNGramTokenFilter;
+
+	@Setup
+	public void setup() {
+		text = BenchmarkTexts.text(script, textLength);
+		nGramSource = new WhitespaceTokenizer();
+		nGramTokenFilter = new NGramTokenFilter(nGramSource, minGram, maxGram);
+		edgeNGramSource = new WhitespaceTokenizer();
+		edgeNGramTokenFilter = new EdgeNGramTokenFilter(edgeNGramSource, minGram, maxGram);
+	}
+
+	@Benchmark
+	public int nGramTokenFilter(TokenCounter counter) throws IOException {
+		nGramSource.setReader(new StringReader(text));
+		return counter.consume(nGramTokenFilter);
+	}
+
+	@Benchmark
+	public int edgeNGramTokenFilter(TokenCounter counter) throws IOException {
+		edgeNGramSource.setReader(new StringReader(text));
+		return counter.consume(edgeNGramTokenFilter);
+	}
+}
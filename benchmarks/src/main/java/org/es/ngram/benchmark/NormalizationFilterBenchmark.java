@@ -0,0 +1,83 @@
+package org.es.ngram.benchmark;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.es.ngram.index.analysis.STConvertTokenFilter;
+import org.es.ngram.index.analysis.STConvertType;
+import org.es.ngram.index.analysis.StopwordTokenFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author yida
+ * @package org.es.ngram.benchmark
+ * @date 2024-06-22 16:30
+ * @description Throughput of the non-gram filters on top of a WhitespaceTokenizer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class NormalizationFilterBenchmark {
+	private static final String STOPWORD_DICT_PATH = "classpath:stopword.dic";
+
+	@Param({"64", "1024", "16384"})
+	public int textLength;
+
+	@Param({"LATIN", "SIMPLIFIED", "TRADITIONAL", "SUPPLEMENTARY"})
+	public BenchmarkTexts.Script script;
+
+	@Param({"TRADITIONAL_2_SIMPLE", "SIMPLE_2_TRADITIONAL"})
+	public STConvertType convertType;
+
+	private String text;
+	private Tokenizer stConvertSource;
+	private TokenStream stConvertTokenFilter;
+	private Tokenizer stopwordSource;
+	private TokenStream stopwordTokenFilter;
+
+	@Setup
+	public void setup() {
+		text = BenchmarkTexts.text(script, textLength);
+		stConvertSource = new WhitespaceTokenizer();
+		stConvertTokenFilter = new STConvertTokenFilter(stConvertSource, convertType, ",", false);
+		stopwordSource = new WhitespaceTokenizer();
+		stopwordTokenFilter = new StopwordTokenFilter(stopwordSource, STOPWORD_DICT_PATH);
+	}
+
+	@Benchmark
+	public int stConvertTokenFilter(TokenCounter counter) throws IOException {
+		stConvertSource.setReader(new StringReader(text));
+		return counter.consume(stConvertTokenFilter);
+	}
+
+	@Benchmark
+	public int stopwordTokenFilter(TokenCounter counter) throws IOException {
+		stopwordSource.setReader(new StringReader(text));
+		return counter.consume(stopwordTokenFilter);
+	}
+
+	/**
+	 * What StopwordTokenFilterFactory.create() costs every time a token stream is built.
+	 */
+	@Benchmark
+	public TokenStream stopwordTokenFilterCreate() {
+		return new StopwordTokenFilter(stopwordSource, STOPWORD_DICT_PATH);
+	}
+}
@@ -0,0 +1,63 @@
+package org.es.ngram.benchmark;
+
+import org.es.ngram.index.analysis.STConvertType;
+import org.es.ngram.index.analysis.STConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author yida
+ * @package org.es.ngram.benchmark
+ * @date 2024-06-22 17:02
+ * @description Raw STConverter conversion, String and char[] variants.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class STConverterBenchmark {
+	@Param({"8", "64", "1024"})
+	public int textLength;
+
+	@Param({"LATIN", "SIMPLIFIED", "TRADITIONAL", "SUPPLEMENTARY"})
+	public BenchmarkTexts.Script script;
+
+	@Param({"TRADITIONAL_2_SIMPLE", "SIMPLE_2_TRADITIONAL"})
+	public STConvertType convertType;
+
+	private STConverter converter;
+	private String text;
+	private char[] chars;
+	private char[] dest;
+
+	@Setup
+	public void setup() {
+		converter = STConverter.getInstance();
+		text = BenchmarkTexts.text(script, textLength);
+		chars = text.toCharArray();
+		dest = new char[converter.maxConvertedLength(convertType, chars.length)];
+	}
+
+	@Benchmark
+	public String convertString() {
+		return converter.convert(convertType, text);
+	}
+
+	@Benchmark
+	public int convertChars() {
+		return converter.convert(convertType, chars, 0, chars.length, dest, 0);
+	}
+}
@@ -0,0 +1,71 @@
+package org.es.ngram.benchmark;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.util.AttributeFactory;
+import org.es.ngram.index.analysis.EdgeNGramTokenizer;
+import org.es.ngram.index.analysis.NGramTokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author yida
+ * @package org.es.ngram.benchmark
+ * @date 2024-06-22 15:40
+ * @description Throughput of the gram tokenizers over a whole field value.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TokenizerBenchmark {
+	@Param({"2"})
+	public int minGram;
+
+	@Param({"3", "20", "100"})
+	public int maxGram;
+
+	@Param({"64", "1024", "16384"})
+	public int textLength;
+
+	@Param({"LATIN", "SIMPLIFIED", "TRADITIONAL", "SUPPLEMENTARY"})
+	public BenchmarkTexts.Script script;
+
+	private String text;
+	private Tokenizer nGramTokenizer;
+	private Tokenizer edgeNGramTokenizer;
+
+	@Setup
+	public void setup() {
+		text = BenchmarkTexts.text(script, textLength);
+		nGramTokenizer = new NGramTokenizer(AttributeFactory.DEFAULT_ATTRIBUTE_FACTORY, minGram, maxGram);
+		edgeNGramTokenizer = new EdgeNGramTokenizer(AttributeFactory.DEFAULT_ATTRIBUTE_FACTORY,
+				EdgeNGramTokenizer.Side.FRONT, minGram, maxGram);
+	}
+
+	@Benchmark
+	public int nGramTokenizer(TokenCounter counter) throws IOException {
+		nGramTokenizer.setReader(new StringReader(text));
+		return counter.consume(nGramTokenizer);
+	}
+
+	@Benchmark
+	public int edgeNGramTokenizer(TokenCounter counter) throws IOException {
+		edgeNGramTokenizer.setReader(new StringReader(text));
+		return counter.consume(edgeNGramTokenizer);
+	}
+}
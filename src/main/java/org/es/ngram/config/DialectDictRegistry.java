@@ -0,0 +1,186 @@
+package org.es.ngram.config;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.es.ngram.stats.AnalysisStats;
+import org.es.ngram.utils.DoubleArrayTrie;
+import org.es.ngram.utils.ResourceFileUtils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * @author yida
+ * @package org.es.ngram.config
+ * @date 2024-07-10 09:30
+ * @description Node wide registry of compiled dialect dictionaries.
+ *
+ * <p>A dialect dictionary is a properties file of {@code regional term:standard term} lines, the
+ * bundled ones are {@code dialect}, {@code place} and {@code tech} under {@code classpath:dialect/}.
+ * A list of dictionaries is compiled once per (paths, last modified times) into a single
+ * {@link DoubleArrayTrie}, a term mapped by several files takes the mapping of the last one and
+ * terms mapped to themselves are left out. Tries are held weakly and replaced when a file changes,
+ * like the sets of {@link StopwordDictRegistry}.
+ */
+public class DialectDictRegistry {
+	public static final Log log = LogFactory.getLog(DialectDictRegistry.class);
+
+	public static final List<String> BUNDLED_DICTS = Collections.unmodifiableList(Arrays.asList("dialect", "place", "tech"));
+
+	private static final DialectDictRegistry instance = new DialectDictRegistry();
+
+	private final Map<Key, Entry> entries = new HashMap<>();
+	private final ReferenceQueue<DoubleArrayTrie> collected = new ReferenceQueue<>();
+
+	public static DialectDictRegistry getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Location of a bundled dictionary.
+	 */
+	public static String bundledDictPath(String name) {
+		if (!BUNDLED_DICTS.contains(name)) {
+			throw new IllegalArgumentException("unknown dialect dictionary [" + name + "], expected one of " + BUNDLED_DICTS);
+		}
+		return ResourceFileUtils.CLASSPATH_URL_PREFIX + "dialect/" + name + ".properties";
+	}
+
+	/**
+	 * Returns the trie of the dictionaries compiled together, compiling them if they are not
+	 * resident. A path is a classpath: location or a file.
+	 */
+	public DoubleArrayTrie trie(List<String> dictPaths) throws IOException {
+		long[] lastModified = new long[dictPaths.size()];
+		for (int i = 0; i < lastModified.length; i++) {
+			lastModified[i] = ResourceFileUtils.lastModified(dictPaths.get(i));
+		}
+		Key key = new Key(new ArrayList<>(dictPaths), lastModified);
+		synchronized (entries) {
+			expunge();
+			Entry entry = entries.get(key);
+			DoubleArrayTrie trie = null == entry ? null : entry.get();
+			if (null == trie) {
+				long start = System.nanoTime();
+				Map<String, String> mappings = new TreeMap<>();
+				for (String dictPath : dictPaths) {
+					load(dictPath, mappings);
+				}
+				trie = DoubleArrayTrie.build(mappings);
+				// earlier versions of the files
+				entries.keySet().removeIf(resident -> resident.dictPaths.equals(key.dictPaths));
+				entries.put(key, new Entry(key, trie, collected));
+				long nanos = System.nanoTime() - start;
+				AnalysisStats.getInstance().dictionaryLoaded(String.join(",", dictPaths), mappings.size(), nanos);
+				log.info("Loaded dialect dictionaries:" + dictPaths + " with " + mappings.size() + " terms in "
+						+ nanos / 1000000 + "ms");
+			}
+			return trie;
+		}
+	}
+
+	private static void load(String dictPath, Map<String, String> mappings) throws IOException {
+		Properties properties = new Properties();
+		try (Reader reader = dictPath.startsWith(ResourceFileUtils.CLASSPATH_URL_PREFIX)
+				? ResourceFileUtils.getReader(dictPath, "UTF-8")
+				: Files.newBufferedReader(Paths.get(dictPath), StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+		for (String term : properties.stringPropertyNames()) {
+			String standard = properties.getProperty(term).trim();
+			term = term.trim();
+			if (term.isEmpty() || term.equals(standard)) {
+				mappings.remove(term);
+			} else {
+				mappings.put(term, standard);
+			}
+		}
+	}
+
+	/**
+	 * Number of compiled dictionary lists currently resident.
+	 */
+	public int residentCount() {
+		synchronized (entries) {
+			expunge();
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Approximate heap held by all resident tries, in bytes.
+	 */
+	public long ramBytesUsed() {
+		long bytes = 0L;
+		synchronized (entries) {
+			expunge();
+			for (Entry entry : entries.values()) {
+				bytes += entry.ramBytesUsed;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Removes the entries whose tries have been collected.
+	 */
+	private void expunge() {
+		Reference<? extends DoubleArrayTrie> reference;
+		while ((reference = collected.poll()) != null) {
+			Entry entry = (Entry) reference;
+			entries.remove(entry.key, entry);
+		}
+	}
+
+	private static final class Entry extends WeakReference<DoubleArrayTrie> {
+		private final Key key;
+		private final long ramBytesUsed;
+
+		Entry(Key key, DoubleArrayTrie trie, ReferenceQueue<DoubleArrayTrie> queue) {
+			super(trie, queue);
+			this.key = key;
+			this.ramBytesUsed = trie.ramBytesUsed();
+		}
+	}
+
+	private static final class Key {
+		private final List<String> dictPaths;
+		private final long[] lastModified;
+
+		Key(List<String> dictPaths, long[] lastModified) {
+			this.dictPaths = dictPaths;
+			this.lastModified = lastModified;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) o;
+			return dictPaths.equals(key.dictPaths) && Arrays.equals(lastModified, key.lastModified);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * dictPaths.hashCode() + Arrays.hashCode(lastModified);
+		}
+	}
+}
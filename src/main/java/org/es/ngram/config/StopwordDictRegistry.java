@@ -0,0 +1,159 @@
+package org.es.ngram.config;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.es.ngram.stats.AnalysisStats;
+import org.es.ngram.utils.ResourceFileUtils;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * @author yida
+ * @package org.es.ngram.config
+ * @date 2024-06-24 10:20
+ * @description Node wide registry of loaded stopword dictionaries.
+ *
+ * <p>Each dictionary is loaded once per (path, charset, ignoreCase, last modified time) and the
+ * same immutable {@link CharArraySet} is handed out to every analyzer and token filter factory.
+ * The registry only holds its sets weakly: a set stays resident while an analyzer, factory or
+ * filter uses it and is dropped once the garbage collector finds it unused, so consumers that are
+ * never closed, like token filter factories, can not pin it. When a dictionary file changes on
+ * disk the set of its previous version leaves the registry, its holders keep using it until
+ * they are rebuilt.
+ */
+public class StopwordDictRegistry {
+	public static final Log log = LogFactory.getLog(StopwordDictRegistry.class);
+
+	private static final StopwordDictRegistry instance = new StopwordDictRegistry();
+
+	private final Map<Key, Entry> entries = new HashMap<>();
+	private final ReferenceQueue<CharArraySet> collected = new ReferenceQueue<>();
+
+	public static StopwordDictRegistry getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Returns the stopword set of the dictionary, loading it if it is not resident.
+	 */
+	public CharArraySet stopwords(String dictPath, String charset, boolean ignoreCase) throws IOException {
+		Key key = new Key(dictPath, charset, ignoreCase, ResourceFileUtils.lastModified(dictPath));
+		synchronized (entries) {
+			expunge();
+			Entry entry = entries.get(key);
+			CharArraySet stopwords = null == entry ? null : entry.get();
+			if (null == stopwords) {
+				long start = System.nanoTime();
+				CharArraySet charArraySet = StopwordDictLoader.loadStopwordSet(ignoreCase, dictPath, charset);
+				stopwords = CharArraySet.unmodifiableSet(charArraySet);
+				// earlier versions of the file
+				entries.keySet().removeIf(resident -> resident.dictPath.equals(dictPath));
+				entries.put(key, new Entry(key, stopwords, collected));
+				long nanos = System.nanoTime() - start;
+				AnalysisStats.getInstance().dictionaryLoaded(dictPath, charArraySet.size(), nanos);
+				log.info("Loaded stopword dictionary:[" + dictPath + "] with " + charArraySet.size() + " words in "
+						+ nanos / 1000000 + "ms");
+			}
+			return stopwords;
+		}
+	}
+
+	public CharArraySet stopwords(String dictPath) throws IOException {
+		return stopwords(dictPath, "UTF-8", true);
+	}
+
+	/**
+	 * Number of dictionaries currently resident.
+	 */
+	public int residentCount() {
+		synchronized (entries) {
+			expunge();
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Approximate heap held by all resident dictionaries, in bytes.
+	 */
+	public long ramBytesUsed() {
+		long bytes = 0L;
+		synchronized (entries) {
+			expunge();
+			for (Entry entry : entries.values()) {
+				bytes += entry.ramBytesUsed;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Removes the entries whose sets have been collected.
+	 */
+	private void expunge() {
+		Reference<? extends CharArraySet> reference;
+		while ((reference = collected.poll()) != null) {
+			Entry entry = (Entry) reference;
+			entries.remove(entry.key, entry);
+		}
+	}
+
+	private static long ramBytesUsed(CharArraySet charArraySet) {
+		long bytes = 0L;
+		for (Object word : charArraySet) {
+			bytes += RamUsageEstimator.sizeOf((char[]) word);
+		}
+		// CharArrayMap keeps a keys and a values array of twice the power of two above its size
+		long slots = 2L * Integer.highestOneBit(Math.max(1, charArraySet.size()) * 2);
+		return bytes + 2L * slots * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+	}
+
+	private static final class Entry extends WeakReference<CharArraySet> {
+		private final Key key;
+		private final long ramBytesUsed;
+
+		Entry(Key key, CharArraySet stopwords, ReferenceQueue<CharArraySet> queue) {
+			super(stopwords, queue);
+			this.key = key;
+			this.ramBytesUsed = StopwordDictRegistry.ramBytesUsed(stopwords);
+		}
+	}
+	private static final class Key {
+		private final String dictPath;
+		private final String charset;
+		private final boolean ignoreCase;
+		private final long lastModified;
+
+		Key(String dictPath, String charset, boolean ignoreCase, long lastModified) {
+			this.dictPath = dictPath;
+			this.charset = charset;
+			this.ignoreCase = ignoreCase;
+			this.lastModified = lastModified;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) o;
+			return ignoreCase == key.ignoreCase && lastModified == key.lastModified
+					&& dictPath.equals(key.dictPath) && charset.equals(key.charset);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(dictPath, charset, ignoreCase, lastModified);
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package org.es.ngram.index.analysis;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.es.ngram.stats.AnalyzerStats;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.analysis
+ * @date 2024-07-08 11:00
+ * @description Counts the output of a gram filter into {@link AnalyzerStats}.
+ *
+ * <p>Grams sharing a position belong to the same token. The counts of a document are kept in
+ * fields and added to the shared counters once in {@link #end()}, where the final offset gives
+ * the number of input chars.
+ */
+public final class AnalysisStatsTokenFilter extends TokenFilter {
+	private final PositionIncrementAttribute posIncrAtt = addAttribute(PositionIncrementAttribute.class);
+	private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+	private final AnalyzerStats stats;
+
+	private final long[] histogram = new long[AnalyzerStats.BUCKETS];
+	private long tokens;
+	private long grams;
+	private int tokenGrams;
+
+	public AnalysisStatsTokenFilter(TokenStream input, AnalyzerStats stats) {
+		super(input);
+		this.stats = stats;
+	}
+
+	@Override
+	public boolean incrementToken() throws IOException {
+		if (!input.incrementToken()) {
+			return false;
+		}
+		if (posIncrAtt.getPositionIncrement() > 0 || tokenGrams == 0) {
+			endToken();
+		}
+		tokenGrams++;
+		grams++;
+		return true;
+	}
+
+	private void endToken() {
+		if (tokenGrams > 0) {
+			tokens++;
+			histogram[AnalyzerStats.bucket(tokenGrams)]++;
+			tokenGrams = 0;
+		}
+	}
+
+	@Override
+	public void end() throws IOException {
+		super.end();
+		endToken();
+		stats.add(offsetAtt.endOffset(), tokens, grams, histogram);
+		clearCounts();
+	}
+
+	@Override
+	public void reset() throws IOException {
+		super.reset();
+		clearCounts();
+	}
+
+	private void clearCounts() {
+		Arrays.fill(histogram, 0L);
+		tokens = 0L;
+		grams = 0L;
+		tokenGrams = 0;
+	}
+}
@@ -0,0 +1,141 @@
+package org.es.ngram.index.analysis;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.AttributeImpl;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.analysis
+ * @date 2024-07-05 10:40
+ * @description Last stage of an analysis chain that serves short inputs from a
+ * {@link SearchAnalysisCache}.
+ *
+ * <p>It takes the reader meant for the tokenizer and reads up to maxInputLength + 1 chars of it
+ * on {@link #reset()}. A cached input replays its recorded tokens without touching the chain, an
+ * input seen for the first time runs through the chain and is recorded once the stream has been
+ * consumed, and a longer input is handed to the tokenizer with the chars already read pushed back.
+ *
+ * <p>Only the implementation of the term attribute is recorded. In the ngram chains it also holds
+ * offsets, position increment and length and type, so that is the whole output of the chain,
+ * while attributes a consumer added to its own stream never end up in a shared entry.
+ */
+public final class CachedAnalysisTokenFilter extends TokenFilter {
+	private final Consumer<Reader> sourceReader;
+	private final SearchAnalysisCache cache;
+	private final AttributeImpl tokenAtt = (AttributeImpl) addAttribute(CharTermAttribute.class);
+
+	private Reader pendingReader;
+	private char[] inputBuffer = new char[0];
+
+	/** tokens being replayed, null unless replaying */
+	private SearchAnalysisCache.Entry replay;
+	private int replayIndex;
+	/** the input and its tokens being recorded, null unless recording */
+	private String recordingInput;
+	private List<AttributeImpl> recording;
+	private boolean exhausted;
+
+	CachedAnalysisTokenFilter(Consumer<Reader> sourceReader, TokenStream result, SearchAnalysisCache cache) {
+		super(result);
+		this.sourceReader = sourceReader;
+		this.cache = cache;
+	}
+
+	void setReader(Reader reader) {
+		this.pendingReader = reader;
+	}
+
+	@Override
+	public boolean incrementToken() throws IOException {
+		if (null != replay) {
+			if (replayIndex == replay.tokens.size()) {
+				return false;
+			}
+			clearAttributes();
+			replay.tokens.get(replayIndex++).copyTo(tokenAtt);
+			return true;
+		}
+		if (!input.incrementToken()) {
+			exhausted = true;
+			return false;
+		}
+		if (null != recording) {
+			if (recording.size() < SearchAnalysisCache.MAX_CACHED_TOKENS) {
+				recording.add(tokenAtt.clone());
+			} else {
+				recording = null;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void reset() throws IOException {
+		replay = null;
+		recording = null;
+		recordingInput = null;
+		exhausted = false;
+		final int maxInputLength = cache.getMaxInputLength();
+		inputBuffer = ArrayUtil.grow(inputBuffer, maxInputLength + 1);
+		int length = 0;
+		int read;
+		while (length <= maxInputLength && (read = pendingReader.read(inputBuffer, length, maxInputLength + 1 - length)) != -1) {
+			length += read;
+		}
+		if (length <= maxInputLength) {
+			String text = new String(inputBuffer, 0, length);
+			SearchAnalysisCache.Entry entry = cache.get(text);
+			if (null != entry) {
+				replay = entry;
+				replayIndex = 0;
+				return;
+			}
+			recordingInput = text;
+			recording = new ArrayList<>();
+			sourceReader.accept(new StringReader(text));
+		} else {
+			cache.bypass();
+			PushbackReader reader = new PushbackReader(pendingReader, length);
+			reader.unread(inputBuffer, 0, length);
+			sourceReader.accept(reader);
+		}
+		super.reset();
+	}
+
+	@Override
+	public void end() throws IOException {
+		if (null != replay) {
+			endAttributes();
+			replay.end.copyTo(tokenAtt);
+			return;
+		}
+		super.end();
+		if (null != recording && exhausted) {
+			cache.put(recordingInput, new SearchAnalysisCache.Entry(recording, tokenAtt.clone()));
+		}
+		recording = null;
+		recordingInput = null;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (null != pendingReader) {
+			pendingReader.close();
+			pendingReader = null;
+		}
+		replay = null;
+		recording = null;
+		super.close();
+	}
+}
@@ -0,0 +1,169 @@
+package org.es.ngram.index.analysis;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.es.ngram.utils.CharClassTable;
+
+import java.io.IOException;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.analysis
+ * @date 2024-07-12 09:40
+ * @description Removes the chars outside a {@link CharClassTable} from every token.
+ *
+ * <p>In strip mode the excluded chars are dropped and the rest of the token is kept as one term
+ * with the offsets of the token. In split mode every run of kept chars becomes a term of its own,
+ * with its own offsets when the token spans as many chars as its term, at the next position. A
+ * token left without chars is dropped and its position increment carried over to the next term.
+ * Tokens made of kept chars only, the usual case, are checked with one table lookup per char and
+ * passed through untouched.
+ */
+public final class CharClassTokenFilter extends TokenFilter {
+	private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+	private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+	private final PositionIncrementAttribute posIncAtt = addAttribute(PositionIncrementAttribute.class);
+
+	private final CharClassTable keepChars;
+	private final boolean split;
+
+	/** position increments of dropped tokens, added to the next term */
+	private int skippedPositions;
+
+	/** split mode: the token being split, null unless splitting */
+	private State splitState;
+	private char[] splitBuffer = new char[16];
+	private int splitLength;
+	private int splitPos;
+	private int splitStartOffset;
+	private boolean splitOffsets;
+	private int splitPosInc;
+	private boolean splitEmitted;
+
+	/**
+	 * @param split true to split tokens at excluded chars, false to strip them
+	 */
+	public CharClassTokenFilter(TokenStream input, CharClassTable keepChars, boolean split) {
+		super(input);
+		this.keepChars = keepChars;
+		this.split = split;
+	}
+
+	@Override
+	public boolean incrementToken() throws IOException {
+		while (true) {
+			if (null != splitState) {
+				if (nextPart()) {
+					return true;
+				}
+				if (!splitEmitted) {
+					skippedPositions += splitPosInc;
+				}
+				splitState = null;
+			}
+			if (!input.incrementToken()) {
+				return false;
+			}
+			final char[] buffer = termAtt.buffer();
+			final int length = termAtt.length();
+			if (length > 0 && keepChars.containsAll(buffer, 0, length)) {
+				addSkippedPositions();
+				return true;
+			}
+			if (split) {
+				splitBuffer = ArrayUtil.grow(splitBuffer, length);
+				System.arraycopy(buffer, 0, splitBuffer, 0, length);
+				splitLength = length;
+				splitPos = 0;
+				splitStartOffset = offsetAtt.startOffset();
+				splitOffsets = offsetAtt.endOffset() - splitStartOffset == length;
+				splitPosInc = posIncAtt.getPositionIncrement();
+				splitEmitted = false;
+				splitState = captureState();
+				continue;
+			}
+			int newLength = strip(buffer, length);
+			if (newLength > 0) {
+				termAtt.setLength(newLength);
+				addSkippedPositions();
+				return true;
+			}
+			skippedPositions += posIncAtt.getPositionIncrement();
+		}
+	}
+
+	/**
+	 * Moves the kept chars of the buffer to its front, returns their count.
+	 */
+	private int strip(char[] buffer, int length) {
+		int write = 0;
+		for (int i = 0; i < length; ) {
+			int codePoint = Character.codePointAt(buffer, i, length);
+			int count = Character.charCount(codePoint);
+			if (keepChars.contains(codePoint)) {
+				buffer[write++] = buffer[i];
+				if (count == 2) {
+					buffer[write++] = buffer[i + 1];
+				}
+			}
+			i += count;
+		}
+		return write;
+	}
+
+	/**
+	 * Emits the next run of kept chars of the token being split, false if there is none.
+	 */
+	private boolean nextPart() {
+		int start = -1;
+		int i = splitPos;
+		while (i < splitLength) {
+			int codePoint = Character.codePointAt(splitBuffer, i, splitLength);
+			boolean keep = keepChars.contains(codePoint);
+			if (keep && start < 0) {
+				start = i;
+			} else if (!keep && start >= 0) {
+				break;
+			}
+			i += Character.charCount(codePoint);
+		}
+		splitPos = i;
+		if (start < 0) {
+			return false;
+		}
+		restoreState(splitState);
+		termAtt.copyBuffer(splitBuffer, start, i - start);
+		if (splitOffsets) {
+			offsetAtt.setOffset(splitStartOffset + start, splitStartOffset + i);
+		}
+		// the first part takes the position of the token, the others follow it
+		posIncAtt.setPositionIncrement(splitEmitted ? 1 : splitPosInc);
+		splitEmitted = true;
+		addSkippedPositions();
+		return true;
+	}
+
+	private void addSkippedPositions() {
+		if (skippedPositions != 0) {
+			posIncAtt.setPositionIncrement(posIncAtt.getPositionIncrement() + skippedPositions);
+			skippedPositions = 0;
+		}
+	}
+
+	@Override
+	public void reset() throws IOException {
+		super.reset();
+		splitState = null;
+		skippedPositions = 0;
+	}
+
+	@Override
+	public void end() throws IOException {
+		super.end();
+		posIncAtt.setPositionIncrement(posIncAtt.getPositionIncrement() + skippedPositions);
+	}
+}
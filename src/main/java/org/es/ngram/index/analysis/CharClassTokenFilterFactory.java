@@ -0,0 +1,55 @@
+package org.es.ngram.index.analysis;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.analysis.AbstractTokenFilterFactory;
+import org.es.ngram.utils.CharClassTable;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.analysis
+ * @date 2024-07-12 10:10
+ * @description The char-class-filter token filter, see {@link CharClassTokenFilter}.
+ *
+ * <pre>
+ * "filter": {
+ *     "my_char_class": {
+ *         "type": "char-class-filter",
+ *         "keep_chars": ["a-z", "0-9", "script:han", "U+3040-U+30FF"],
+ *         "mode": "split"
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>mode is strip (default) or split. Without keep_chars ASCII letters and digits and the CJK
+ * ideographs U+4E00-U+9FA5 are kept.
+ */
+public class CharClassTokenFilterFactory extends AbstractTokenFilterFactory {
+	private final CharClassTable keepChars;
+	private final boolean split;
+
+	public CharClassTokenFilterFactory(IndexSettings indexSettings, Environment env, String name, Settings settings) {
+		super(indexSettings, name, settings);
+		CharClassTable keepChars = NGramAnalyzerProvider.keepChars(settings);
+		this.keepChars = null == keepChars ? CharClassTable.compile(CharClassTable.DEFAULT_SPECS) : keepChars;
+		String mode = settings.get("mode", "strip");
+		if ("strip".equals(mode)) {
+			this.split = false;
+		} else if ("split".equals(mode)) {
+			this.split = true;
+		} else {
+			throw new IllegalArgumentException("[mode] must be strip or split");
+		}
+	}
+
+	public static CharClassTokenFilterFactory getCharClassTokenFilterFactory(IndexSettings indexSettings, Environment env, String name, Settings settings) {
+		return new CharClassTokenFilterFactory(indexSettings, env, name, settings);
+	}
+
+	@Override
+	public TokenStream create(TokenStream tokenStream) {
+		return new CharClassTokenFilter(tokenStream, keepChars, split);
+	}
+}
@@ -0,0 +1,50 @@
+package org.es.ngram.index.analysis;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.es.ngram.config.DialectDictRegistry;
+import org.es.ngram.utils.DoubleArrayTrie;
+
+import java.io.IOException;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.analysis
+ * @date 2024-07-10 10:10
+ * @description Rewrites regional terms to their standard form, e.g. a Taiwanese or Hong Kong
+ * term to the mainland one, with the dictionaries of {@link DialectDictRegistry}.
+ *
+ * <p>Each term is rewritten in one left to right pass that replaces the longest dictionary term at
+ * each position, so a regional term inside a longer token is normalized as well. Terms without any
+ * char that starts a dictionary term are passed through untouched, the others are rewritten into
+ * a scratch buffer and copied back, nothing is allocated per token. Placed before a gram filter it
+ * makes the regional and the standard spelling share their grams.
+ */
+public final class DialectTokenFilter extends TokenFilter {
+	private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+	private final DoubleArrayTrie trie;
+	private char[] scratch = new char[16];
+
+	public DialectTokenFilter(TokenStream input, DoubleArrayTrie trie) {
+		super(input);
+		this.trie = trie;
+	}
+
+	@Override
+	public boolean incrementToken() throws IOException {
+		if (!input.incrementToken()) {
+			return false;
+		}
+		final char[] buffer = termAtt.buffer();
+		final int length = termAtt.length();
+		if (length == 0 || !trie.containsKeyStart(buffer, 0, length)) {
+			return true;
+		}
+		scratch = ArrayUtil.grow(scratch, trie.maxRewrittenLength(length));
+		int newLength = trie.rewrite(buffer, 0, length, scratch, 0);
+		termAtt.copyBuffer(scratch, 0, newLength);
+		return true;
+	}
+}
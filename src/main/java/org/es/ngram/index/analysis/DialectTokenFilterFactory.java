@@ -0,0 +1,55 @@
+package org.es.ngram.index.analysis;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.analysis.AbstractTokenFilterFactory;
+import org.es.ngram.config.DialectDictRegistry;
+import org.es.ngram.utils.DoubleArrayTrie;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.analysis
+ * @date 2024-07-10 10:30
+ * @description The dialect-filter token filter.
+ *
+ * <pre>
+ * "filter": {
+ *     "my_dialect": {
+ *         "type": "dialect-filter",
+ *         "dialect_dicts": ["dialect", "place", "tech"],
+ *         "dialect_dict_paths": ["analysis/my-terms.properties"]
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>{@code dialect_dicts} picks the bundled dictionaries, all of them by default, and
+ * {@code dialect_dict_paths} adds files inside the config directory, relative to it, applied
+ * after the bundled ones.
+ */
+public class DialectTokenFilterFactory extends AbstractTokenFilterFactory {
+	private final DoubleArrayTrie trie;
+
+	public DialectTokenFilterFactory(IndexSettings indexSettings, Environment env, String name, Settings settings) {
+		super(indexSettings, name, settings);
+		List<String> dictPaths = NGramAnalyzerProvider.dialectDictPaths(settings, env);
+		try {
+			this.trie = DialectDictRegistry.getInstance().trie(dictPaths);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("failed to load dialect dictionaries " + dictPaths, e);
+		}
+	}
+
+	public static DialectTokenFilterFactory getDialectTokenFilterFactory(IndexSettings indexSettings, Environment env, String name, Settings settings) {
+		return new DialectTokenFilterFactory(indexSettings, env, name, settings);
+	}
+
+	@Override
+	public TokenStream create(TokenStream tokenStream) {
+		return new DialectTokenFilter(tokenStream, trie);
+	}
+}
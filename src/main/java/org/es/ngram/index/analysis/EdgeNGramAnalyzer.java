@@ -10,11 +10,16 @@ import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.core.KeywordTokenizer;
 import org.apache.lucene.analysis.core.WhitespaceTokenizer;
-import org.apache.lucene.analysis.pattern.PatternReplaceFilter;
-import org.es.ngram.config.StopwordDictLoader;
+import org.apache.lucene.util.AttributeFactory;
+import org.es.ngram.config.DialectDictRegistry;
+import org.es.ngram.config.StopwordDictRegistry;
+import org.es.ngram.stats.AnalyzerStats;
+import org.es.ngram.utils.CharClassTable;
 import org.es.ngram.index.analysis.EdgeNGramTokenFilter;
+import org.es.ngram.utils.DoubleArrayTrie;
 
-import java.util.regex.Pattern;
+import java.io.IOException;
+import java.util.List;
 
 /**
  * @author yida
@@ -31,18 +36,27 @@ public class EdgeNGramAnalyzer extends Analyzer {
 
 	private final static String stopwordDictPath = "classpath:stopword.dic";
 
-	private Pattern pattern = Pattern.compile("(?i)[^a-zA-Z0-9\\u4E00-\\u9FA5]");
-
 	private int minGram;
 	private int maxGram;
 	private boolean keepOrignalTerm;
 	private STConvertType stConvertType;
+	private final boolean completion;
+	private final int dedupeMaxGrams;
+	private final int hashWidth;
+	private final SearchAnalysisCache searchAnalysisCache;
+	private final CharClassTable keepChars;
+	private AnalyzerStats analyzerStats;
 
 	/**
 	 * An immutable stopword set
 	 */
 	protected final CharArraySet stopwords;
 
+	/**
+	 * The dialect dictionaries, null unless dialect terms are rewritten
+	 */
+	private final DoubleArrayTrie dialectTrie;
+
 	/**
 	 * Returns the analyzer's stopword set or an empty set if the analyzer has no
 	 * stopwords
@@ -58,14 +72,35 @@ public class EdgeNGramAnalyzer extends Analyzer {
 	 * Creates a new instance initialized with the given stopword set
 	 */
 	public EdgeNGramAnalyzer(int minGram, int maxGram, boolean keepOrignalTerm, STConvertType stConvertType) {
-		CharArraySet charArraySet = null;
+		this(builder().minGram(minGram).maxGram(maxGram).keepOrignalTerm(keepOrignalTerm).stConvertType(stConvertType));
+	}
+
+	private EdgeNGramAnalyzer(Builder builder) {
+		int minGram = builder.minGram;
+		int maxGram = builder.maxGram;
+		STConvertType stConvertType = builder.stConvertType;
+		if (builder.hashWidth != 0) {
+			HashedTermAttributeImpl.checkWidth(builder.hashWidth);
+			if (builder.completion) {
+				throw new IllegalArgumentException("completion terms can not be hashed");
+			}
+		}
+		DoubleArrayTrie dialectTrie = null;
+		if (null != builder.dialectDictPaths) {
+			try {
+				dialectTrie = DialectDictRegistry.getInstance().trie(builder.dialectDictPaths);
+			} catch (IOException e) {
+				throw new IllegalArgumentException("failed to load dialect dictionaries " + builder.dialectDictPaths, e);
+			}
+		}
+		this.dialectTrie = dialectTrie;
+		CharArraySet stopwords = null;
 		try {
-			charArraySet = StopwordDictLoader.loadStopwordSet(stopwordDictPath);
+			stopwords = StopwordDictRegistry.getInstance().stopwords(stopwordDictPath);
 		} catch (Exception e) {
-		    log.error("Load stopword dictionary file occr exception:\n" + e.getMessage());
+			log.error("Load stopword dictionary file occr exception:\n" + e.getMessage());
 		}
-		this.stopwords = (charArraySet == null) ? CharArraySet.EMPTY_SET : CharArraySet
-				.unmodifiableSet(CharArraySet.copy(charArraySet));
+		this.stopwords = (stopwords == null) ? CharArraySet.EMPTY_SET : stopwords;
 		if(minGram <= 0) {
 			minGram = DEFAULT_MIN_GRAM_SIZE;
 		}
@@ -77,19 +112,33 @@ public class EdgeNGramAnalyzer extends Analyzer {
 		}
 		this.minGram = minGram;
 		this.maxGram = maxGram;
-		this.keepOrignalTerm = keepOrignalTerm;
+		this.keepOrignalTerm = builder.keepOrignalTerm;
 		this.stConvertType = stConvertType;
+		this.completion = builder.completion;
+		this.dedupeMaxGrams = builder.dedupeMaxGrams;
+		this.hashWidth = builder.hashWidth;
+		this.searchAnalysisCache = builder.searchAnalysisCache;
+		this.keepChars = builder.keepChars;
+	}
+
+	public static Builder builder() {
+		return new Builder();
 	}
 
 	@Override
 	protected TokenStreamComponents createComponents(String fieldName) {
-		final Tokenizer source = new WhitespaceTokenizer();
-		//PatternReplaceFilter patternReplaceCharFilter = new PatternReplaceFilter(source, pattern, "", true);
-		//StopFilter stopFilter = new StopFilter(patternReplaceCharFilter, this.stopwords);
-		LowerCaseFilter lowerCaseFilter = new LowerCaseFilter(source);
-		STConvertTokenFilter stConvertTokenFilter = new STConvertTokenFilter(lowerCaseFilter, this.stConvertType, ",", false);
-		org.es.ngram.index.analysis.EdgeNGramTokenFilter edgeNGramTokenFilter = new org.es.ngram.index.analysis.EdgeNGramTokenFilter(stConvertTokenFilter, minGram, maxGram, this.keepOrignalTerm);
-		return new TokenStreamComponents(source, edgeNGramTokenFilter);
+		final Tokenizer source = new WhitespaceTokenizer(attributeFactory(fieldName));
+		TokenStream converted = GramAnalysisChain.normalize(source, stConvertType, dialectTrie, keepChars, analyzerStats);
+		if (completion) {
+			return GramAnalysisChain.components(source, converted, stConvertType, dialectTrie, keepChars, searchAnalysisCache, analyzerStats);
+		}
+		org.es.ngram.index.analysis.EdgeNGramTokenFilter edgeNGramTokenFilter = new org.es.ngram.index.analysis.EdgeNGramTokenFilter(converted, minGram, maxGram, this.keepOrignalTerm, this.dedupeMaxGrams);
+		return GramAnalysisChain.components(source, edgeNGramTokenFilter, stConvertType, dialectTrie, keepChars, searchAnalysisCache, analyzerStats);
+	}
+
+	@Override
+	protected AttributeFactory attributeFactory(String fieldName) {
+		return GramAnalysisChain.attributeFactory(hashWidth);
 	}
 
 	@Override
@@ -121,6 +170,45 @@ public class EdgeNGramAnalyzer extends Analyzer {
 		this.keepOrignalTerm = keepOrignalTerm;
 	}
 
+	public int getDedupeMaxGrams() {
+		return dedupeMaxGrams;
+	}
+
+	public int getHashWidth() {
+		return hashWidth;
+	}
+
+	public SearchAnalysisCache getSearchAnalysisCache() {
+		return searchAnalysisCache;
+	}
+
+	public CharClassTable getKeepChars() {
+		return keepChars;
+	}
+
+	public boolean isDialectNormalize() {
+		return null != dialectTrie;
+	}
+
+	public AnalyzerStats getAnalyzerStats() {
+		return analyzerStats;
+	}
+
+	/**
+	 * Counts the output of the analyzer into the given stats, must be set before the first token
+	 * stream is created
+	 */
+	public void setAnalyzerStats(AnalyzerStats analyzerStats) {
+		this.analyzerStats = analyzerStats;
+		if (null != searchAnalysisCache) {
+			searchAnalysisCache.setStats(null == analyzerStats ? null : analyzerStats.searchCache());
+		}
+	}
+
+	public boolean isCompletion() {
+		return completion;
+	}
+
 	public CharArraySet getStopwords() {
 		return stopwords;
 	}
@@ -132,4 +220,103 @@ public class EdgeNGramAnalyzer extends Analyzer {
 	public void setStConvertType(STConvertType stConvertType) {
 		this.stConvertType = stConvertType;
 	}
+
+	/**
+	 * Collects the settings of an analyzer, every one of them optional.
+	 */
+	public static final class Builder {
+		private int minGram = DEFAULT_MIN_GRAM_SIZE;
+		private int maxGram = DEFAULT_MAX_GRAM_SIZE;
+		private boolean keepOrignalTerm = DEFAULT_KEEP_ORIGNAL_TERM;
+		private STConvertType stConvertType = STConvertType.TRADITIONAL_2_SIMPLE;
+		private boolean completion;
+		private int dedupeMaxGrams;
+		private int hashWidth;
+		private SearchAnalysisCache searchAnalysisCache;
+		private List<String> dialectDictPaths;
+		private CharClassTable keepChars;
+
+		private Builder() {
+		}
+
+		public Builder minGram(int minGram) {
+			this.minGram = minGram;
+			return this;
+		}
+
+		public Builder maxGram(int maxGram) {
+			this.maxGram = maxGram;
+			return this;
+		}
+
+		public Builder keepOrignalTerm(boolean keepOrignalTerm) {
+			this.keepOrignalTerm = keepOrignalTerm;
+			return this;
+		}
+
+		public Builder stConvertType(STConvertType stConvertType) {
+			this.stConvertType = stConvertType;
+			return this;
+		}
+
+		/**
+		 * Indexes the normalized tokens only, for prefix lookups through the ngram_prefix query
+		 * instead of one term per prefix length.
+		 */
+		public Builder completion(boolean completion) {
+			this.completion = completion;
+			return this;
+		}
+
+		/**
+		 * If positive, emits each distinct gram only once per document.
+		 */
+		public Builder dedupeMaxGrams(int dedupeMaxGrams) {
+			this.dedupeMaxGrams = dedupeMaxGrams;
+			return this;
+		}
+
+		/**
+		 * If positive, indexes each gram as a hash of hashWidth bytes instead of its text.
+		 * Completion needs the term text, so it can not be hashed.
+		 */
+		public Builder hashWidth(int hashWidth) {
+			this.hashWidth = hashWidth;
+			return this;
+		}
+
+		/**
+		 * If not null, serves the analysis of short inputs from that cache.
+		 */
+		public Builder searchAnalysisCache(SearchAnalysisCache searchAnalysisCache) {
+			this.searchAnalysisCache = searchAnalysisCache;
+			return this;
+		}
+
+		/**
+		 * If not null, rewrites regional terms with those dialect dictionaries before generating
+		 * grams, see {@link DialectTokenFilter}.
+		 */
+		public Builder dialectDictPaths(List<String> dialectDictPaths) {
+			this.dialectDictPaths = dialectDictPaths;
+			return this;
+		}
+
+		/**
+		 * If not null, drops the chars outside keepChars except whitespace before tokenizing, see
+		 * {@link NormalizingCharFilter}.
+		 */
+		public Builder keepChars(CharClassTable keepChars) {
+			this.keepChars = keepChars;
+			return this;
+		}
+
+		/**
+		 * @throws IllegalArgumentException if the hash width is invalid, completion terms would be
+		 * hashed or the dialect dictionaries can not be loaded
+		 */
+		public EdgeNGramAnalyzer build() {
+			return new EdgeNGramAnalyzer(this);
+		}
+	}
 }
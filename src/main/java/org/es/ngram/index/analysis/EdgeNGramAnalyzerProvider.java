@@ -4,18 +4,51 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.env.Environment;
 import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.analysis.AbstractIndexAnalyzerProvider;
+import org.es.ngram.stats.AnalysisStats;
 
 public class EdgeNGramAnalyzerProvider extends AbstractIndexAnalyzerProvider<EdgeNGramAnalyzer> {
     private final EdgeNGramAnalyzer analyzer;
 
     public EdgeNGramAnalyzerProvider(IndexSettings indexSettings, Environment env, String name, Settings settings) {
+        this(indexSettings, env, name, settings, false);
+    }
+
+    protected EdgeNGramAnalyzerProvider(IndexSettings indexSettings, Environment env, String name, Settings settings, boolean completion) {
         super(indexSettings,name, settings);
+        analyzer = buildAnalyzer(settings, completion, env);
+        analyzer.setAnalyzerStats(AnalysisStats.getInstance().analyzer(name));
+    }
+
+    /**
+     * Builds an edge ngram analyzer from the min_gram, max_gram, st_convert_type, keep_orignal_gram,
+     * dedupe, hash, search cache, dialect and keep_chars settings.
+     */
+    public static EdgeNGramAnalyzer buildAnalyzer(Settings settings, boolean completion) {
+        return buildAnalyzer(settings, completion, null);
+    }
+
+    /**
+     * Builds an edge ngram analyzer, resolving dialect dictionary files against the config directory
+     * of env if not null.
+     */
+    public static EdgeNGramAnalyzer buildAnalyzer(Settings settings, boolean completion, Environment env) {
         String minGramStr = settings.get("min_gram", "2");
         String maxGramStr = settings.get("max_gram", "100");
         String stConvertTypeStr = settings.get("st_convert_type", "t2s");
         boolean keepOrignalTerm = settings.get("keep_orignal_gram", "false").equals("true");
         STConvertType stConvertType = ("t2s".equals(stConvertTypeStr))? STConvertType.TRADITIONAL_2_SIMPLE : STConvertType.SIMPLE_2_TRADITIONAL;
-        analyzer = new EdgeNGramAnalyzer(Integer.valueOf(minGramStr), Integer.valueOf(maxGramStr), keepOrignalTerm, stConvertType);
+        return EdgeNGramAnalyzer.builder()
+                .minGram(Integer.valueOf(minGramStr))
+                .maxGram(Integer.valueOf(maxGramStr))
+                .keepOrignalTerm(keepOrignalTerm)
+                .stConvertType(stConvertType)
+                .completion(completion)
+                .dedupeMaxGrams(NGramAnalyzerProvider.dedupeMaxGrams(settings))
+                .hashWidth(completion ? 0 : NGramAnalyzerProvider.hashWidth(settings))
+                .searchAnalysisCache(NGramAnalyzerProvider.buildSearchAnalysisCache(settings))
+                .dialectDictPaths(settings.getAsBoolean("dialect_normalize", false) ? NGramAnalyzerProvider.dialectDictPaths(settings, env) : null)
+                .keepChars(NGramAnalyzerProvider.keepChars(settings))
+                .build();
     }
 
     public static EdgeNGramAnalyzerProvider getEdgeNGramAnalyzerProvider(IndexSettings indexSettings, Environment env, String name, Settings settings) {
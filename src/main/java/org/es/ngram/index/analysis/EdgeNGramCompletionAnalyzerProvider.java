@@ -0,0 +1,21 @@
+package org.es.ngram.index.analysis;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.index.IndexSettings;
+
+/**
+ * Completion mode of {@link EdgeNGramAnalyzerProvider}: the same lowercase and st convert chain
+ * without the edge grams, for fields searched with the ngram_prefix query. Used both at index and
+ * at search time.
+ */
+public class EdgeNGramCompletionAnalyzerProvider extends EdgeNGramAnalyzerProvider {
+
+    public EdgeNGramCompletionAnalyzerProvider(IndexSettings indexSettings, Environment env, String name, Settings settings) {
+        super(indexSettings, env, name, settings, true);
+    }
+
+    public static EdgeNGramCompletionAnalyzerProvider getEdgeNGramCompletionAnalyzerProvider(IndexSettings indexSettings, Environment env, String name, Settings settings) {
+        return new EdgeNGramCompletionAnalyzerProvider(indexSettings, env, name, settings);
+    }
+}
@@ -5,6 +5,8 @@ import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.es.ngram.utils.CharSliceHashSet;
 
 import java.io.IOException;
 
@@ -18,10 +20,13 @@ public final class EdgeNGramTokenFilter extends TokenFilter {
 	public static final boolean DEFAULT_PRESERVE_ORIGINAL = false;
 	public static final int DEFAULT_MIN_GRAMSIZE = 2;
 	public static final int DEFAULT_MAX_GRAMSIZE = 100;
+	public static final int DEFAULT_DEDUPE_MAX_GRAMS = 4096;
 
 	private final int minGram;
 	private final int maxGram;
 	private final boolean preserveOriginal;
+	/** grams emitted in the current document, null unless deduplicating */
+	private final CharSliceHashSet seenGrams;
 
 	private char[] curTermBuffer;
 	private int curTermLength;
@@ -35,6 +40,12 @@ public final class EdgeNGramTokenFilter extends TokenFilter {
 	private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
 	private final PositionIncrementAttribute posIncrAtt = addAttribute(PositionIncrementAttribute.class);
 
+	/** set when the tokenizer takes UTF-8 slices, see {@link GramTermAttribute} */
+	private final GramTermAttribute gramTermAtt = hasAttribute(GramTermAttribute.class) ? getAttribute(GramTermAttribute.class) : null;
+	/** the current term in UTF-8 and the byte offset of each of its code points, if gramTermAtt is set */
+	private byte[] utf8Buffer = new byte[0];
+	private int[] codePointByteOffsets = new int[0];
+
 	/**
 	 * Creates an EdgeNGramTokenFilter that, for a given input term, produces all
 	 * edge n-grams with lengths &gt;= minGram and &lt;= maxGram. Will
@@ -48,6 +59,24 @@ public final class EdgeNGramTokenFilter extends TokenFilter {
 	 *                         is outside the min/max size range.
 	 */
 	public EdgeNGramTokenFilter(TokenStream input, int minGram, int maxGram, boolean preserveOriginal) {
+		this(input, minGram, maxGram, preserveOriginal, 0);
+	}
+
+	/**
+	 * Creates an EdgeNGramTokenFilter that, if dedupeMaxGrams is positive, emits each distinct
+	 * gram only once per document. The position increment of a dropped gram moves to the next
+	 * emitted one. Up to dedupeMaxGrams distinct grams are remembered, once that many are held the
+	 * grams not seen yet pass through and only the remembered ones are still dropped.
+	 *
+	 * @param input            {@link TokenStream} holding the input to be tokenized
+	 * @param minGram          the minimum length of the generated n-grams
+	 * @param maxGram          the maximum length of the generated n-grams
+	 * @param preserveOriginal Whether or not to keep the original term when it
+	 *                         is outside the min/max size range.
+	 * @param dedupeMaxGrams   the most distinct grams remembered per document,
+	 *                         0 to keep duplicates
+	 */
+	public EdgeNGramTokenFilter(TokenStream input, int minGram, int maxGram, boolean preserveOriginal, int dedupeMaxGrams) {
 		super(input);
 		if (minGram < 1) {
 			throw new IllegalArgumentException("minGram must be greater than zero");
@@ -60,6 +89,7 @@ public final class EdgeNGramTokenFilter extends TokenFilter {
 		this.minGram = minGram;
 		this.maxGram = maxGram;
 		this.preserveOriginal = preserveOriginal;
+		this.seenGrams = dedupeMaxGrams > 0 ? new CharSliceHashSet(dedupeMaxGrams) : null;
 	}
 
 	public EdgeNGramTokenFilter(TokenStream input, int minGram, int maxGram) {
@@ -88,19 +118,28 @@ public final class EdgeNGramTokenFilter extends TokenFilter {
 				}
 
 				curTermBuffer = termAtt.buffer().clone();
+				if (null != gramTermAtt) {
+					encodeCurrentTerm();
+				}
 				curGramSize = minGram;
 			}
 
 			if (curGramSize <= curTermCodePointCount) {
 				if (curGramSize <= maxGram) { // curGramSize is between minGram and maxGram
+					final int charLength = Character.offsetByCodePoints(curTermBuffer, 0, curTermLength, 0, curGramSize);
+					if (null != seenGrams && seenGrams.add(curTermBuffer, 0, charLength) == CharSliceHashSet.AddResult.PRESENT) {
+						// already emitted in this document, its position increment goes to the next gram
+						curGramSize++;
+						continue;
+					}
 					restoreState(state);
 					// first ngram gets increment, others don't
 					posIncrAtt.setPositionIncrement(curPosIncr);
 					curPosIncr = 0;
 
-					final int charLength = Character.offsetByCodePoints(curTermBuffer, 0, curTermLength, 0, curGramSize);
 					offsetAtt.setOffset(tokenStart, tokenStart + curGramSize);
 					termAtt.copyBuffer(curTermBuffer, 0, charLength);
+					setUTF8Slice(0, curGramSize);
 					curGramSize++;
 					return true;
 				} else if (preserveOriginal) {
@@ -108,6 +147,7 @@ public final class EdgeNGramTokenFilter extends TokenFilter {
 					restoreState(state);
 					posIncrAtt.setPositionIncrement(0);
 					termAtt.copyBuffer(curTermBuffer, 0, curTermLength);
+					setUTF8Slice(0, curTermCodePointCount);
 					offsetAtt.setOffset(tokenStart, tokenStart + curTermLength);
 					curTermBuffer = null;
 					return true;
@@ -118,16 +158,42 @@ public final class EdgeNGramTokenFilter extends TokenFilter {
 		}
 	}
 
+	/**
+	 * Encodes the current term to UTF-8 once, so its grams are handed over as slices.
+	 */
+	private void encodeCurrentTerm() {
+		utf8Buffer = ArrayUtil.grow(utf8Buffer, curTermLength * 3);
+		codePointByteOffsets = ArrayUtil.grow(codePointByteOffsets, curTermCodePointCount + 1);
+		GramTermAttributeImpl.encodeUTF8(curTermBuffer, curTermLength, utf8Buffer, codePointByteOffsets);
+	}
+
+	/**
+	 * Hands over the UTF-8 bytes of the code points [startCodePoint, endCodePoint) of the current
+	 * term, which must be the term just written.
+	 */
+	private void setUTF8Slice(int startCodePoint, int endCodePoint) {
+		if (null != gramTermAtt) {
+			final int start = codePointByteOffsets[startCodePoint];
+			gramTermAtt.setUTF8Slice(utf8Buffer, start, codePointByteOffsets[endCodePoint] - start);
+		}
+	}
+
 	@Override
 	public void reset() throws IOException {
 		super.reset();
 		curTermBuffer = null;
 		curPosIncr = 0;
+		if (null != seenGrams) {
+			seenGrams.clear();
+		}
 	}
 
 	@Override
 	public void end() throws IOException {
 		super.end();
 		posIncrAtt.setPositionIncrement(curPosIncr);
+		if (null != seenGrams) {
+			seenGrams.clear();
+		}
 	}
 }
\ No newline at end of file
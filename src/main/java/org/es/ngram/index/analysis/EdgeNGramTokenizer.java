@@ -1,23 +1,35 @@
 package org.es.ngram.index.analysis;
 
+import org.apache.lucene.analysis.CharacterUtils;
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.apache.lucene.util.AttributeFactory;
 
 import java.io.IOException;
-import java.io.Reader;
 
 /**
  * @author yida
  * @package org.es.ngram.index.analysis
  * @date 2024-04-12 15:51
- * @description Type your description over here.
+ * @description Streaming edge n-gram tokenizer.
+ *
+ * <p>The whole input, with leading and trailing whitespace removed, is treated as one token and
+ * its grams of {@code minGram} to {@code maxGram} code points are taken from the chosen {@link Side}.
+ * Only as much of the input as that side needs is decoded: for {@link Side#FRONT} the first
+ * {@code maxGram} code points (plus a look ahead over trailing whitespace), for {@link Side#BACK}
+ * the input is streamed through a window that keeps its last {@code maxGram} code points. The rest
+ * of the input is only counted by {@link #end()}, so the final offset covers every char read. At
+ * most {@code maxInputLength} chars are read either way, and all buffers are reused across
+ * {@link #reset()} calls.
  */
 public final class EdgeNGramTokenizer extends Tokenizer {
 	public static final Side DEFAULT_SIDE = Side.FRONT;
-	public static final int DEFAULT_MAX_GRAM_SIZE = 2;
-	public static final int DEFAULT_MIN_GRAM_SIZE = 100;
+	public static final int DEFAULT_MAX_GRAM_SIZE = 100;
+	public static final int DEFAULT_MIN_GRAM_SIZE = 2;
+	public static final int DEFAULT_MAX_INPUT_LENGTH = Integer.MAX_VALUE;
+
+	private static final int READ_BUFFER_SIZE = 1024;
 
 	private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
 	private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
@@ -53,24 +65,53 @@ public final class EdgeNGramTokenizer extends Tokenizer {
 
 	private int minGram;
 	private int maxGram;
+	private int maxInputLength;
 	private int gramSize;
 	private Side side;
 	private boolean started = false;
-	private int inLen;
-	private String inStr;
 
+	/** code points kept in the window, never more than {@code maxGram} are needed */
+	private int count;
+	/** chars read from the input so far */
+	private int offset;
+	/** next char of charBuffer to read */
+	private int bufferIndex;
+	/** whitespace seen since the last non whitespace code point, only kept if more text follows */
+	private int pendingCount;
+	/** whether a non whitespace code point has been seen, leading whitespace is dropped */
+	private boolean inText;
+
+	private CharacterUtils.CharacterBuffer charBuffer;
+	private int[] codePoints;
+	private int[] charOffsets;
+	private int[] pendingCodePoints;
+	private int[] pendingOffsets;
+	private int mask;
 
 	/**
 	 * Creates EdgeNGramTokenizer that can generate n-grams in the sizes of the given range
 	 *
-	 * @param factory {@link Reader} holding the input to be tokenized
+	 * @param factory {@link AttributeFactory} to use
 	 * @param side the {@link Side} from which to chop off an n-gram
 	 * @param minGram the smallest n-gram to generate
 	 * @param maxGram the largest n-gram to generate
+	 * @param maxInputLength the maximum number of chars read from the input
 	 */
-	public EdgeNGramTokenizer(AttributeFactory factory, Side side, int minGram, int maxGram) {
+	public EdgeNGramTokenizer(AttributeFactory factory, Side side, int minGram, int maxGram, int maxInputLength) {
 		super(factory);
-		init(side, minGram, maxGram);
+		init(side, minGram, maxGram, maxInputLength);
+	}
+
+	/**
+	 * Creates EdgeNGramTokenizer that can generate n-grams in the sizes of the given range
+	 *
+	 * @param factory {@link AttributeFactory} to use
+	 * @param side the {@link Side} from which to chop off an n-gram
+	 * @param minGram the smallest n-gram to generate
+	 * @param maxGram the largest n-gram to generate
+	 */
+	public EdgeNGramTokenizer(AttributeFactory factory, Side side, int minGram, int maxGram) {
+		this(factory, side, minGram, maxGram, DEFAULT_MAX_INPUT_LENGTH);
 	}
 
 	/**
@@ -85,7 +126,7 @@ public final class EdgeNGramTokenizer extends Tokenizer {
 		this(factory, Side.getSide(sideLabel), minGram, maxGram);
 	}
 
-	private void init(Side side, int minGram, int maxGram) {
+	private void init(Side side, int minGram, int maxGram, int maxInputLength) {
 		if (side == null) {
 			throw new IllegalArgumentException("sideLabel must be either front or back");
 		}
@@ -98,53 +139,165 @@ public final class EdgeNGramTokenizer extends Tokenizer {
 			throw new IllegalArgumentException("minGram must not be greater than maxGram");
 		}
 
+		if (maxInputLength < 1) {
+			throw new IllegalArgumentException("maxInputLength must be greater than zero");
+		}
+
 		this.minGram = minGram;
 		this.maxGram = maxGram;
+		this.maxInputLength = maxInputLength;
 		this.side = side;
+		int capacity = Integer.highestOneBit(maxGram);
+		if (capacity < maxGram) {
+			capacity <<= 1;
+		}
+		this.codePoints = new int[capacity];
+		this.charOffsets = new int[capacity];
+		this.pendingCodePoints = new int[capacity];
+		this.pendingOffsets = new int[capacity];
+		this.mask = capacity - 1;
+		this.charBuffer = CharacterUtils.newCharacterBuffer(READ_BUFFER_SIZE);
 	}
 
 	/** Returns the next token in the stream, or null at EOS. */
 	@Override
 	public final boolean incrementToken() throws IOException {
 		clearAttributes();
-		// if we are just starting, read the whole input
 		if (!started) {
 			started = true;
-			char[] chars = new char[1024];
-			int charsRead = input.read(chars);
-			inStr = new String(chars, 0, charsRead).trim();  // remove any leading or trailing spaces
-			inLen = inStr.length();
+			consume();
 			gramSize = minGram;
 		}
 
-		// if the remaining input is too short, we can't generate any n-grams
-		if (gramSize > inLen) {
+		// if the input is too short or we have hit the end of our n-gram size range, quit
+		if (gramSize > count || gramSize > maxGram) {
 			return false;
 		}
 
-		// if we have hit the end of our n-gram size range, quit
-		if (gramSize > maxGram) {
-			return false;
+		// grab gramSize code points from front or back
+		final int first = side == Side.FRONT ? 0 : count - gramSize;
+		final int last = first + gramSize - 1;
+		char[] termBuffer = termAtt.resizeBuffer(2 * gramSize);
+		int length = 0;
+		for (int i = first; i <= last; i++) {
+			length += Character.toChars(codePoints[i & mask], termBuffer, length);
 		}
-
-		// grab gramSize chars from front or back
-		int start = side == Side.FRONT ? 0 : inLen - gramSize;
-		int end = start + gramSize;
-		termAtt.setEmpty().append(inStr, start, end);
+		termAtt.setLength(length);
+		final int start = charOffsets[first & mask];
+		final int end = charOffsets[last & mask] + Character.charCount(codePoints[last & mask]);
 		offsetAtt.setOffset(correctOffset(start), correctOffset(end));
 		gramSize++;
 		return true;
 	}
 
+	/**
+	 * Reads the input into the window until the chosen side has all it needs, the input is
+	 * exhausted or {@code maxInputLength} chars were read.
+	 */
+	private void consume() throws IOException {
+		while (true) {
+			if (bufferIndex >= charBuffer.getLength()) {
+				CharacterUtils.fill(charBuffer, input);
+				bufferIndex = 0;
+				if (charBuffer.getLength() == 0) {
+					return;
+				}
+			}
+			final int codePoint = Character.codePointAt(charBuffer.getBuffer(), bufferIndex, charBuffer.getLength());
+			final int charCount = Character.charCount(codePoint);
+			if (offset + charCount > maxInputLength) {
+				return;
+			}
+			final int codePointOffset = offset;
+			bufferIndex += charCount;
+			offset += charCount;
+			if (Character.isWhitespace(codePoint)) {
+				if (inText) {
+					// FRONT only ever needs the first maxGram of them, BACK the last maxGram
+					if (side == Side.BACK || pendingCount <= mask) {
+						pendingCodePoints[pendingCount & mask] = codePoint;
+						pendingOffsets[pendingCount & mask] = codePointOffset;
+					}
+					pendingCount++;
+				}
+			} else {
+				inText = true;
+				flushPending();
+				push(codePoint, codePointOffset);
+				if (side == Side.FRONT && count >= maxGram) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts the chars of the input consume() did not need, up to {@code maxInputLength}.
+	 */
+	private void skipRest() throws IOException {
+		while (offset < maxInputLength) {
+			if (bufferIndex >= charBuffer.getLength()) {
+				CharacterUtils.fill(charBuffer, input);
+				bufferIndex = 0;
+				if (charBuffer.getLength() == 0) {
+					return;
+				}
+			}
+			final int skipped = Math.min(charBuffer.getLength() - bufferIndex, maxInputLength - offset);
+			bufferIndex += skipped;
+			offset += skipped;
+		}
+	}
+
+	/**
+	 * Moves the whitespace seen since the last non whitespace code point into the window, now that
+	 * it is known not to be trailing.
+	 */
+	private void flushPending() {
+		if (pendingCount == 0) {
+			return;
+		}
+		int from = 0;
+		if (side == Side.BACK && pendingCount > codePoints.length) {
+			// the skipped ones would be pushed out of the window by the rest anyway
+			from = pendingCount - codePoints.length;
+			count += from;
+		}
+		for (int i = from; i < pendingCount; i++) {
+			if (side == Side.FRONT && count >= maxGram) {
+				break;
+			}
+			push(pendingCodePoints[i & mask], pendingOffsets[i & mask]);
+		}
+		pendingCount = 0;
+	}
+
+	private void push(int codePoint, int charOffset) {
+		if (side == Side.FRONT && count >= maxGram) {
+			return;
+		}
+		codePoints[count & mask] = codePoint;
+		charOffsets[count & mask] = charOffset;
+		count++;
+	}
+
 	@Override
-	public final void end() {
-		final int finalOffset = inLen;
+	public final void end() throws IOException {
+		super.end();
+		skipRest();
+		final int finalOffset = correctOffset(offset);
 		this.offsetAtt.setOffset(finalOffset, finalOffset);
 	}
 
 	@Override
 	public void reset() throws IOException {
 		super.reset();
+		charBuffer.reset();
+		bufferIndex = 0;
 		started = false;
+		count = 0;
+		offset = 0;
+		pendingCount = 0;
+		inText = false;
 	}
 }
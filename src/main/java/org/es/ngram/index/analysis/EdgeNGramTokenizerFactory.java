@@ -0,0 +1,45 @@
+package org.es.ngram.index.analysis;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.util.AttributeFactory;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.analysis.AbstractTokenizerFactory;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.analysis
+ * @date 2024-06-27 14:05
+ * @description Registers {@link EdgeNGramTokenizer} as the edge-ngram-tokenizer, configured through
+ * the side, min_gram, max_gram and max_input_length settings.
+ */
+public class EdgeNGramTokenizerFactory extends AbstractTokenizerFactory {
+	private final EdgeNGramTokenizer.Side side;
+	private final int minGram;
+	private final int maxGram;
+	private final int maxInputLength;
+
+	public EdgeNGramTokenizerFactory(IndexSettings indexSettings, Environment env, String name, Settings settings) {
+		super(indexSettings, settings, name);
+		String sideStr = settings.get("side", EdgeNGramTokenizer.DEFAULT_SIDE.getLabel());
+		this.side = EdgeNGramTokenizer.Side.getSide(sideStr);
+		if (null == this.side) {
+			throw new IllegalArgumentException("[side] must be either front or back, but was [" + sideStr + "]");
+		}
+		this.minGram = settings.getAsInt("min_gram", EdgeNGramTokenizer.DEFAULT_MIN_GRAM_SIZE);
+		this.maxGram = settings.getAsInt("max_gram", EdgeNGramTokenizer.DEFAULT_MAX_GRAM_SIZE);
+		this.maxInputLength = settings.getAsInt("max_input_length", EdgeNGramTokenizer.DEFAULT_MAX_INPUT_LENGTH);
+		// fail on bad settings when the index is created rather than on the first document
+		new EdgeNGramTokenizer(AttributeFactory.DEFAULT_ATTRIBUTE_FACTORY, side, minGram, maxGram, maxInputLength);
+	}
+
+	public static EdgeNGramTokenizerFactory getEdgeNGramTokenizerFactory(IndexSettings indexSettings, Environment env, String name, Settings settings) {
+		return new EdgeNGramTokenizerFactory(indexSettings, env, name, settings);
+	}
+
+	@Override
+	public Tokenizer create() {
+		return new EdgeNGramTokenizer(AttributeFactory.DEFAULT_ATTRIBUTE_FACTORY, side, minGram, maxGram, maxInputLength);
+	}
+}
@@ -0,0 +1,94 @@
+package org.es.ngram.index.analysis;
+
+import org.apache.lucene.analysis.Analyzer.TokenStreamComponents;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.util.AttributeFactory;
+import org.es.ngram.stats.AnalyzerStats;
+import org.es.ngram.stats.ConvertStats;
+import org.es.ngram.utils.CharClassTable;
+import org.es.ngram.utils.DoubleArrayTrie;
+
+import java.io.Reader;
+import java.util.function.Consumer;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.analysis
+ * @date 2024-07-19 11:15
+ * @description Assembles the parts of the analysis chain that {@link NGramAnalyzer} and
+ * {@link EdgeNGramAnalyzer} share: the attribute factory, the normalization before the gram
+ * filter and the wrapping of the finished chain.
+ *
+ * <p>With keepChars the text goes through a {@link NormalizingCharFilter} that lowercases it,
+ * converts it between traditional and simplified Chinese unless the tokens have to be converted,
+ * and drops the chars outside keepChars. Without, the tokens are lowercased and converted one by
+ * one, which is faster than the char filter. The dialect dictionaries are in simplified Chinese,
+ * so their rewrite runs where the text is simplified: after t2s, before s2t.
+ */
+final class GramAnalysisChain {
+	private GramAnalysisChain() {
+	}
+
+	/**
+	 * The factory of the term attribute the gram filters hand their grams to.
+	 */
+	static AttributeFactory attributeFactory(int hashWidth) {
+		return hashWidth > 0 ? HashedTermAttributeImpl.factory(hashWidth) : GramTermAttributeImpl.FACTORY;
+	}
+
+	/**
+	 * Lowercases the tokens of source unless the char filter has, then converts them and rewrites
+	 * their dialect terms where the char filter does not.
+	 *
+	 * @param dialectTrie the dialect dictionaries, or null
+	 * @param keepChars the chars kept by the char filter, or null without char filter
+	 * @param stats the stats of the analyzer, or null
+	 */
+	static TokenStream normalize(Tokenizer source, STConvertType stConvertType, DoubleArrayTrie dialectTrie,
+			CharClassTable keepChars, AnalyzerStats stats) {
+		TokenStream in = null == keepChars ? new LowerCaseFilter(source) : source;
+		if (null != dialectTrie && stConvertType == STConvertType.SIMPLE_2_TRADITIONAL) {
+			in = new DialectTokenFilter(in, dialectTrie);
+		}
+		if (convertTokens(stConvertType, dialectTrie, keepChars)) {
+			in = new STConvertTokenFilter(in, stConvertType, ",", false, convertStats(stats));
+		}
+		if (null != dialectTrie && stConvertType == STConvertType.TRADITIONAL_2_SIMPLE) {
+			in = new DialectTokenFilter(in, dialectTrie);
+		}
+		return in;
+	}
+
+	/**
+	 * Finishes the chain from source to result: counts into the stats, installs the char filter
+	 * in front of source and serves short inputs from the search analysis cache, each if given.
+	 */
+	static TokenStreamComponents components(Tokenizer source, TokenStream result, STConvertType stConvertType,
+			DoubleArrayTrie dialectTrie, CharClassTable keepChars, SearchAnalysisCache searchAnalysisCache, AnalyzerStats stats) {
+		if (null != stats) {
+			result = new AnalysisStatsTokenFilter(result, stats);
+		}
+		Consumer<Reader> sourceReader;
+		if (null == keepChars) {
+			sourceReader = source::setReader;
+		} else {
+			DoubleArrayTrie trie = convertTokens(stConvertType, dialectTrie, keepChars) ? null : STConverter.getInstance().trie(stConvertType);
+			sourceReader = reader -> source.setReader(new NormalizingCharFilter(reader, true, trie, keepChars, convertStats(stats)));
+		}
+		return null == searchAnalysisCache ? new TokenStreamComponents(sourceReader, result) : searchAnalysisCache.wrap(sourceReader, result);
+	}
+
+	/**
+	 * Tokens are converted unless the char filter converts the text. With s2t the dialect terms
+	 * have to be rewritten before converting, so per token.
+	 */
+	private static boolean convertTokens(STConvertType stConvertType, DoubleArrayTrie dialectTrie, CharClassTable keepChars) {
+		return null == keepChars || null != dialectTrie && stConvertType == STConvertType.SIMPLE_2_TRADITIONAL;
+	}
+
+	private static ConvertStats convertStats(AnalyzerStats stats) {
+		return null == stats ? null : stats.convert();
+	}
+}
@@ -0,0 +1,165 @@
+package org.es.ngram.index.analysis;
+
+import org.es.ngram.stats.GramBudgetStats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.analysis
+ * @date 2024-06-28 10:12
+ * @description Limits on how many grams {@link NGramTokenFilter} may emit, shared by all the
+ * token streams of one analyzer.
+ *
+ * <p>A token whose grams do not fit in its budget first gets a lower max gram length, the largest
+ * one that fits, so every position of the token keeps its short grams. Only if even the
+ * {@code minGram} grams do not fit are they truncated, keeping the first ones in emission order.
+ * A document here is one pass of the token stream, i.e. one field value. Once its budget is
+ * spent the grams of the remaining tokens are dropped, only tokens shorter than {@code minGram}
+ * still pass through. A token is never emitted whole in place of its grams, a long one would
+ * exceed the term length limit of the index.
+ *
+ * <p>The adaptive mode lowers the max gram length of tokens longer than
+ * {@code adaptiveTokenLength} code points to {@code maxGram * adaptiveTokenLength / length}.
+ */
+public class GramBudget {
+	public static final int UNLIMITED = 0;
+	public static final int DEFAULT_ADAPTIVE_TOKEN_LENGTH = 32;
+
+	/** No limit at all, filters skip every budget check */
+	public static final GramBudget NONE = new GramBudget(UNLIMITED, UNLIMITED, false, DEFAULT_ADAPTIVE_TOKEN_LENGTH);
+
+	private final int maxGramsPerToken;
+	private final int maxGramsPerDocument;
+	private final boolean adaptiveMaxGram;
+	private final int adaptiveTokenLength;
+
+	private final LongAdder tokenLimitHits = new LongAdder();
+	private final LongAdder documentLimitHits = new LongAdder();
+	private final LongAdder adaptiveHits = new LongAdder();
+	/** node wide counters of the analyzer or filter name, null if not reported */
+	private volatile GramBudgetStats stats;
+
+	/**
+	 * @param maxGramsPerToken the most grams a single token may emit, {@link #UNLIMITED} for no limit
+	 * @param maxGramsPerDocument the most grams a document may emit, {@link #UNLIMITED} for no limit
+	 * @param adaptiveMaxGram whether longer tokens get a lower max gram length
+	 * @param adaptiveTokenLength the token length in code points above which the adaptive mode kicks in
+	 */
+	public GramBudget(int maxGramsPerToken, int maxGramsPerDocument, boolean adaptiveMaxGram, int adaptiveTokenLength) {
+		if (maxGramsPerToken < 0) {
+			throw new IllegalArgumentException("maxGramsPerToken must not be negative");
+		}
+		if (maxGramsPerDocument < 0) {
+			throw new IllegalArgumentException("maxGramsPerDocument must not be negative");
+		}
+		if (adaptiveTokenLength < 1) {
+			throw new IllegalArgumentException("adaptiveTokenLength must be greater than zero");
+		}
+		this.maxGramsPerToken = maxGramsPerToken;
+		this.maxGramsPerDocument = maxGramsPerDocument;
+		this.adaptiveMaxGram = adaptiveMaxGram;
+		this.adaptiveTokenLength = adaptiveTokenLength;
+	}
+
+	/**
+	 * Whether any limit applies.
+	 */
+	public boolean isLimited() {
+		return maxGramsPerToken != UNLIMITED || maxGramsPerDocument != UNLIMITED || adaptiveMaxGram;
+	}
+
+	/**
+	 * The max gram length to use for a token of the given length, lowered by the adaptive mode.
+	 */
+	public int adaptiveMaxGram(int minGram, int maxGram, int codePointCount) {
+		if (!adaptiveMaxGram || codePointCount <= adaptiveTokenLength) {
+			return maxGram;
+		}
+		int adapted = (int) Math.max(minGram, (long) maxGram * adaptiveTokenLength / codePointCount);
+		if (adapted < maxGram) {
+			adaptiveHits.increment();
+			GramBudgetStats stats = this.stats;
+			if (null != stats) {
+				stats.adaptiveHit();
+			}
+		}
+		return Math.min(adapted, maxGram);
+	}
+
+	/**
+	 * The number of grams {@link NGramTokenFilter} emits for a token of the given length.
+	 */
+	public static long gramCount(int codePointCount, int minGram, int maxGram) {
+		if (codePointCount < minGram) {
+			return 0L;
+		}
+		// every gram length up to maxGram ends at (len - minGram + 1) start positions
+		long k = Math.min(maxGram, codePointCount);
+		long full = (k - minGram + 1) * (k - minGram + 2) / 2;
+		return full + (codePointCount - k) * (maxGram - minGram + 1);
+	}
+
+	public int getMaxGramsPerToken() {
+		return maxGramsPerToken;
+	}
+
+	public int getMaxGramsPerDocument() {
+		return maxGramsPerDocument;
+	}
+
+	public boolean isAdaptiveMaxGram() {
+		return adaptiveMaxGram;
+	}
+
+	public int getAdaptiveTokenLength() {
+		return adaptiveTokenLength;
+	}
+
+	/**
+	 * How many tokens had their grams reduced by {@code maxGramsPerToken}.
+	 */
+	public long tokenLimitHits() {
+		return tokenLimitHits.sum();
+	}
+
+	/**
+	 * How many documents ran out of their {@code maxGramsPerDocument} budget.
+	 */
+	public long documentLimitHits() {
+		return documentLimitHits.sum();
+	}
+
+	/**
+	 * How many tokens got a lower max gram length from the adaptive mode.
+	 */
+	public long adaptiveHits() {
+		return adaptiveHits.sum();
+	}
+
+	/**
+	 * Also counts the limit hits into the given node wide stats. An unlimited budget, which never
+	 * hits a limit and may be shared like {@link #NONE}, ignores it.
+	 */
+	public void setStats(GramBudgetStats stats) {
+		if (isLimited()) {
+			this.stats = stats;
+		}
+	}
+
+	void tokenLimitHit() {
+		tokenLimitHits.increment();
+		GramBudgetStats stats = this.stats;
+		if (null != stats) {
+			stats.tokenLimitHit();
+		}
+	}
+
+	void documentLimitHit() {
+		documentLimitHits.increment();
+		GramBudgetStats stats = this.stats;
+		if (null != stats) {
+			stats.documentLimitHit();
+		}
+	}
+}
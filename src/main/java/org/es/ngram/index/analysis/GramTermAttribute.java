@@ -0,0 +1,23 @@
+package org.es.ngram.index.analysis;
+
+import org.apache.lucene.util.Attribute;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.analysis
+ * @date 2024-07-03 10:20
+ * @description Lets a gram filter hand over the UTF-8 bytes of the term it just wrote.
+ *
+ * <p>All grams of a token are substrings of the same text, so the gram filters encode the token to
+ * UTF-8 once and pass each gram as a slice of that buffer instead of having the indexing chain
+ * encode every gram again. Only present when the tokenizer was created with
+ * {@link GramTermAttributeImpl#FACTORY}, as the ngram analyzers do.
+ */
+public interface GramTermAttribute extends Attribute {
+	/**
+	 * Sets the UTF-8 bytes of the char term that was just written. The bytes are not copied and stay
+	 * in use until the term is cleared or overwritten by another token, so the caller must leave
+	 * them alone until its next token.
+	 */
+	void setUTF8Slice(byte[] bytes, int offset, int length);
+}
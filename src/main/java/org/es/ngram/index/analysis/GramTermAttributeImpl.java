@@ -0,0 +1,108 @@
+package org.es.ngram.index.analysis;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.PackedTokenAttributeImpl;
+import org.apache.lucene.util.AttributeFactory;
+import org.apache.lucene.util.AttributeImpl;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.analysis
+ * @date 2024-07-03 10:25
+ * @description Token attributes that return the UTF-8 slice set through {@link GramTermAttribute}
+ * as the indexed term instead of encoding the char term.
+ *
+ * <p>The char term stays the source of truth: a slice is dropped by {@link #clear()} and by
+ * {@link #copyTo(AttributeImpl)}, and ignored once the term length no longer matches, after which
+ * {@link #getBytesRef()} encodes the chars as usual. The gram filters set the slice right after
+ * writing a gram and are the last filter of the analyzers installing {@link #FACTORY}, so nothing
+ * edits the chars in between.
+ */
+public class GramTermAttributeImpl extends PackedTokenAttributeImpl implements GramTermAttribute {
+	public static final AttributeFactory FACTORY =
+			AttributeFactory.getStaticImplementation(TokenStream.DEFAULT_TOKEN_ATTRIBUTE_FACTORY, GramTermAttributeImpl.class);
+
+	private BytesRef slice = new BytesRef();
+	/** term length the slice was set for, -1 without a slice */
+	private int sliceTermLength = -1;
+
+	@Override
+	public void setUTF8Slice(byte[] bytes, int offset, int length) {
+		slice.bytes = bytes;
+		slice.offset = offset;
+		slice.length = length;
+		sliceTermLength = length();
+	}
+
+	@Override
+	public BytesRef getBytesRef() {
+		if (sliceTermLength >= 0 && sliceTermLength == length()) {
+			return slice;
+		}
+		return super.getBytesRef();
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		sliceTermLength = -1;
+	}
+
+	@Override
+	public void copyTo(AttributeImpl target) {
+		super.copyTo(target);
+		if (target instanceof GramTermAttributeImpl) {
+			// the bytes belong to the filter that set them, a copy may outlive them
+			((GramTermAttributeImpl) target).sliceTermLength = -1;
+		}
+	}
+
+	@Override
+	public GramTermAttributeImpl clone() {
+		GramTermAttributeImpl t = (GramTermAttributeImpl) super.clone();
+		t.slice = new BytesRef();
+		t.sliceTermLength = -1;
+		return t;
+	}
+
+	/**
+	 * Encodes the chars to UTF-8 the way {@link org.apache.lucene.util.UnicodeUtil#UTF16toUTF8} does,
+	 * unpaired surrogates included, and records the byte offset of every code point plus the total
+	 * at index codePointCount. out must hold 3 bytes per char and codePointByteOffsets one int per
+	 * code point plus one.
+	 *
+	 * @return the number of bytes written
+	 */
+	public static int encodeUTF8(char[] chars, int length, byte[] out, int[] codePointByteOffsets) {
+		int upto = 0;
+		int cp = 0;
+		for (int i = 0; i < length; i++) {
+			codePointByteOffsets[cp++] = upto;
+			final int code = chars[i];
+			if (code < 0x80) {
+				out[upto++] = (byte) code;
+			} else if (code < 0x800) {
+				out[upto++] = (byte) (0xC0 | (code >> 6));
+				out[upto++] = (byte) (0x80 | (code & 0x3F));
+			} else if (code < 0xD800 || code > 0xDFFF) {
+				out[upto++] = (byte) (0xE0 | (code >> 12));
+				out[upto++] = (byte) (0x80 | ((code >> 6) & 0x3F));
+				out[upto++] = (byte) (0x80 | (code & 0x3F));
+			} else if (code < 0xDC00 && i + 1 < length && Character.isLowSurrogate(chars[i + 1])) {
+				final int codePoint = Character.toCodePoint((char) code, chars[++i]);
+				out[upto++] = (byte) (0xF0 | (codePoint >> 18));
+				out[upto++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				out[upto++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				out[upto++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else {
+				// unpaired surrogate, replaced by U+FFFD
+				out[upto++] = (byte) 0xEF;
+				out[upto++] = (byte) 0xBF;
+				out[upto++] = (byte) 0xBD;
+			}
+		}
+		codePointByteOffsets[cp] = upto;
+		return upto;
+	}
+}
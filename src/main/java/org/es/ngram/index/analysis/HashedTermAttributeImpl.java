@@ -0,0 +1,119 @@
+package org.es.ngram.index.analysis;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.util.AttributeFactory;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.hash.MurmurHash3;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.analysis
+ * @date 2024-07-02 09:40
+ * @description Token attributes whose indexed term is a fixed width hash of the term text.
+ *
+ * <p>The char term is kept as is so every filter of the chain works on the text, only
+ * {@link #getBytesRef()} changes: it returns the first {@code width} bytes of the 128 bit MurmurHash3
+ * of the UTF-8 term. Grams of any length then become terms of 4, 8 or 16 bytes, which keeps the terms
+ * dictionary and its index small. Installed through {@link #factory(int)} on the tokenizer of an
+ * analyzer, so index and search side hash the same way as long as they use the same width. The
+ * UTF-8 slices handed over by the gram filters are hashed directly, see {@link GramTermAttributeImpl}.
+ */
+public class HashedTermAttributeImpl extends GramTermAttributeImpl {
+	public static final int DEFAULT_HASH_WIDTH = 8;
+
+	private static final long SEED = 0L;
+
+	private final int width;
+	private byte[] hashBytes;
+	private BytesRef hashRef;
+	private MurmurHash3.Hash128 hash128;
+
+	public HashedTermAttributeImpl(int width) {
+		checkWidth(width);
+		this.width = width;
+		this.hashBytes = new byte[width];
+		this.hashRef = new BytesRef(hashBytes);
+		this.hash128 = new MurmurHash3.Hash128();
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public BytesRef getBytesRef() {
+		BytesRef utf8 = super.getBytesRef();
+		hash(utf8, width, hash128, hashBytes);
+		return hashRef;
+	}
+
+	@Override
+	public HashedTermAttributeImpl clone() {
+		HashedTermAttributeImpl t = (HashedTermAttributeImpl) super.clone();
+		t.hashBytes = new byte[width];
+		t.hashRef = new BytesRef(t.hashBytes);
+		t.hash128 = new MurmurHash3.Hash128();
+		return t;
+	}
+
+	/**
+	 * Returns the hashed term of the UTF-8 bytes, as indexed by a chain using the given width.
+	 */
+	public static BytesRef hash(BytesRef utf8, int width) {
+		checkWidth(width);
+		byte[] bytes = new byte[width];
+		hash(utf8, width, new MurmurHash3.Hash128(), bytes);
+		return new BytesRef(bytes);
+	}
+
+	/**
+	 * Returns a factory creating hashed term attributes of the given width on top of the default
+	 * token attributes.
+	 */
+	public static AttributeFactory factory(int width) {
+		checkWidth(width);
+		return new Factory(width);
+	}
+
+	public static void checkWidth(int width) {
+		if (width != 4 && width != 8 && width != 16) {
+			throw new IllegalArgumentException("hash width must be 4, 8 or 16 bytes, got " + width);
+		}
+	}
+
+	private static void hash(BytesRef utf8, int width, MurmurHash3.Hash128 hash128, byte[] out) {
+		MurmurHash3.hash128(utf8.bytes, utf8.offset, utf8.length, SEED, hash128);
+		long h1 = hash128.h1;
+		for (int i = 0, n = Math.min(width, Long.BYTES); i < n; i++) {
+			out[i] = (byte) (h1 >>> (56 - (i << 3)));
+		}
+		long h2 = hash128.h2;
+		for (int i = Long.BYTES; i < width; i++) {
+			out[i] = (byte) (h2 >>> (56 - ((i - Long.BYTES) << 3)));
+		}
+	}
+
+	private static final class Factory extends AttributeFactory.StaticImplementationAttributeFactory<HashedTermAttributeImpl> {
+		private final int width;
+
+		Factory(int width) {
+			super(TokenStream.DEFAULT_TOKEN_ATTRIBUTE_FACTORY, HashedTermAttributeImpl.class);
+			this.width = width;
+		}
+
+		@Override
+		protected HashedTermAttributeImpl createInstance() {
+			return new HashedTermAttributeImpl(width);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return super.equals(other) && width == ((Factory) other).width;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * super.hashCode() + width;
+		}
+	}
+}
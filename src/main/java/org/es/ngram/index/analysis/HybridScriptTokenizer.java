@@ -0,0 +1,389 @@
+package org.es.ngram.index.analysis;
+
+import org.apache.lucene.analysis.CharacterUtils;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.AttributeFactory;
+
+import java.io.IOException;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.analysis
+ * @date 2024-07-13 09:20
+ * @description Tokenizer that splits the input into script runs and grams each run the way its
+ * script needs.
+ *
+ * <p>Runs of Han, Hiragana, Katakana and Hangul, which are written without spaces, are windowed into
+ * grams of {@code cjkMinGram} to {@code cjkMaxGram} code points, the grams starting at the same
+ * code point sharing a position and a run shorter than {@code cjkMinGram} kept whole. Runs of
+ * letters and digits of any other script are kept as words of at most {@code maxTokenLength} chars,
+ * optionally followed at the same position by their edge grams of {@code wordMinGram} to
+ * {@code wordMaxGram} code points. Everything else separates runs and is dropped. Compared with
+ * grams of every whitespace token this skips the interior grams of words and the grams spanning
+ * a script change, which no query needs.
+ *
+ * <p>The run class of every BMP char is looked up in a table computed once from
+ * {@link Character.UnicodeScript}. The input is streamed: a CJK run only keeps the code points its
+ * next grams need, so a run of any length is gramed in constant memory.
+ */
+public final class HybridScriptTokenizer extends Tokenizer {
+	public static final int DEFAULT_CJK_MIN_GRAM = 2;
+	public static final int DEFAULT_CJK_MAX_GRAM = 3;
+	public static final boolean DEFAULT_WORD_EDGE_GRAMS = false;
+	public static final int DEFAULT_WORD_MIN_GRAM = 2;
+	public static final int DEFAULT_WORD_MAX_GRAM = 10;
+	public static final int DEFAULT_MAX_TOKEN_LENGTH = 255;
+
+	public static final String CJK_TYPE = "<CJK>";
+	public static final String WORD_TYPE = "<WORD>";
+	public static final String EDGE_TYPE = "<EDGE>";
+
+	private static final int READ_BUFFER_SIZE = 1024;
+
+	/** separates runs */
+	private static final byte OTHER = 0;
+	/** letters and digits of scripts written with spaces */
+	private static final byte WORD = 1;
+	/** letters of scripts written without spaces */
+	private static final byte CJK = 2;
+	/** marks and script neutral letters, part of the run they follow */
+	private static final byte JOIN = 3;
+
+	private static final byte[] BMP_CLASSES = new byte[0x10000];
+
+	static {
+		for (int c = 0; c < BMP_CLASSES.length; c++) {
+			BMP_CLASSES[c] = classify(c);
+		}
+	}
+
+	private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+	private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+	private final PositionIncrementAttribute posIncAtt = addAttribute(PositionIncrementAttribute.class);
+	private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
+
+	private final int cjkMinGram;
+	private final int cjkMaxGram;
+	private final boolean wordEdgeGrams;
+	private final int wordMinGram;
+	private final int wordMaxGram;
+	private final int maxTokenLength;
+
+	private final CharacterUtils.CharacterBuffer charBuffer = CharacterUtils.newCharacterBuffer(READ_BUFFER_SIZE);
+	private int bufferIndex;
+	/** chars read from the input so far */
+	private int offset;
+	/** a code point read past the end of a run, -1 if none */
+	private int pushedBack;
+	private int pushedBackOffset;
+	/** start offset of the code point read last */
+	private int readOffset;
+
+	/** code points of the current run still needed, and their start offsets */
+	private int[] codePoints = new int[16];
+	private int[] charOffsets = new int[16];
+	private int length;
+	/** class of the current run, OTHER between runs */
+	private byte runClass;
+	/** whether the code points of the current run have all been read */
+	private boolean runEnded;
+	/** code points of the current run read so far */
+	private int runLength;
+
+	/** CJK runs: the code point the next grams start at and the size of the next one */
+	private int gramStart;
+	private int gramSize;
+	/** words: the size of the next edge gram, 0 before the word itself was emitted */
+	private int edgeSize;
+
+	/**
+	 * @param factory {@link AttributeFactory} to use
+	 * @param cjkMinGram the smallest gram of a CJK run
+	 * @param cjkMaxGram the largest gram of a CJK run
+	 * @param wordEdgeGrams whether to add the edge grams of words
+	 * @param wordMinGram the smallest edge gram of a word
+	 * @param wordMaxGram the largest edge gram of a word
+	 * @param maxTokenLength the longest word in chars, longer ones are split
+	 */
+	public HybridScriptTokenizer(AttributeFactory factory, int cjkMinGram, int cjkMaxGram, boolean wordEdgeGrams,
+								 int wordMinGram, int wordMaxGram, int maxTokenLength) {
+		super(factory);
+		if (cjkMinGram < 1) {
+			throw new IllegalArgumentException("cjkMinGram must be greater than zero");
+		}
+		if (cjkMinGram > cjkMaxGram) {
+			throw new IllegalArgumentException("cjkMinGram must not be greater than cjkMaxGram");
+		}
+		if (wordMinGram < 1) {
+			throw new IllegalArgumentException("wordMinGram must be greater than zero");
+		}
+		if (wordMinGram > wordMaxGram) {
+			throw new IllegalArgumentException("wordMinGram must not be greater than wordMaxGram");
+		}
+		if (maxTokenLength < 2) {
+			throw new IllegalArgumentException("maxTokenLength must be greater than one");
+		}
+		this.cjkMinGram = cjkMinGram;
+		this.cjkMaxGram = cjkMaxGram;
+		this.wordEdgeGrams = wordEdgeGrams;
+		this.wordMinGram = wordMinGram;
+		this.wordMaxGram = wordMaxGram;
+		this.maxTokenLength = maxTokenLength;
+	}
+
+	public HybridScriptTokenizer(AttributeFactory factory) {
+		this(factory, DEFAULT_CJK_MIN_GRAM, DEFAULT_CJK_MAX_GRAM, DEFAULT_WORD_EDGE_GRAMS, DEFAULT_WORD_MIN_GRAM,
+				DEFAULT_WORD_MAX_GRAM, DEFAULT_MAX_TOKEN_LENGTH);
+	}
+
+	@Override
+	public boolean incrementToken() throws IOException {
+		clearAttributes();
+		while (true) {
+			if (runClass == CJK ? nextCjkGram() : runClass == WORD && nextWord()) {
+				return true;
+			}
+			if (!startRun()) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Skips to the first code point of the next run, false at the end of the input.
+	 */
+	private boolean startRun() throws IOException {
+		runClass = OTHER;
+		length = 0;
+		runLength = 0;
+		runEnded = false;
+		int codePoint;
+		while ((codePoint = read()) >= 0) {
+			byte codePointClass = classOf(codePoint);
+			if (codePointClass == WORD || codePointClass == CJK) {
+				runClass = codePointClass;
+				push(codePoint, readOffset);
+				gramStart = 0;
+				gramSize = cjkMinGram;
+				edgeSize = 0;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the current run until {@code needed} of its code points are buffered or it ends.
+	 */
+	private void fill(int needed) throws IOException {
+		while (length < needed && !runEnded) {
+			int codePoint = read();
+			if (codePoint < 0) {
+				runEnded = true;
+				return;
+			}
+			int charOffset = readOffset;
+			byte codePointClass = classOf(codePoint);
+			if (codePointClass == runClass || codePointClass == JOIN) {
+				push(codePoint, charOffset);
+			} else {
+				runEnded = true;
+				if (codePointClass != OTHER) {
+					// it starts the next run
+					pushedBack = codePoint;
+					pushedBackOffset = charOffset;
+				}
+			}
+		}
+	}
+
+	private boolean nextCjkGram() throws IOException {
+		while (true) {
+			if (gramStart > 0 && length + cjkMaxGram > codePoints.length) {
+				compact();
+			}
+			fill(gramStart + cjkMaxGram);
+			final int available = length - gramStart;
+			if (runEnded && runLength < cjkMinGram) {
+				// too short for a gram, kept whole once
+				if (gramStart > 0) {
+					return false;
+				}
+				gramStart = length;
+				emit(0, length, 1, CJK_TYPE);
+				return true;
+			}
+			if (gramSize <= cjkMaxGram && gramSize <= available) {
+				emit(gramStart, gramSize, gramSize == cjkMinGram ? 1 : 0, CJK_TYPE);
+				gramSize++;
+				return true;
+			}
+			if (available < cjkMinGram) {
+				// no gram starts this late in the run
+				return false;
+			}
+			gramStart++;
+			gramSize = cjkMinGram;
+		}
+	}
+
+	private boolean nextWord() throws IOException {
+		if (edgeSize == 0) {
+			if (length == 0) {
+				// the rest of a word longer than maxTokenLength
+				fill(1);
+				if (length == 0) {
+					return false;
+				}
+			}
+			fillWord();
+			emit(0, length, 1, WORD_TYPE);
+			edgeSize = wordMinGram;
+			return true;
+		}
+		if (wordEdgeGrams && edgeSize <= wordMaxGram && edgeSize < length) {
+			emit(0, edgeSize++, 0, EDGE_TYPE);
+			return true;
+		}
+		if (runEnded) {
+			return false;
+		}
+		// the word was cut at maxTokenLength, its rest becomes the next word
+		length = 0;
+		edgeSize = 0;
+		return nextWord();
+	}
+
+	/**
+	 * Reads the current word until it ends or reaches maxTokenLength chars.
+	 */
+	private void fillWord() throws IOException {
+		while (!runEnded && charLength() < maxTokenLength) {
+			fill(length + 1);
+		}
+		if (charLength() > maxTokenLength) {
+			// the last code point was a surrogate pair that did not fit, it starts the rest
+			length--;
+			pushedBack = codePoints[length];
+			pushedBackOffset = charOffsets[length];
+			runEnded = false;
+		}
+	}
+
+	private int charLength() {
+		return length == 0 ? 0 : charOffsets[length - 1] + Character.charCount(codePoints[length - 1]) - charOffsets[0];
+	}
+
+	private void emit(int start, int size, int positionIncrement, String type) {
+		char[] buffer = termAtt.resizeBuffer(2 * size);
+		int termLength = 0;
+		for (int i = start; i < start + size; i++) {
+			termLength += Character.toChars(codePoints[i], buffer, termLength);
+		}
+		termAtt.setLength(termLength);
+		final int last = start + size - 1;
+		offsetAtt.setOffset(correctOffset(charOffsets[start]), correctOffset(charOffsets[last] + Character.charCount(codePoints[last])));
+		posIncAtt.setPositionIncrement(positionIncrement);
+		typeAtt.setType(type);
+	}
+
+	private void push(int codePoint, int charOffset) {
+		if (length == codePoints.length) {
+			codePoints = ArrayUtil.grow(codePoints, length + 1);
+			charOffsets = ArrayUtil.growExact(charOffsets, codePoints.length);
+		}
+		codePoints[length] = codePoint;
+		charOffsets[length] = charOffset;
+		length++;
+		runLength++;
+	}
+
+	/**
+	 * Drops the code points before gramStart, no gram needs them anymore.
+	 */
+	private void compact() {
+		System.arraycopy(codePoints, gramStart, codePoints, 0, length - gramStart);
+		System.arraycopy(charOffsets, gramStart, charOffsets, 0, length - gramStart);
+		length -= gramStart;
+		gramStart = 0;
+	}
+
+	/**
+	 * Returns the next code point of the input, -1 at its end.
+	 */
+	private int read() throws IOException {
+		if (pushedBack >= 0) {
+			int codePoint = pushedBack;
+			pushedBack = -1;
+			readOffset = pushedBackOffset;
+			return codePoint;
+		}
+		if (bufferIndex >= charBuffer.getLength()) {
+			CharacterUtils.fill(charBuffer, input);
+			bufferIndex = 0;
+			if (charBuffer.getLength() == 0) {
+				return -1;
+			}
+		}
+		int codePoint = Character.codePointAt(charBuffer.getBuffer(), bufferIndex, charBuffer.getLength());
+		int charCount = Character.charCount(codePoint);
+		readOffset = offset;
+		bufferIndex += charCount;
+		offset += charCount;
+		return codePoint;
+	}
+
+	private static byte classOf(int codePoint) {
+		return codePoint < BMP_CLASSES.length ? BMP_CLASSES[codePoint] : classify(codePoint);
+	}
+
+	private static byte classify(int codePoint) {
+		switch (Character.getType(codePoint)) {
+			case Character.NON_SPACING_MARK:
+			case Character.COMBINING_SPACING_MARK:
+			case Character.ENCLOSING_MARK:
+				return JOIN;
+			default:
+				break;
+		}
+		if (!Character.isLetterOrDigit(codePoint)) {
+			return OTHER;
+		}
+		switch (Character.UnicodeScript.of(codePoint)) {
+			case HAN:
+			case HIRAGANA:
+			case KATAKANA:
+			case HANGUL:
+				return CJK;
+			case COMMON:
+			case INHERITED:
+				// e.g. the prolonged sound mark of katakana, fullwidth digits are words
+				return Character.isDigit(codePoint) ? WORD : JOIN;
+			default:
+				return WORD;
+		}
+	}
+
+	@Override
+	public void end() throws IOException {
+		super.end();
+		final int finalOffset = correctOffset(offset);
+		offsetAtt.setOffset(finalOffset, finalOffset);
+	}
+
+	@Override
+	public void reset() throws IOException {
+		super.reset();
+		charBuffer.reset();
+		bufferIndex = 0;
+		offset = 0;
+		pushedBack = -1;
+		length = 0;
+		runClass = OTHER;
+	}
+}
@@ -0,0 +1,47 @@
+package org.es.ngram.index.analysis;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.util.AttributeFactory;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.analysis.AbstractTokenizerFactory;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.analysis
+ * @date 2024-07-13 10:30
+ * @description Registers {@link HybridScriptTokenizer} as the hybrid-script-tokenizer, configured
+ * through the cjk_min_gram, cjk_max_gram, word_edge_grams, word_min_gram, word_max_gram and
+ * max_token_length settings.
+ */
+public class HybridScriptTokenizerFactory extends AbstractTokenizerFactory {
+	private final int cjkMinGram;
+	private final int cjkMaxGram;
+	private final boolean wordEdgeGrams;
+	private final int wordMinGram;
+	private final int wordMaxGram;
+	private final int maxTokenLength;
+
+	public HybridScriptTokenizerFactory(IndexSettings indexSettings, Environment env, String name, Settings settings) {
+		super(indexSettings, settings, name);
+		this.cjkMinGram = settings.getAsInt("cjk_min_gram", HybridScriptTokenizer.DEFAULT_CJK_MIN_GRAM);
+		this.cjkMaxGram = settings.getAsInt("cjk_max_gram", HybridScriptTokenizer.DEFAULT_CJK_MAX_GRAM);
+		this.wordEdgeGrams = settings.getAsBoolean("word_edge_grams", HybridScriptTokenizer.DEFAULT_WORD_EDGE_GRAMS);
+		this.wordMinGram = settings.getAsInt("word_min_gram", HybridScriptTokenizer.DEFAULT_WORD_MIN_GRAM);
+		this.wordMaxGram = settings.getAsInt("word_max_gram", HybridScriptTokenizer.DEFAULT_WORD_MAX_GRAM);
+		this.maxTokenLength = settings.getAsInt("max_token_length", HybridScriptTokenizer.DEFAULT_MAX_TOKEN_LENGTH);
+		// fail on bad settings when the index is created rather than on the first document
+		create();
+	}
+
+	public static HybridScriptTokenizerFactory getHybridScriptTokenizerFactory(IndexSettings indexSettings, Environment env, String name, Settings settings) {
+		return new HybridScriptTokenizerFactory(indexSettings, env, name, settings);
+	}
+
+	@Override
+	public Tokenizer create() {
+		return new HybridScriptTokenizer(AttributeFactory.DEFAULT_ATTRIBUTE_FACTORY, cjkMinGram, cjkMaxGram, wordEdgeGrams,
+				wordMinGram, wordMaxGram, maxTokenLength);
+	}
+}
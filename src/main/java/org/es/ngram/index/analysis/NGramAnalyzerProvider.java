@@ -4,22 +4,168 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.env.Environment;
 import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.analysis.AbstractIndexAnalyzerProvider;
+import org.es.ngram.config.DialectDictRegistry;
+import org.es.ngram.stats.AnalysisStats;
+import org.es.ngram.utils.CharClassTable;
+import org.es.ngram.utils.ResourceFileUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class NGramAnalyzerProvider extends AbstractIndexAnalyzerProvider<NGramAnalyzer> {
     private final NGramAnalyzer analyzer;
 
     public NGramAnalyzerProvider(IndexSettings indexSettings, Environment env, String name, Settings settings) {
+        this(indexSettings, env, name, settings, false);
+    }
+
+    protected NGramAnalyzerProvider(IndexSettings indexSettings, Environment env, String name, Settings settings, boolean coveringGrams) {
         super(indexSettings,name, settings);
+        analyzer = buildAnalyzer(settings, coveringGrams, env);
+        analyzer.setAnalyzerStats(AnalysisStats.getInstance().analyzer(name));
+    }
+
+    public static NGramAnalyzerProvider getNGramAnalyzerProvider(IndexSettings indexSettings, Environment env, String name, Settings settings) {
+        return new NGramAnalyzerProvider(indexSettings, env, name, settings);
+    }
+
+    /**
+     * Builds an ngram analyzer from the min_gram, max_gram, st_convert_type, keep_orignal_gram,
+     * gram budget, dedupe, hash, search cache, dialect and keep_chars settings.
+     */
+    public static NGramAnalyzer buildAnalyzer(Settings settings, boolean coveringGrams) {
+        return buildAnalyzer(settings, coveringGrams, null);
+    }
+
+    /**
+     * Builds an ngram analyzer, resolving dialect dictionary files against the config directory of
+     * env if not null.
+     */
+    public static NGramAnalyzer buildAnalyzer(Settings settings, boolean coveringGrams, Environment env) {
         String minGramStr = settings.get("min_gram", "2");
         String maxGramStr = settings.get("max_gram", "100");
         String stConvertTypeStr = settings.get("st_convert_type", "t2s");
         boolean keepOrignalTerm = settings.get("keep_orignal_gram", "false").equals("true");
         STConvertType stConvertType = ("t2s".equals(stConvertTypeStr))? STConvertType.TRADITIONAL_2_SIMPLE : STConvertType.SIMPLE_2_TRADITIONAL;
-        analyzer = new NGramAnalyzer(Integer.valueOf(minGramStr), Integer.valueOf(maxGramStr), keepOrignalTerm, stConvertType);
+        return NGramAnalyzer.builder()
+                .minGram(Integer.valueOf(minGramStr))
+                .maxGram(Integer.valueOf(maxGramStr))
+                .keepOrignalTerm(keepOrignalTerm)
+                .stConvertType(stConvertType)
+                .gramBudget(buildGramBudget(settings))
+                .coveringGrams(coveringGrams)
+                .dedupeMaxGrams(dedupeMaxGrams(settings))
+                .hashWidth(hashWidth(settings))
+                .searchAnalysisCache(buildSearchAnalysisCache(settings))
+                .dialectDictPaths(settings.getAsBoolean("dialect_normalize", false) ? dialectDictPaths(settings, env) : null)
+                .keepChars(keepChars(settings))
+                .build();
     }
 
-    public static NGramAnalyzerProvider getNGramAnalyzerProvider(IndexSettings indexSettings, Environment env, String name, Settings settings) {
-        return new NGramAnalyzerProvider(indexSettings, env, name, settings);
+    /**
+     * Reads the dedupe_grams and dedupe_max_grams settings, 0 means grams are not deduplicated.
+     */
+    public static int dedupeMaxGrams(Settings settings) {
+        if (!settings.getAsBoolean("dedupe_grams", false)) {
+            return 0;
+        }
+        int dedupeMaxGrams = settings.getAsInt("dedupe_max_grams", NGramTokenFilter.DEFAULT_DEDUPE_MAX_GRAMS);
+        if (dedupeMaxGrams < 1) {
+            throw new IllegalArgumentException("[dedupe_max_grams] must be greater than zero");
+        }
+        return dedupeMaxGrams;
+    }
+
+    /**
+     * Reads the hash_grams and hash_width settings, 0 means grams are indexed as text.
+     */
+    public static int hashWidth(Settings settings) {
+        if (!settings.getAsBoolean("hash_grams", false)) {
+            return 0;
+        }
+        int hashWidth = settings.getAsInt("hash_width", HashedTermAttributeImpl.DEFAULT_HASH_WIDTH);
+        if (hashWidth != 4 && hashWidth != 8 && hashWidth != 16) {
+            throw new IllegalArgumentException("[hash_width] must be 4, 8 or 16");
+        }
+        return hashWidth;
+    }
+
+    /**
+     * Reads the dialect_dicts and dialect_dict_paths settings into the locations of the dialect
+     * dictionaries: the bundled ones named by dialect_dicts, all by default, then the files of
+     * dialect_dict_paths, which must be inside the config directory of env. Without env, e.g. for
+     * analyzers built from a REST request, dialect_dict_paths is rejected.
+     */
+    public static List<String> dialectDictPaths(Settings settings, Environment env) {
+        List<String> dictPaths = new ArrayList<>();
+        for (String name : settings.getAsList("dialect_dicts", DialectDictRegistry.BUNDLED_DICTS)) {
+            dictPaths.add(DialectDictRegistry.bundledDictPath(name));
+        }
+        List<String> paths = settings.getAsList("dialect_dict_paths", Collections.emptyList());
+        if (!paths.isEmpty() && null == env) {
+            throw new IllegalArgumentException("[dialect_dict_paths] is only supported in index settings and ingest pipelines");
+        }
+        for (String path : paths) {
+            if (path.startsWith(ResourceFileUtils.CLASSPATH_URL_PREFIX)) {
+                dictPaths.add(path);
+                continue;
+            }
+            Path configDir = env.configFile().toAbsolutePath().normalize();
+            Path file = configDir.resolve(path).normalize();
+            if (!file.startsWith(configDir)) {
+                throw new IllegalArgumentException("dialect dictionary [" + path + "] must be inside the config directory");
+            }
+            dictPaths.add(file.toString());
+        }
+        if (dictPaths.isEmpty()) {
+            throw new IllegalArgumentException("[dialect_dicts] and [dialect_dict_paths] must not both be empty");
+        }
+        return dictPaths;
+    }
+
+    /**
+     * Compiles the keep_chars setting, a list of char ranges like a-z or U+4E00-U+9FA5 and
+     * scripts like script:han, null if it is not set and every char is kept.
+     */
+    public static CharClassTable keepChars(Settings settings) {
+        List<String> keepChars = settings.getAsList("keep_chars", Collections.emptyList());
+        return keepChars.isEmpty() ? null : CharClassTable.compile(keepChars);
+    }
+
+    /**
+     * Builds the cache of short query analyses from the search_cache_size and
+     * search_cache_max_input_length settings, null if search_cache_size is not set.
+     */
+    public static SearchAnalysisCache buildSearchAnalysisCache(Settings settings) {
+        int size = settings.getAsInt("search_cache_size", 0);
+        if (size == 0) {
+            return null;
+        }
+        int maxInputLength = settings.getAsInt("search_cache_max_input_length", SearchAnalysisCache.DEFAULT_MAX_INPUT_LENGTH);
+        if (size < 0) {
+            throw new IllegalArgumentException("[search_cache_size] must not be negative");
+        }
+        if (maxInputLength < 1) {
+            throw new IllegalArgumentException("[search_cache_max_input_length] must be greater than zero");
+        }
+        return new SearchAnalysisCache(size, maxInputLength);
+    }
+
+    /**
+     * Builds the gram budget from the max_grams_per_token, max_grams_per_document,
+     * adaptive_max_gram and adaptive_token_length settings.
+     */
+    public static GramBudget buildGramBudget(Settings settings) {
+        int maxGramsPerToken = settings.getAsInt("max_grams_per_token", GramBudget.UNLIMITED);
+        int maxGramsPerDocument = settings.getAsInt("max_grams_per_document", GramBudget.UNLIMITED);
+        boolean adaptiveMaxGram = settings.getAsBoolean("adaptive_max_gram", false);
+        int adaptiveTokenLength = settings.getAsInt("adaptive_token_length", GramBudget.DEFAULT_ADAPTIVE_TOKEN_LENGTH);
+        if (maxGramsPerToken == GramBudget.UNLIMITED && maxGramsPerDocument == GramBudget.UNLIMITED && !adaptiveMaxGram) {
+            return GramBudget.NONE;
+        }
+        return new GramBudget(maxGramsPerToken, maxGramsPerDocument, adaptiveMaxGram, adaptiveTokenLength);
     }
 
     @Override public NGramAnalyzer get() {
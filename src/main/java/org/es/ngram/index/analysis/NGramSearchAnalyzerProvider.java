@@ -0,0 +1,27 @@
+package org.es.ngram.index.analysis;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.index.IndexSettings;
+
+/**
+ * Search side companion of {@link NGramAnalyzerProvider}. It takes the same settings but only
+ * emits the grams covering each query term, so a query touches a few posting lists instead of
+ * every gram of every size.
+ *
+ * <p>adaptive_max_gram and max_grams_per_token shorten the covering grams of long terms the way
+ * they shorten the grams indexed for them, max_grams_per_document can not be reproduced at search
+ * time: a token dropped past the document budget can not be found. The covering grams of a term
+ * take consecutive positions while the indexed grams of a token share one, so query them with a
+ * match query and the and operator rather than match_phrase.
+ */
+public class NGramSearchAnalyzerProvider extends NGramAnalyzerProvider {
+
+    public NGramSearchAnalyzerProvider(IndexSettings indexSettings, Environment env, String name, Settings settings) {
+        super(indexSettings, env, name, settings, true);
+    }
+
+    public static NGramSearchAnalyzerProvider getNGramSearchAnalyzerProvider(IndexSettings indexSettings, Environment env, String name, Settings settings) {
+        return new NGramSearchAnalyzerProvider(indexSettings, env, name, settings);
+    }
+}
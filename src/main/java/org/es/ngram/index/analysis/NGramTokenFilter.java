@@ -5,19 +5,33 @@ import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.AttributeImpl;
+import org.es.ngram.utils.CharSliceHashSet;
 
 import java.io.IOException;
+import java.util.Iterator;
 
 public final class NGramTokenFilter extends TokenFilter {
 	public static final boolean DEFAULT_PRESERVE_ORIGINAL = false;
 	public static final int DEFAULT_MIN_GRAMSIZE = 2;
 	public static final int DEFAULT_MAX_GRAMSIZE = 100;
+	public static final int DEFAULT_DEDUPE_MAX_GRAMS = 4096;
 
 	private final int minGram;
 	private final int maxGram;
 	private final boolean preserveOriginal;
+	private final GramBudget budget;
+	private final boolean coveringGrams;
+	/** grams emitted in the current document, null unless deduplicating */
+	private final CharSliceHashSet seenGrams;
 
+	/** the current term, null between input tokens */
 	private char[] curTermBuffer;
+	/** reusable backing array for curTermBuffer */
+	private char[] termBuffer = new char[0];
+	/** char offset of each code point of the current term */
+	private int[] codePointOffsets = new int[0];
 	private int curTermLength;
 	private int curTermCodePointCount;
 	private int curGramSize;
@@ -26,11 +40,28 @@ public final class NGramTokenFilter extends TokenFilter {
 	private int tokenStart;
 	private int lastStartOffset;
 	private State state;
+	/** whether attributes this filter does not write exist, their state is then restored for every gram */
+	private boolean restorePerGram;
+	/** max gram length of the current token, lowered by the budget */
+	private int curMaxGram;
+	/** code points of the current token covered by covering grams, lowered by the token budget */
+	private int curCoverLength;
+	/** grams the current token may still emit */
+	private long curGramsLeft;
+	/** grams the current document may still emit */
+	private long documentGramsLeft;
+	private boolean documentLimitHit;
 
 	private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
 	private final PositionIncrementAttribute posIncrAtt = addAttribute(PositionIncrementAttribute.class);
 	private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
 
+	/** set when the tokenizer takes UTF-8 slices, see {@link GramTermAttribute} */
+	private final GramTermAttribute gramTermAtt = hasAttribute(GramTermAttribute.class) ? getAttribute(GramTermAttribute.class) : null;
+	/** the current term in UTF-8 and the byte offset of each of its code points, if gramTermAtt is set */
+	private byte[] utf8Buffer = new byte[0];
+	private int[] codePointByteOffsets = new int[0];
+
 	/**
 	 * Creates an NGramTokenFilter that, for a given input term, produces all contained n-grams with
 	 * lengths &gt;= minGram and &lt;= maxGram. Will optionally preserve the original term when its
@@ -46,6 +77,65 @@ public final class NGramTokenFilter extends TokenFilter {
 	 *     minGram or longer than maxGram
 	 */
 	public NGramTokenFilter(TokenStream input, int minGram, int maxGram, boolean preserveOriginal) {
+		this(input, minGram, maxGram, preserveOriginal, GramBudget.NONE);
+	}
+
+	/**
+	 * Creates an NGramTokenFilter whose output is limited by the given {@link GramBudget}.
+	 *
+	 * @param input {@link TokenStream} holding the input to be tokenized
+	 * @param minGram the minimum length of the generated n-grams
+	 * @param maxGram the maximum length of the generated n-grams
+	 * @param preserveOriginal Whether or not to keep the original term when it is shorter than
+	 *     minGram or longer than maxGram
+	 * @param budget the limits on the number of grams, shared with other filters of the analyzer
+	 */
+	public NGramTokenFilter(TokenStream input, int minGram, int maxGram, boolean preserveOriginal, GramBudget budget) {
+		this(input, minGram, maxGram, preserveOriginal, budget, false);
+	}
+
+	/**
+	 * Creates an NGramTokenFilter that, if coveringGrams is set, only emits the grams needed to
+	 * cover each term, meant for the search side of a field indexed with all grams. A term of up
+	 * to maxGram code points is kept whole, a longer one is split into grams of maxGram code points
+	 * starting every maxGram code points, the last one aligned to the end of the term so it
+	 * overlaps its predecessor as little as possible. The adaptive max gram and the per token limit
+	 * of the budget lower the gram length and the covered prefix of a term exactly as on the index
+	 * side, the per document limit is not applied.
+	 *
+	 * <p>Each covering gram takes its own position, so a match query with the and operator requires
+	 * all of them. On the index side all grams of a token share its position, so a match_phrase
+	 * query of a term split into several covering grams does not match.
+	 *
+	 * @param input {@link TokenStream} holding the input to be tokenized
+	 * @param minGram the minimum length of the generated n-grams
+	 * @param maxGram the maximum length of the generated n-grams
+	 * @param preserveOriginal Whether or not to keep the original term when it is shorter than
+	 *     minGram or longer than maxGram
+	 * @param budget the limits on the number of grams, see above for covering grams
+	 * @param coveringGrams whether to emit the covering grams only
+	 */
+	public NGramTokenFilter(TokenStream input, int minGram, int maxGram, boolean preserveOriginal, GramBudget budget, boolean coveringGrams) {
+		this(input, minGram, maxGram, preserveOriginal, budget, coveringGrams, 0);
+	}
+
+	/**
+	 * Creates an NGramTokenFilter that, if dedupeMaxGrams is positive, emits each distinct gram only
+	 * once per document. The position increment of a dropped gram moves to the next emitted one. Up
+	 * to dedupeMaxGrams distinct grams are remembered, once that many are held the grams not seen yet
+	 * pass through and only the remembered ones are still dropped.
+	 *
+	 * @param input {@link TokenStream} holding the input to be tokenized
+	 * @param minGram the minimum length of the generated n-grams
+	 * @param maxGram the maximum length of the generated n-grams
+	 * @param preserveOriginal Whether or not to keep the original term when it is shorter than
+	 *     minGram or longer than maxGram
+	 * @param budget the limits on the number of grams, see above for covering grams
+	 * @param coveringGrams whether to emit the covering grams only
+	 * @param dedupeMaxGrams the most distinct grams remembered per document, 0 to keep duplicates
+	 */
+	public NGramTokenFilter(TokenStream input, int minGram, int maxGram, boolean preserveOriginal, GramBudget budget,
+			boolean coveringGrams, int dedupeMaxGrams) {
 		super(input);
 		if (minGram < 1) {
 			throw new IllegalArgumentException("minGram must be greater than zero");
@@ -56,7 +146,11 @@ public final class NGramTokenFilter extends TokenFilter {
 		this.minGram = minGram;
 		this.maxGram = maxGram;
 		this.preserveOriginal = preserveOriginal;
+		this.budget = (null == budget) ? GramBudget.NONE : budget;
+		this.coveringGrams = coveringGrams;
+		this.seenGrams = dedupeMaxGrams > 0 ? new CharSliceHashSet(dedupeMaxGrams) : null;
 		this.lastStartOffset = -1;
+		this.documentGramsLeft = Long.MAX_VALUE;
 	}
 
 	public NGramTokenFilter(TokenStream input, int minGram, int maxGram) {
@@ -70,7 +164,6 @@ public final class NGramTokenFilter extends TokenFilter {
 				if (!input.incrementToken()) {
 					return false;
 				}
-				state = captureState();
 				curTermLength = termAtt.length();
 				curTermCodePointCount = Character.codePointCount(termAtt, 0, termAtt.length());
 				curPosIncr += posIncrAtt.getPositionIncrement();
@@ -88,54 +181,79 @@ public final class NGramTokenFilter extends TokenFilter {
 					return true;
 				}
 
-				curTermBuffer = termAtt.buffer().clone();
+				curMaxGram = maxGram;
+				curGramsLeft = Long.MAX_VALUE;
+				curCoverLength = curTermCodePointCount;
+				if (coveringGrams) {
+					if (budget.isLimited()) {
+						applyCoveringBudget();
+					}
+					if (curCoverLength == curTermCodePointCount && curTermCodePointCount <= curMaxGram) {
+						// a single gram covers the whole term
+						posIncrAtt.setPositionIncrement(curPosIncr);
+						curPosIncr = 0;
+						return true;
+					}
+				} else if (budget.isLimited() && !applyBudget()) {
+					// the document budget is spent: the token is dropped rather than indexed whole, which
+					// for a long token could exceed the term length limit, its position goes to the next one
+					continue;
+				}
+
+				// grams need every attribute back if some are not rewritten per gram, and so does the
+				// original token emitted after its grams
+				state = preserveOriginal || restorePerGram ? captureState() : null;
+				termBuffer = ArrayUtil.grow(termBuffer, curTermLength);
+				curTermBuffer = termBuffer;
+				System.arraycopy(termAtt.buffer(), 0, curTermBuffer, 0, curTermLength);
+				fillCodePointOffsets();
+				if (null != gramTermAtt) {
+					encodeCurrentTerm();
+				}
 				curGramSize = minGram;
 			}
-			if (curGramSize > maxGram) {
-				restoreState(state);
-				posIncrAtt.setPositionIncrement(curPosIncr);
-				/*int curEndPos = curTermLength - curPos;
-				int termLen = curEndPos - curPos;
-				if(termLen <= maxGram) {
-					termAtt.copyBuffer(curTermBuffer, curPos, curEndPos);
-					this.lastStartOffset = tokenStart + curPos;
-					int curEndOffset = this.lastStartOffset + curTermLength;
-					*//*if(curEndOffset > curTermLength) {
-						curEndOffset = curTermLength;
-					}*//*
-					offsetAtt.setOffset(this.lastStartOffset, curEndOffset);
-					++curPos;
-					curGramSize = minGram;
+			if (coveringGrams) {
+				if (curPos + curMaxGram <= curCoverLength) {
+					emitCoveringGram();
 					return true;
-				}*/
-				++curPos;
-				curGramSize = minGram;
-				//return true;
+				}
+				curTermBuffer = null;
+				continue;
 			}
-			if (curGramSize > maxGram || (curPos + curGramSize) > curTermCodePointCount) {
+			if (curGramSize > curMaxGram || (curPos + curGramSize) > curTermCodePointCount) {
 				++curPos;
 				curGramSize = minGram;
 			}
-			if ((curPos + curGramSize) <= curTermCodePointCount) {
-				restoreState(state);
-				final int start = Character.offsetByCodePoints(curTermBuffer, 0, curTermLength, 0, curPos);
-				final int end = Character.offsetByCodePoints(curTermBuffer, 0, curTermLength, start, curGramSize);
-				int len = end - start;
-				if (len > curTermLength) {
-					len = curTermLength;
+			if ((curPos + curGramSize) <= curTermCodePointCount && curGramsLeft > 0) {
+				// without other attributes than the ones written here the previous gram is simply
+				// overwritten, otherwise a downstream change to e.g. a keyword or payload attribute
+				// must not carry over to the next gram
+				if (restorePerGram) {
+					restoreState(state);
+				}
+				final int start = codePointOffsets[curPos];
+				final int end = codePointOffsets[curPos + curGramSize];
+				if (null != seenGrams && seenGrams.add(curTermBuffer, start, end - start) == CharSliceHashSet.AddResult.PRESENT) {
+					// already emitted in this document, its position increment goes to the next gram
+					curGramSize++;
+					continue;
 				}
-				termAtt.copyBuffer(curTermBuffer, start, len);
+				termAtt.copyBuffer(curTermBuffer, start, end - start);
+				setUTF8Slice(curPos, curPos + curGramSize);
 				posIncrAtt.setPositionIncrement(curPosIncr);
 				this.lastStartOffset = tokenStart + curPos;
 				offsetAtt.setOffset(this.lastStartOffset, tokenStart + curPos + curGramSize);
 				curPosIncr = 0;
 				curGramSize++;
+				curGramsLeft--;
+				documentGramsLeft--;
 				return true;
 			} else if (preserveOriginal && curTermCodePointCount > maxGram) {
 				restoreState(state);
 				if (this.lastStartOffset <= tokenStart) {
 					posIncrAtt.setPositionIncrement(0);
 					termAtt.copyBuffer(curTermBuffer, 0, curTermLength);
+					setUTF8Slice(0, curTermCodePointCount);
 					offsetAtt.setOffset(tokenStart, curTermLength);
 					this.lastStartOffset = tokenStart;
 					curTermBuffer = null;
@@ -147,16 +265,151 @@ public final class NGramTokenFilter extends TokenFilter {
 		}
 	}
 
+	/**
+	 * Emits the curMaxGram gram at curPos and moves curPos to the start of the next covering gram.
+	 */
+	private void emitCoveringGram() {
+		if (restorePerGram) {
+			restoreState(state);
+		}
+		final int start = codePointOffsets[curPos];
+		final int end = codePointOffsets[curPos + curMaxGram];
+		termAtt.copyBuffer(curTermBuffer, start, end - start);
+		setUTF8Slice(curPos, curPos + curMaxGram);
+		posIncrAtt.setPositionIncrement(curPos == 0 ? curPosIncr : 1);
+		this.lastStartOffset = tokenStart + curPos;
+		offsetAtt.setOffset(this.lastStartOffset, tokenStart + curPos + curMaxGram);
+		curPosIncr = 0;
+		if (curPos + curMaxGram == curCoverLength) {
+			curPos = curCoverLength;
+		} else {
+			curPos = Math.min(curPos + curMaxGram, curCoverLength - curMaxGram);
+		}
+	}
+
+	/**
+	 * Sets the gram length and the covered prefix of the current token the way {@link #applyBudget()}
+	 * limits its grams on the index side, so every covering gram is one the index side emits. The
+	 * document budget depends on the document and is not applied.
+	 */
+	private void applyCoveringBudget() {
+		curMaxGram = budget.adaptiveMaxGram(minGram, maxGram, curTermCodePointCount);
+		if (budget.getMaxGramsPerToken() == GramBudget.UNLIMITED) {
+			return;
+		}
+		final long limit = budget.getMaxGramsPerToken();
+		while (curMaxGram > minGram && GramBudget.gramCount(curTermCodePointCount, minGram, curMaxGram) > limit) {
+			curMaxGram--;
+		}
+		if (GramBudget.gramCount(curTermCodePointCount, minGram, curMaxGram) > limit) {
+			// only the minGram grams of the first limit positions are indexed, the rest can not be matched
+			curCoverLength = (int) Math.min(curTermCodePointCount, limit - 1 + minGram);
+		}
+	}
+
+	/**
+	 * Sets the max gram length and gram limit of the current token from the budget. Returns false
+	 * if the document has no grams left.
+	 */
+	private boolean applyBudget() {
+		if (documentGramsLeft <= 0) {
+			documentLimitHit();
+			return false;
+		}
+		curMaxGram = budget.adaptiveMaxGram(minGram, maxGram, curTermCodePointCount);
+		long limit = budget.getMaxGramsPerToken() == GramBudget.UNLIMITED ? Long.MAX_VALUE : budget.getMaxGramsPerToken();
+		boolean documentBound = documentGramsLeft < limit;
+		limit = Math.min(limit, documentGramsLeft);
+		if (GramBudget.gramCount(curTermCodePointCount, minGram, curMaxGram) > limit) {
+			// prefer shorter grams over all positions to dropping the tail of the token
+			while (curMaxGram > minGram && GramBudget.gramCount(curTermCodePointCount, minGram, curMaxGram) > limit) {
+				curMaxGram--;
+			}
+			curGramsLeft = limit;
+			if (documentBound) {
+				documentLimitHit();
+			} else {
+				budget.tokenLimitHit();
+			}
+		}
+		return true;
+	}
+
+	private void documentLimitHit() {
+		if (!documentLimitHit) {
+			documentLimitHit = true;
+			budget.documentLimitHit();
+		}
+	}
+
+	/**
+	 * Records the char offset of every code point of the current term, plus the term length at
+	 * index curTermCodePointCount, so any gram is sliced without walking the term again.
+	 */
+	private void fillCodePointOffsets() {
+		codePointOffsets = ArrayUtil.grow(codePointOffsets, curTermCodePointCount + 1);
+		int cp = 0;
+		for (int i = 0; i < curTermLength; i += Character.charCount(Character.codePointAt(curTermBuffer, i, curTermLength))) {
+			codePointOffsets[cp++] = i;
+		}
+		codePointOffsets[cp] = curTermLength;
+	}
+
+	/**
+	 * Encodes the current term to UTF-8 once, so its grams are handed over as slices.
+	 */
+	private void encodeCurrentTerm() {
+		utf8Buffer = ArrayUtil.grow(utf8Buffer, curTermLength * 3);
+		codePointByteOffsets = ArrayUtil.grow(codePointByteOffsets, curTermCodePointCount + 1);
+		GramTermAttributeImpl.encodeUTF8(curTermBuffer, curTermLength, utf8Buffer, codePointByteOffsets);
+	}
+
+	/**
+	 * Hands over the UTF-8 bytes of the code points [startCodePoint, endCodePoint) of the current
+	 * term, which must be the term just written.
+	 */
+	private void setUTF8Slice(int startCodePoint, int endCodePoint) {
+		if (null != gramTermAtt) {
+			final int start = codePointByteOffsets[startCodePoint];
+			gramTermAtt.setUTF8Slice(utf8Buffer, start, codePointByteOffsets[endCodePoint] - start);
+		}
+	}
+
+	/**
+	 * Whether the stream holds attributes other than the term, position increment, offset and
+	 * gram term attributes rewritten for every gram.
+	 */
+	private boolean hasUnwrittenAttributes() {
+		Iterator<AttributeImpl> impls = getAttributeImplsIterator();
+		while (impls.hasNext()) {
+			AttributeImpl impl = impls.next();
+			if (impl != termAtt && impl != posIncrAtt && impl != offsetAtt && impl != gramTermAtt) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	@Override
 	public void reset() throws IOException {
 		super.reset();
+		// consumers add their attributes before the stream is reset
+		restorePerGram = hasUnwrittenAttributes();
 		curTermBuffer = null;
 		curPosIncr = 0;
+		documentGramsLeft = budget.getMaxGramsPerDocument() == GramBudget.UNLIMITED ? Long.MAX_VALUE : budget.getMaxGramsPerDocument();
+		documentLimitHit = false;
+		if (null != seenGrams) {
+			seenGrams.clear();
+		}
 	}
 
 	@Override
 	public void end() throws IOException {
 		super.end();
 		posIncrAtt.setPositionIncrement(curPosIncr);
+		if (null != seenGrams) {
+			seenGrams.clear();
+		}
 	}
 }
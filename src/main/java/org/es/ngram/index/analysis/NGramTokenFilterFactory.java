@@ -0,0 +1,54 @@
+package org.es.ngram.index.analysis;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.analysis.AbstractTokenFilterFactory;
+import org.es.ngram.stats.AnalysisStats;
+
+/**
+ * Exposes {@link NGramTokenFilter} as the ngram-filter, with the min_gram, max_gram,
+ * preserve_original, covering_grams and dedupe_grams settings plus the gram budget settings of
+ * {@link NGramAnalyzerProvider}.
+ */
+public class NGramTokenFilterFactory extends AbstractTokenFilterFactory {
+    private final int minGram;
+    private final int maxGram;
+    private final boolean preserveOriginal;
+    private final boolean coveringGrams;
+    private final GramBudget gramBudget;
+    private final int dedupeMaxGrams;
+
+    public NGramTokenFilterFactory(IndexSettings indexSettings, Environment environment, String name, Settings settings) {
+        super(indexSettings, name, settings);
+        minGram = settings.getAsInt("min_gram", NGramTokenFilter.DEFAULT_MIN_GRAMSIZE);
+        maxGram = settings.getAsInt("max_gram", NGramTokenFilter.DEFAULT_MAX_GRAMSIZE);
+        preserveOriginal = settings.getAsBoolean("preserve_original", NGramTokenFilter.DEFAULT_PRESERVE_ORIGINAL);
+        coveringGrams = settings.getAsBoolean("covering_grams", false);
+        gramBudget = NGramAnalyzerProvider.buildGramBudget(settings);
+        gramBudget.setStats(AnalysisStats.getInstance().ngramFilter(name));
+        dedupeMaxGrams = NGramAnalyzerProvider.dedupeMaxGrams(settings);
+        if (minGram < 1) {
+            throw new IllegalArgumentException("[min_gram] must be greater than zero");
+        }
+        if (minGram > maxGram) {
+            throw new IllegalArgumentException("[min_gram] must not be greater than [max_gram]");
+        }
+    }
+
+    public static NGramTokenFilterFactory getNGramTokenFilterFactory(IndexSettings indexSettings, Environment env, String name, Settings settings) {
+        return new NGramTokenFilterFactory(indexSettings, env, name, settings);
+    }
+
+    /**
+     * The most distinct grams remembered per document, 0 if grams are not deduplicated.
+     */
+    public int getDedupeMaxGrams() {
+        return dedupeMaxGrams;
+    }
+
+    @Override public TokenStream create(TokenStream tokenStream) {
+        return new NGramTokenFilter(tokenStream, minGram, maxGram, preserveOriginal, gramBudget, coveringGrams, dedupeMaxGrams);
+    }
+}
@@ -1,5 +1,6 @@
 package org.es.ngram.index.analysis;
 
+import org.apache.lucene.analysis.CharacterUtils;
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
@@ -11,18 +12,36 @@ import java.io.IOException;
  * @author yida
  * @package org.es.ngram.index.analysis
  * @date 2024-04-17 21:19
- * @description Type your description over here.
+ * @description Streaming n-gram tokenizer.
+ *
+ * <p>The input is read incrementally into a reusable ring buffer of code points that never holds
+ * more than {@code maxGram} of them, so memory stays bounded whatever the field length. For every
+ * start position all grams of {@code minGram} to {@code maxGram} code points are emitted, shortest
+ * first. Grams containing whitespace are skipped, so the output is that of the grams of every
+ * whitespace separated word, and leading and trailing whitespace of the input never shows up in a
+ * gram.
  */
 public final class NGramTokenizer extends Tokenizer {
 	public static final int DEFAULT_MIN_NGRAM_SIZE = 2;
 	public static final int DEFAULT_MAX_NGRAM_SIZE = 100;
 
+	private static final int READ_BUFFER_SIZE = 1024;
+
 	private int minGram, maxGram;
 	private int gramSize;
-	private int pos = 0;
-	private int inLen;
-	private String inStr;
-	private boolean started = false;
+	/** absolute index of the code point the current grams start at */
+	private int pos;
+	/** absolute index after the last buffered code point */
+	private int bufferEnd;
+	/** chars read from the input so far */
+	private int offset;
+	private int readIndex;
+	private boolean exhausted;
+
+	private CharacterUtils.CharacterBuffer charBuffer;
+	private int[] codePoints;
+	private int[] charOffsets;
+	private int mask;
 
 	private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
 	private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
@@ -55,48 +74,111 @@ public final class NGramTokenizer extends Tokenizer {
 		}
 		this.minGram = minGram;
 		this.maxGram = maxGram;
+		int capacity = Integer.highestOneBit(maxGram);
+		if (capacity < maxGram) {
+			capacity <<= 1;
+		}
+		this.codePoints = new int[capacity];
+		this.charOffsets = new int[capacity];
+		this.mask = capacity - 1;
+		this.charBuffer = CharacterUtils.newCharacterBuffer(READ_BUFFER_SIZE);
 	}
 
 	/** Returns the next token in the stream, or null at EOS. */
 	@Override
 	public final boolean incrementToken() throws IOException {
 		clearAttributes();
-		if (!started) {
-			started = true;
-			gramSize = minGram;
-			char[] chars = new char[1024];
-			input.read(chars);
-			inStr = new String(chars).trim();  // remove any trailing empty strings
-			inLen = inStr.length();
+		while (true) {
+			fill();
+			final int available = bufferEnd - pos;
+			if (available < minGram) {                 // only possible once the input is exhausted
+				return false;
+			}
+			if (gramSize > maxGram || gramSize > available) {
+				pos++;                                  // move on to the next start position
+				gramSize = minGram;
+				continue;
+			}
+			if (gramSize == minGram) {
+				final int whitespace = lastWhitespace(pos, pos + minGram);
+				if (whitespace >= 0) {
+					pos = whitespace + 1;               // every gram starting up to it contains it
+					continue;
+				}
+			} else if (Character.isWhitespace(codePoints[(pos + gramSize - 1) & mask])) {
+				pos++;                                  // the shorter grams at pos were free of whitespace
+				gramSize = minGram;
+				continue;
+			}
+
+			final int last = codePoints[(pos + gramSize - 1) & mask];
+			char[] termBuffer = termAtt.resizeBuffer(2 * gramSize);
+			int length = 0;
+			for (int i = pos; i < pos + gramSize; i++) {
+				length += Character.toChars(codePoints[i & mask], termBuffer, length);
+			}
+			termAtt.setLength(length);
+			final int start = charOffsets[pos & mask];
+			final int end = charOffsets[(pos + gramSize - 1) & mask] + Character.charCount(last);
+			offsetAtt.setOffset(correctOffset(start), correctOffset(end));
+			gramSize++;
+			return true;
 		}
+	}
 
-		if (pos+gramSize > inLen) {            // if we hit the end of the string
-			pos = 0;                           // reset to beginning of string
-			gramSize++;                        // increase n-gram size
-			if (gramSize > maxGram)            // we are done
-				return false;
-			if (pos+gramSize > inLen)
-				return false;
+	/**
+	 * Returns the absolute index of the last whitespace code point in [from, to), -1 if there is none.
+	 */
+	private int lastWhitespace(int from, int to) {
+		for (int i = to - 1; i >= from; i--) {
+			if (Character.isWhitespace(codePoints[i & mask])) {
+				return i;
+			}
 		}
+		return -1;
+	}
 
-		int oldPos = pos;
-		pos++;
-		termAtt.setEmpty().append(inStr, oldPos, oldPos+gramSize);
-		offsetAtt.setOffset(correctOffset(oldPos), correctOffset(oldPos+gramSize));
-		return true;
+	/**
+	 * Buffers code points until {@code maxGram} of them are available from {@link #pos} or the
+	 * input is exhausted.
+	 */
+	private void fill() throws IOException {
+		while (!exhausted && bufferEnd - pos < maxGram) {
+			if (readIndex >= charBuffer.getLength()) {
+				CharacterUtils.fill(charBuffer, input);
+				readIndex = 0;
+				if (charBuffer.getLength() == 0) {
+					exhausted = true;
+					return;
+				}
+			}
+			final int codePoint = Character.codePointAt(charBuffer.getBuffer(), readIndex, charBuffer.getLength());
+			final int charCount = Character.charCount(codePoint);
+			codePoints[bufferEnd & mask] = codePoint;
+			charOffsets[bufferEnd & mask] = offset;
+			bufferEnd++;
+			readIndex += charCount;
+			offset += charCount;
+		}
 	}
 
 	@Override
-	public final void end() {
+	public final void end() throws IOException {
+		super.end();
 		// set final offset
-		final int finalOffset = inLen;
+		final int finalOffset = correctOffset(offset);
 		this.offsetAtt.setOffset(finalOffset, finalOffset);
 	}
 
 	@Override
 	public void reset() throws IOException {
 		super.reset();
-		started = false;
+		charBuffer.reset();
+		gramSize = minGram;
 		pos = 0;
+		bufferEnd = 0;
+		offset = 0;
+		readIndex = 0;
+		exhausted = false;
 	}
 }
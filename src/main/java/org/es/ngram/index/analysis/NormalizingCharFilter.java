@@ -0,0 +1,244 @@
+package org.es.ngram.index.analysis;
+
+import org.apache.lucene.analysis.charfilter.BaseCharFilter;
+import org.apache.lucene.util.ArrayUtil;
+import org.es.ngram.stats.ConvertStats;
+import org.es.ngram.utils.CharClassTable;
+import org.es.ngram.utils.DoubleArrayTrie;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.analysis
+ * @date 2024-07-11 10:20
+ * @description Lowercases, converts between traditional and simplified Chinese and drops the
+ * chars outside a {@link CharClassTable} in a single pass, before tokenizing.
+ *
+ * <p>Input is read in chunks into a small window that is lowercased in place as it is filled, then
+ * scanned left to right: the longest conversion key at a position is replaced by its value, and
+ * the code points of that value, like any other code point, are copied if the table keeps them. A position is only scanned once the longest
+ * key fits in the window, so results match converting each token. Whitespace is always kept, it
+ * separates the tokens. Every change of length is recorded as an offset correction, so
+ * {@link #correctOffset(int)} maps token offsets back to the original text. Like
+ * {@link STConvertTokenFilter} it can count into {@link ConvertStats}, a term being a whitespace
+ * separated run and the time covering the whole pass.
+ */
+public final class NormalizingCharFilter extends BaseCharFilter {
+	/** most inputs are short, and a longer one is processed in chunks of about this size */
+	private static final int BUFFER_SIZE = 128;
+
+	private final boolean lowercase;
+	private final DoubleArrayTrie trie;
+	private final CharClassTable keepChars;
+	private final ConvertStats stats;
+	/** chars needed after a position before it can be scanned */
+	private final int lookahead;
+
+	private char[] window = new char[BUFFER_SIZE];
+	private int windowStart;
+	private int windowEnd;
+	private int loweredEnd;
+	private boolean eof;
+
+	private char[] output = new char[BUFFER_SIZE];
+	private int outputStart;
+	private int outputEnd;
+
+	/** offsets in the original text and in the output of window[windowStart] */
+	private int inputOffset;
+	private int outputOffset;
+
+	private boolean inTerm;
+	private boolean termConverted;
+	private long terms;
+	private long convertedTerms;
+	private long nanos;
+
+	/**
+	 * @param in the text
+	 * @param lowercase whether to lowercase
+	 * @param trie the conversion of {@link STConverter#trie(STConvertType)}, or null
+	 * @param keepChars the chars to keep besides whitespace, or null to keep all
+	 * @param stats counters of the conversion, or null
+	 */
+	public NormalizingCharFilter(Reader in, boolean lowercase, DoubleArrayTrie trie, CharClassTable keepChars, ConvertStats stats) {
+		super(in);
+		this.lowercase = lowercase;
+		this.trie = trie;
+		this.keepChars = keepChars;
+		this.stats = stats;
+		this.lookahead = Math.max(null == trie ? 0 : trie.getMaxKeyLength(), 2);
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		while (outputStart == outputEnd) {
+			if (eof && windowStart == windowEnd) {
+				return -1;
+			}
+			fill();
+			final long start = null != stats ? System.nanoTime() : 0L;
+			process();
+			if (null != stats) {
+				nanos += System.nanoTime() - start;
+				if (eof && windowStart == windowEnd) {
+					endTerm();
+					stats.add(terms, convertedTerms, nanos);
+				}
+			}
+		}
+		int n = Math.min(len, outputEnd - outputStart);
+		System.arraycopy(output, outputStart, cbuf, off, n);
+		outputStart += n;
+		return n;
+	}
+
+	private void fill() throws IOException {
+		if (windowStart > 0) {
+			System.arraycopy(window, windowStart, window, 0, windowEnd - windowStart);
+			loweredEnd -= windowStart;
+			windowEnd -= windowStart;
+			windowStart = 0;
+		}
+		if (windowEnd == window.length) {
+			window = ArrayUtil.grow(window, windowEnd + 1);
+		}
+		int read = input.read(window, windowEnd, window.length - windowEnd);
+		if (read == -1) {
+			eof = true;
+		} else {
+			windowEnd += read;
+		}
+		if (lowercase) {
+			lowercase();
+		}
+	}
+
+	private void lowercase() {
+		int i = loweredEnd;
+		while (i < windowEnd) {
+			char c = window[i];
+			if (Character.isHighSurrogate(c)) {
+				if (i + 1 == windowEnd) {
+					if (!eof) {
+						// the low surrogate is in the next chunk
+						break;
+					}
+					i++;
+					continue;
+				}
+				int codePoint = Character.toCodePoint(c, window[i + 1]);
+				int lower = Character.toLowerCase(codePoint);
+				if (lower != codePoint && Character.charCount(lower) == 2) {
+					Character.toChars(lower, window, i);
+				}
+				i += 2;
+			} else {
+				window[i++] = Character.toLowerCase(c);
+			}
+		}
+		loweredEnd = i;
+	}
+
+	private void process() {
+		outputStart = 0;
+		outputEnd = 0;
+		final int scanEnd = lowercase ? loweredEnd : windowEnd;
+		final int limit = eof ? scanEnd : Math.min(scanEnd, windowEnd - lookahead + 1);
+		int length = Math.max(limit - windowStart, 0);
+		output = ArrayUtil.grow(output, null == trie ? length : trie.maxRewrittenLength(length));
+		int lastDiff = getLastCumulativeDiff();
+		int i = windowStart;
+		while (i < limit) {
+			final char c = window[i];
+			if (null != trie && trie.isKeyStart(c)) {
+				long match = trie.longestMatch(window, i, windowEnd);
+				if (match >= 0) {
+					final int valueStart = outputEnd;
+					outputEnd += trie.copyValue((int) match, output, outputEnd);
+					if (null != keepChars) {
+						outputEnd = keep(valueStart, outputEnd);
+					}
+					inTerm = true;
+					termConverted = true;
+					i += (int) (match >>> 32);
+					lastDiff = correct(i, lastDiff);
+					continue;
+				}
+			}
+			if (Character.isWhitespace(c)) {
+				endTerm();
+				output[outputEnd++] = c;
+				i++;
+				continue;
+			}
+			inTerm = true;
+			if (!Character.isSurrogate(c)) {
+				if (null == keepChars || keepChars.contains(c)) {
+					output[outputEnd++] = c;
+					i++;
+				} else {
+					i++;
+					lastDiff = correct(i, lastDiff);
+				}
+				continue;
+			}
+			int codePoint = Character.codePointAt(window, i, windowEnd);
+			int consumed = Character.charCount(codePoint);
+			if (null == keepChars || keepChars.contains(codePoint)) {
+				System.arraycopy(window, i, output, outputEnd, consumed);
+				outputEnd += consumed;
+				i += consumed;
+			} else {
+				i += consumed;
+				lastDiff = correct(i, lastDiff);
+			}
+		}
+		inputOffset += i - windowStart;
+		outputOffset += outputEnd;
+		windowStart = i;
+	}
+
+	/**
+	 * Moves the whitespace and the kept code points of output[from, to) to its front, returns the
+	 * new end.
+	 */
+	private int keep(int from, int to) {
+		int write = from;
+		for (int i = from; i < to; ) {
+			int codePoint = Character.codePointAt(output, i, to);
+			int count = Character.charCount(codePoint);
+			if (Character.isWhitespace(codePoint) || keepChars.contains(codePoint)) {
+				System.arraycopy(output, i, output, write, count);
+				write += count;
+			}
+			i += count;
+		}
+		return write;
+	}
+
+	/**
+	 * Records the offset correction after input position {@code i} if the output length no longer
+	 * matches the input length.
+	 */
+	private int correct(int i, int lastDiff) {
+		int diff = inputOffset + (i - windowStart) - (outputOffset + outputEnd);
+		if (diff != lastDiff) {
+			addOffCorrectMap(outputOffset + outputEnd, diff);
+		}
+		return diff;
+	}
+
+	private void endTerm() {
+		if (inTerm) {
+			terms++;
+			if (termConverted) {
+				convertedTerms++;
+			}
+			inTerm = false;
+			termConverted = false;
+		}
+	}
+}
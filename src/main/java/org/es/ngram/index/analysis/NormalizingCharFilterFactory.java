@@ -0,0 +1,64 @@
+package org.es.ngram.index.analysis;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.analysis.AbstractCharFilterFactory;
+import org.es.ngram.stats.AnalysisStats;
+import org.es.ngram.stats.ConvertStats;
+import org.es.ngram.utils.CharClassTable;
+import org.es.ngram.utils.DoubleArrayTrie;
+
+import java.io.Reader;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.analysis
+ * @date 2024-07-11 11:30
+ * @description The normalize-char-filter char filter, see {@link NormalizingCharFilter}.
+ *
+ * <pre>
+ * "char_filter": {
+ *     "my_normalizer": {
+ *         "type": "normalize-char-filter",
+ *         "lowercase": true,
+ *         "convert_type": "t2s",
+ *         "keep_chars": ["a-z", "0-9", "U+4E00-U+9FA5"]
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>convert_type is t2s (default), s2t or none, without keep_chars every char is kept.
+ */
+public class NormalizingCharFilterFactory extends AbstractCharFilterFactory {
+	private final boolean lowercase;
+	private final DoubleArrayTrie trie;
+	private final CharClassTable keepChars;
+	private final ConvertStats stats;
+
+	public NormalizingCharFilterFactory(IndexSettings indexSettings, Environment env, String name, Settings settings) {
+		super(indexSettings, name);
+		this.lowercase = settings.getAsBoolean("lowercase", true);
+		String convertType = settings.get("convert_type", "t2s");
+		if ("t2s".equals(convertType)) {
+			this.trie = STConverter.getInstance().trie(STConvertType.TRADITIONAL_2_SIMPLE);
+		} else if ("s2t".equals(convertType)) {
+			this.trie = STConverter.getInstance().trie(STConvertType.SIMPLE_2_TRADITIONAL);
+		} else if ("none".equals(convertType)) {
+			this.trie = null;
+		} else {
+			throw new IllegalArgumentException("[convert_type] must be t2s, s2t or none");
+		}
+		this.keepChars = NGramAnalyzerProvider.keepChars(settings);
+		this.stats = AnalysisStats.getInstance().convertFilter(name);
+	}
+
+	public static NormalizingCharFilterFactory getNormalizingCharFilterFactory(IndexSettings indexSettings, Environment env, String name, Settings settings) {
+		return new NormalizingCharFilterFactory(indexSettings, env, name, settings);
+	}
+
+	@Override
+	public Reader create(Reader reader) {
+		return new NormalizingCharFilter(reader, lowercase, trie, keepChars, null == trie ? null : stats);
+	}
+}
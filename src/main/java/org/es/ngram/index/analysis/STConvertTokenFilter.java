@@ -20,21 +20,48 @@ package org.es.ngram.index.analysis;
 import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.es.ngram.stats.ConvertStats;
+import org.es.ngram.utils.DoubleArrayTrie;
 
 import java.io.IOException;
 
+/**
+ * Converts terms between traditional and simplified Chinese directly on the term buffer.
+ *
+ * <p>Terms without any char that starts a mapping (e.g. pure ASCII words) are passed through
+ * untouched. Other terms are converted into a scratch buffer owned by the filter and copied
+ * back into the {@link CharTermAttribute}, so no Strings are created per token.
+ * With {@link ConvertStats} the terms, the converted terms and the time spent converting are
+ * counted, and added to the stats once per document in {@link #end()}.
+ */
 public class STConvertTokenFilter extends TokenFilter {
-
     private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
     private String delimiter=",";
     private STConvertType convertType= STConvertType.SIMPLE_2_TRADITIONAL;
     private Boolean keepBoth=false;
+    private final STConverter converter = STConverter.getInstance();
+    private final DoubleArrayTrie trie;
+    private final ConvertStats stats;
+    private char[] scratch = new char[16];
+    private long terms;
+    private long convertedTerms;
+    private long convertNanos;
     
     public STConvertTokenFilter(TokenStream in, STConvertType convertType,String delimiter,Boolean keepBoth) {
+        this(in, convertType, delimiter, keepBoth, null);
+    }
+
+    /**
+     * @param stats counters of the conversion, or null
+     */
+    public STConvertTokenFilter(TokenStream in, STConvertType convertType, String delimiter, Boolean keepBoth, ConvertStats stats) {
         super(in);
         this.delimiter = delimiter;
         this.convertType = convertType;
         this.keepBoth=keepBoth;
+        this.trie = converter.trie(convertType);
+        this.stats = stats;
     }
     
     @Override
@@ -43,34 +70,62 @@ public class STConvertTokenFilter extends TokenFilter {
         if (!input.incrementToken()) {
             return false;
         }
-        StringBuilder stringBuilder = new StringBuilder();
+        final char[] buffer = termAtt.buffer();
+        final int length = termAtt.length();
+        if (length == 0) {
+            return true;
+        }
+        terms++;
+        final boolean convertible = trie.containsKeyStart(buffer, 0, length);
+        if (!convertible && !keepBoth) {
+            return true;
+        }
 
-        String str = termAtt.toString();
-        termAtt.setEmpty();
-        String converted= STConverter.getInstance().convert(str, convertType);
-        if(!converted.isEmpty())
-        {
-            stringBuilder.append(converted);
-            if(keepBoth){
-                stringBuilder.append(delimiter);
-                stringBuilder.append(str);
+        int required = converter.maxConvertedLength(convertType, length);
+        if (keepBoth) {
+            required += delimiter.length() + length;
+        }
+        scratch = ArrayUtil.grow(scratch, required);
+        int newLength;
+        if (convertible) {
+            final long start = null != stats ? System.nanoTime() : 0L;
+            newLength = converter.convert(convertType, buffer, 0, length, scratch, 0);
+            if (null != stats) {
+                convertNanos += System.nanoTime() - start;
+                convertedTerms++;
             }
-        }else {
-            stringBuilder.append(str);
+        } else {
+            System.arraycopy(buffer, 0, scratch, 0, length);
+            newLength = length;
+        }
+        if (keepBoth) {
+            delimiter.getChars(0, delimiter.length(), scratch, newLength);
+            newLength += delimiter.length();
+            System.arraycopy(buffer, 0, scratch, newLength, length);
+            newLength += length;
         }
-        termAtt.resizeBuffer(stringBuilder.length());
-        termAtt.append(stringBuilder.toString());
-        termAtt.setLength(stringBuilder.length());
+        termAtt.copyBuffer(scratch, 0, newLength);
         return true;
     }
 
     @Override
     public final void end() throws IOException {
         super.end();
+        if (null != stats) {
+            stats.add(terms, convertedTerms, convertNanos);
+        }
+        clearCounts();
     }
 
     @Override
     public void reset() throws IOException {
         super.reset();
+        clearCounts();
+    }
+
+    private void clearCounts() {
+        terms = 0L;
+        convertedTerms = 0L;
+        convertNanos = 0L;
     }
 }
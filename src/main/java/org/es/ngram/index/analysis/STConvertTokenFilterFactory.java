@@ -21,12 +21,15 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.env.Environment;
 import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.analysis.AbstractTokenFilterFactory;
+import org.es.ngram.stats.AnalysisStats;
+import org.es.ngram.stats.ConvertStats;
 
 
 public class STConvertTokenFilterFactory extends AbstractTokenFilterFactory {
     private String delimiter=",";
     private String type;
     private Boolean keepBoth=false;
+    private final ConvertStats stats;
     private Environment environment;
 
     public STConvertTokenFilterFactory(IndexSettings indexSettings, Environment environment, String name, Settings settings) {
@@ -38,6 +41,7 @@ public class STConvertTokenFilterFactory extends AbstractTokenFilterFactory {
         if ("true".equals(keepBothStr)) {
             keepBoth = true;
         }
+        stats = AnalysisStats.getInstance().convertFilter(name);
     }
 
     public static STConvertTokenFilterFactory getSTConvertTokenFilterFactory(IndexSettings indexSettings, Environment env, String name, Settings settings) {
@@ -49,7 +53,7 @@ public class STConvertTokenFilterFactory extends AbstractTokenFilterFactory {
         if (type.equals("s2t")) {
             convertType = STConvertType.SIMPLE_2_TRADITIONAL;
         }
-        return new STConvertTokenFilter(tokenStream,convertType,delimiter,keepBoth);
+        return new STConvertTokenFilter(tokenStream,convertType,delimiter,keepBoth,stats);
     }
 
     public Environment getEnvironment() {
@@ -1,36 +1,92 @@
 package org.es.ngram.index.analysis;
 
+import org.es.ngram.stats.AnalysisStats;
+import org.es.ngram.utils.DoubleArrayTrie;
+
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
+import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 
 /**
  * some parts of code copied from:http://code.google.com/p/java-zhconverter/
+ *
+ * <p>The t2s table and its reverse are compiled once into {@link DoubleArrayTrie}s, conversion
+ * is a single longest-match pass over the input chars.
+ *
+ * <p>The tries are compiled at build time into {@value #DICT_FILE_NAME}, shipped next to the plugin
+ * jar. That file is memory mapped, so starting a node neither parses the table nor holds it on
+ * the heap. Without it, e.g. when running from the classes directory, t2s.properties is compiled
+ * on first use.
  */
 public class STConverter {
     
     private static final Logger LOGGER = Logger.getLogger(STConverter.class.getName());
 
-    private Properties charMap = new Properties();
-    private Properties revCharMap = new Properties();
-    private Set<String> conflictingSets  = new HashSet<String>();
-    private static STConverter instance=new STConverter();
-    
+    private final DoubleArrayTrie t2sTrie;
+    private final DoubleArrayTrie s2tTrie;
+
+    /**
+     * Name of the dictionary file compiled from t2s.properties at build time, see
+     * {@link org.es.ngram.tools.ConvertDictCompiler}.
+     */
+    public static final String DICT_FILE_NAME = "t2s.dat";
+
+    private static final class InstanceHolder {
+        private static final STConverter INSTANCE = new STConverter();
+    }
+
     public STConverter(){
+        this(bundledDictFile());
+    }
+
+    /**
+     * Maps the tries compiled at build time from dictFile, or compiles them from t2s.properties
+     * if there is no such file or it can not be read.
+     */
+    public STConverter(Path dictFile){
+        final long start = System.nanoTime();
+        List<DoubleArrayTrie> tries = null;
+        String source = "classpath:t2s.properties";
+        if (dictFile != null && Files.isRegularFile(dictFile)) {
+            try {
+                tries = DoubleArrayTrie.map(dictFile);
+                source = dictFile.toString();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to map " + dictFile + ", compiling t2s.properties instead: " + e.getMessage(), e);
+            }
+        }
+        if (tries == null || tries.size() != 2) {
+            tries = compileTries();
+        }
+        this.t2sTrie = tries.get(0);
+        this.s2tTrie = tries.get(1);
+        AnalysisStats.getInstance().dictionaryLoaded(source, t2sTrie.size(), System.nanoTime() - start);
+    }
+
+    /**
+     * Compiles t2s.properties into the t2s trie and its reverse, in this order.
+     */
+    public static List<DoubleArrayTrie> compileTries() {
+        Properties charMap = new Properties();
         InputStream file1 = null;
-        file1 = this.getClass().getResourceAsStream("/t2s.properties");
+        file1 = STConverter.class.getResourceAsStream("/t2s.properties");
         InputStreamReader is = null;
         try {
             is = new InputStreamReader(file1, "UTF-8");
@@ -54,90 +110,71 @@ public class STConverter {
                 }
             }
         }
-        initializeHelper();
+        Map<String, String> t2s = new TreeMap<>();
+        Map<String, String> s2t = new TreeMap<>();
+        for (String key : charMap.stringPropertyNames()) {
+            t2s.put(key, charMap.getProperty(key));
+        }
+        for (Map.Entry<String, String> entry : t2s.entrySet()) {
+            s2t.putIfAbsent(entry.getValue(), entry.getKey());
+        }
+        return Arrays.asList(DoubleArrayTrie.build(t2s), DoubleArrayTrie.build(s2t));
     }
 
-    private void initializeHelper() {
-        Map stringPossibilities = new HashMap();
-        Iterator iter = charMap.keySet().iterator();
-        while (iter.hasNext()) {
-            String key = (String) iter.next();
-            revCharMap.put(charMap.get(key),key);
-            if (key.length() >= 1) {
-                for (int i = 0; i < (key.length()); i++) {
-                    String keySubstring = key.substring(0, i + 1);
-                    if (stringPossibilities.containsKey(keySubstring)) {
-                        Integer integer = (Integer)(stringPossibilities.get(keySubstring));
-                        stringPossibilities.put(keySubstring, Integer.valueOf(integer) + 1);
-                    } else {
-                        stringPossibilities.put(keySubstring, 1);
-                    }
-                }
-            }
+    /**
+     * The compiled dictionary shipped next to the plugin jar, null if this class was not loaded
+     * from a jar.
+     */
+    static Path bundledDictFile() {
+        URL url = STConverter.class.getResource("STConverter.class");
+        if (url == null || !"jar".equals(url.getProtocol())) {
+            return null;
         }
-
-        iter = stringPossibilities.keySet().iterator();
-        while (iter.hasNext()) {
-            String key = (String) iter.next();
-            int value = (Integer)stringPossibilities.get(key);
-            if (value > 1) {
-                conflictingSets.add(key);
-            }
+        String path = url.getPath();
+        int separator = path.indexOf("!/");
+        try {
+            Path jar = Paths.get(new URI(separator < 0 ? path : path.substring(0, separator)));
+            return jar.resolveSibling(DICT_FILE_NAME);
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
         }
     }
 
     public String convert(STConvertType type,String in) {
-           Map<Object, Object> map=charMap;
-        if(type== STConvertType.SIMPLE_2_TRADITIONAL){
-            map=revCharMap;
-        }
+        char[] src = in.toCharArray();
+        char[] dest = new char[maxConvertedLength(type, src.length)];
+        int length = convert(type, src, 0, src.length, dest, 0);
+        return new String(dest, 0, length);
+    }
 
-        StringBuilder target = new StringBuilder();
-        StringBuilder source = new StringBuilder();
-
-        for (int i = 0; i < in.length(); i++) {
-            char c = in.charAt(i);
-            String key = Character.toString(c);
-            source.append(key);
-
-            if (conflictingSets.contains(source.toString())) {
-            } else if (map.containsKey(source.toString())) {
-                target.append(map.get(source.toString()));
-                source.setLength(0);
-            } else {
-                CharSequence sequence = source.subSequence(0, source.length()-1);
-                source.delete(0, source.length()-1);
-                mapping(map, target, new StringBuilder(sequence));
-            }
-        }
+    /**
+     * Converts {@code length} chars of {@code src} starting at {@code offset} into {@code dest},
+     * always replacing the longest mapped sequence. Nothing is allocated.
+     *
+     * @param dest must have room for {@link #maxConvertedLength(STConvertType, int)} chars
+     * @return the number of chars written to {@code dest}
+     */
+    public int convert(STConvertType type, char[] src, int offset, int length, char[] dest, int destOffset) {
+        return trie(type).rewrite(src, offset, length, dest, destOffset);
+    }
 
-        mapping(map, target, source);
+    /**
+     * Upper bound of the converted length of {@code length} input chars.
+     */
+    public int maxConvertedLength(STConvertType type, int length) {
+        return trie(type).maxRewrittenLength(length);
+    }
 
-        return target.toString();
+    public DoubleArrayTrie trie(STConvertType type) {
+        return type == STConvertType.SIMPLE_2_TRADITIONAL ? s2tTrie : t2sTrie;
     }
 
     public static STConverter getInstance(){
-        if(instance==null){instance = new STConverter();}
-        return instance;
+        return InstanceHolder.INSTANCE;
     }
 
     public String convert(String text, STConvertType converterType) {
         return getInstance().convert(converterType,text);
     }
 
-    private static void mapping(Map<Object, Object> map, StringBuilder outString, StringBuilder stackString) {
-        while (stackString.length() > 0){
-            if (map.containsKey(stackString.toString())) {
-                outString.append(map.get(stackString.toString()));
-                stackString.setLength(0);
-
-            } else {
-                outString.append(Character.toString( stackString.charAt(0)) );
-                stackString.delete(0, 1);
-            }
-
-        }
-    }
-
 }
-
@@ -0,0 +1,173 @@
+package org.es.ngram.index.analysis;
+
+import org.apache.lucene.analysis.Analyzer.TokenStreamComponents;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.util.AttributeImpl;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.cache.RemovalNotification;
+import org.es.ngram.stats.SearchCacheStats;
+
+import java.io.Reader;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.analysis
+ * @date 2024-07-05 10:10
+ * @description Bounded LRU cache of the analysis of short query strings.
+ *
+ * <p>Autocomplete sends the same short inputs over and over, so an analyzer given this cache
+ * records the token states of every input of up to {@code maxInputLength} chars and replays them
+ * through {@link CachedAnalysisTokenFilter} the next time, skipping tokenizing, lowercasing,
+ * conversion and gram generation. Longer inputs are analyzed as usual. Meant for the analyzer used
+ * as search_analyzer: at index time most inputs are longer than the limit and only pay for reading
+ * its first chars twice.
+ */
+public class SearchAnalysisCache {
+	public static final int DEFAULT_MAX_INPUT_LENGTH = 32;
+	/** analyses with more tokens than this are not cached */
+	public static final int MAX_CACHED_TOKENS = 256;
+
+	private final int size;
+	private final int maxInputLength;
+	private final Cache<String, Entry> cache;
+	private final LongAdder bypassed = new LongAdder();
+	/** node wide counters of the analyzer name, null if not reported */
+	private volatile SearchCacheStats stats;
+
+	/**
+	 * @param size the most inputs cached
+	 * @param maxInputLength the longest input cached, in chars
+	 */
+	public SearchAnalysisCache(int size, int maxInputLength) {
+		if (size < 1) {
+			throw new IllegalArgumentException("size must be greater than zero");
+		}
+		if (maxInputLength < 1) {
+			throw new IllegalArgumentException("maxInputLength must be greater than zero");
+		}
+		this.size = size;
+		this.maxInputLength = maxInputLength;
+		this.cache = CacheBuilder.<String, Entry>builder().setMaximumWeight(size)
+				.removalListener(this::onRemoval).build();
+	}
+
+	/**
+	 * Wraps the components of an analysis chain so its output is served from this cache.
+	 */
+	public TokenStreamComponents wrap(Tokenizer source, TokenStream result) {
+		return wrap(source::setReader, result);
+	}
+
+	/**
+	 * Wraps the components of an analysis chain whose source takes its reader through
+	 * sourceReader, e.g. wrapped in a char filter. Inputs are cached as read, before the wrapping.
+	 */
+	public TokenStreamComponents wrap(Consumer<Reader> sourceReader, TokenStream result) {
+		CachedAnalysisTokenFilter filter = new CachedAnalysisTokenFilter(sourceReader, result, this);
+		return new TokenStreamComponents(filter::setReader, filter);
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public int getMaxInputLength() {
+		return maxInputLength;
+	}
+
+	public long hits() {
+		return cache.stats().getHits();
+	}
+
+	public long misses() {
+		return cache.stats().getMisses();
+	}
+
+	public long evictions() {
+		return cache.stats().getEvictions();
+	}
+
+	/**
+	 * Inputs analyzed without the cache because they were too long.
+	 */
+	public long bypassed() {
+		return bypassed.sum();
+	}
+
+	/**
+	 * Hits over lookups, 0 before the first lookup.
+	 */
+	public double hitRate() {
+		Cache.CacheStats stats = cache.stats();
+		long lookups = stats.getHits() + stats.getMisses();
+		return lookups == 0 ? 0d : (double) stats.getHits() / lookups;
+	}
+
+	/**
+	 * Number of cached inputs.
+	 */
+	public int count() {
+		return cache.count();
+	}
+
+	public void clear() {
+		cache.invalidateAll();
+	}
+
+	/**
+	 * Also counts lookups, evictions and bypassed inputs into the given node wide stats.
+	 */
+	public void setStats(SearchCacheStats stats) {
+		this.stats = stats;
+	}
+
+	Entry get(String input) {
+		Entry entry = cache.get(input);
+		SearchCacheStats stats = this.stats;
+		if (null != stats) {
+			if (null == entry) {
+				stats.miss();
+			} else {
+				stats.hit();
+			}
+		}
+		return entry;
+	}
+
+	void put(String input, Entry entry) {
+		cache.put(input, entry);
+	}
+
+	void bypass() {
+		bypassed.increment();
+		SearchCacheStats stats = this.stats;
+		if (null != stats) {
+			stats.bypassed();
+		}
+	}
+
+	private void onRemoval(RemovalNotification<String, Entry> notification) {
+		SearchCacheStats stats = this.stats;
+		if (null != stats && notification.getRemovalReason() == RemovalNotification.RemovalReason.EVICTED) {
+			stats.evicted();
+		}
+	}
+
+	/**
+	 * The recorded token attributes of an input and the attributes after end().
+	 */
+	static final class Entry {
+		final List<AttributeImpl> tokens;
+		final AttributeImpl end;
+
+		Entry(List<AttributeImpl> tokens, AttributeImpl end) {
+			this.tokens = tokens;
+			this.end = end;
+		}
+	}
+}
@@ -6,8 +6,10 @@ import org.apache.lucene.analysis.CharArraySet;
 import org.apache.lucene.analysis.FilteringTokenFilter;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
-import org.es.ngram.config.StopwordDictLoader;
+import org.es.ngram.config.StopwordDictRegistry;
+import org.es.ngram.stats.StopwordFilterStats;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
@@ -20,10 +22,13 @@ import java.util.List;
 public class StopwordTokenFilter extends FilteringTokenFilter {
 	public static final Log log = LogFactory.getLog(StopwordTokenFilter.class);
 
-	private final static String DEFAULT_STOPWORD_DICTPATH = "classpath:stopword.dic";
+	public final static String DEFAULT_STOPWORD_DICTPATH = "classpath:stopword.dic";
 
 	private final CharArraySet stopWords;
 	private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+	private final StopwordFilterStats stats;
+	private long tokens;
+	private long stopwordHits;
 
 	private String stopwordDictPath;
 	/**
@@ -32,6 +37,38 @@ public class StopwordTokenFilter extends FilteringTokenFilter {
 	 *
 	 * @param in
 	 *          Input stream
+	 * @param stopWords
+	 *          A {@link CharArraySet} representing the stopwords, usually shared through
+	 *          {@link StopwordDictRegistry}
+	 */
+	public StopwordTokenFilter(TokenStream in, CharArraySet stopWords) {
+		this(in, stopWords, null);
+	}
+
+	/**
+	 * Constructs a filter which removes words from the input TokenStream that are
+	 * named in the Set, and counts the tokens checked and removed.
+	 *
+	 * @param in
+	 *          Input stream
+	 * @param stopWords
+	 *          A {@link CharArraySet} representing the stopwords
+	 * @param stats
+	 *          Counters the filter adds to once per document, or null
+	 */
+	public StopwordTokenFilter(TokenStream in, CharArraySet stopWords, StopwordFilterStats stats) {
+		super(in);
+		this.stopWords = (stopWords == null) ? CharArraySet.EMPTY_SET : stopWords;
+		this.stats = stats;
+	}
+
+	/**
+	 * Constructs a filter which removes words from the input TokenStream that are
+	 * named in the dictionary. The dictionary is looked up in {@link StopwordDictRegistry},
+	 * which only loads it again once no filter, analyzer or factory uses it anymore.
+	 *
+	 * @param in
+	 *          Input stream
 	 * @see #makeStopSet(java.lang.String...)
 	 */
 	public StopwordTokenFilter(TokenStream in, String stopwordDictPath) {
@@ -42,12 +79,12 @@ public class StopwordTokenFilter extends FilteringTokenFilter {
 		this.stopwordDictPath = stopwordDictPath;
 		CharArraySet charArraySet = null;
 		try {
-			charArraySet = StopwordDictLoader.loadStopwordSet(this.stopwordDictPath);
+			charArraySet = StopwordDictRegistry.getInstance().stopwords(this.stopwordDictPath);
 		} catch (Exception e) {
 			log.error("Load stopword dictionary file occr exception:\n" + e.getMessage());
 		}
-		this.stopWords = (charArraySet == null) ? CharArraySet.EMPTY_SET : CharArraySet
-				.unmodifiableSet(CharArraySet.copy(charArraySet));
+		this.stopWords = (charArraySet == null) ? CharArraySet.EMPTY_SET : charArraySet;
+		this.stats = null;
 	}
 
 	/**
@@ -107,7 +144,29 @@ public class StopwordTokenFilter extends FilteringTokenFilter {
 	 */
 	@Override
 	protected boolean accept() {
-		return !stopWords.contains(termAtt.buffer(), 0, termAtt.length());
+		final boolean stopword = stopWords.contains(termAtt.buffer(), 0, termAtt.length());
+		tokens++;
+		if (stopword) {
+			stopwordHits++;
+		}
+		return !stopword;
+	}
+
+	@Override
+	public void end() throws IOException {
+		super.end();
+		if (null != stats) {
+			stats.add(tokens, stopwordHits);
+		}
+		tokens = 0L;
+		stopwordHits = 0L;
+	}
+
+	@Override
+	public void reset() throws IOException {
+		super.reset();
+		tokens = 0L;
+		stopwordHits = 0L;
 	}
 
 	public String getStopwordDictPath() {
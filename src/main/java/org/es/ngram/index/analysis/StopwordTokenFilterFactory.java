@@ -1,11 +1,17 @@
 package org.es.ngram.index.analysis;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.analysis.CharArraySet;
 import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.env.Environment;
 import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.analysis.AbstractTokenFilterFactory;
+import org.es.ngram.config.StopwordDictRegistry;
+import org.es.ngram.stats.AnalysisStats;
+import org.es.ngram.stats.StopwordFilterStats;
 
 /**
  * @author yida
@@ -14,12 +20,26 @@ import org.elasticsearch.index.analysis.AbstractTokenFilterFactory;
  * @description Type your description over here.
  */
 public class StopwordTokenFilterFactory extends AbstractTokenFilterFactory {
+	public static final Log log = LogFactory.getLog(StopwordTokenFilterFactory.class);
 
 	private String stopwordDictPath;
 
+	private final CharArraySet stopwords;
+	private final StopwordFilterStats stats;
+
 	public StopwordTokenFilterFactory(IndexSettings indexSettings, Environment env, String name, Settings settings) {
 		super(indexSettings, name, settings);
 		this.stopwordDictPath = settings.get("stopword_dict_path", (String)null);
+		String dictPath = (null == this.stopwordDictPath || this.stopwordDictPath.length() <= 0) ?
+				StopwordTokenFilter.DEFAULT_STOPWORD_DICTPATH : this.stopwordDictPath;
+		CharArraySet stopwords = null;
+		try {
+			stopwords = StopwordDictRegistry.getInstance().stopwords(dictPath);
+		} catch (Exception e) {
+			log.error("Load stopword dictionary file occr exception:\n" + e.getMessage());
+		}
+		this.stopwords = (null == stopwords) ? CharArraySet.EMPTY_SET : stopwords;
+		this.stats = AnalysisStats.getInstance().stopwordFilter(name);
 	}
 
 	public static StopwordTokenFilterFactory getStopwordTokenFilterFactory(IndexSettings indexSettings, Environment env, String name, Settings settings) {
@@ -28,7 +48,7 @@ public class StopwordTokenFilterFactory extends AbstractTokenFilterFactory {
 
 	@Override
 	public TokenFilter create(TokenStream input) {
-		return new StopwordTokenFilter(input, this.stopwordDictPath);
+		return new StopwordTokenFilter(input, stopwords, stats);
 	}
 
 	public String getStopwordDictPath() {
@@ -0,0 +1,82 @@
+package org.es.ngram.index.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.query
+ * @date 2024-06-29 16:10
+ * @description Picks the cheapest set of grams covering a query token.
+ *
+ * <p>Every candidate gram is an interval of code points with a cost, its document frequency. The
+ * chosen intervals must cover the whole token, overlaps allowed, and the sum of their costs plus
+ * one per gram is minimal, so ties go to fewer grams. Solved by a dynamic program over the end of
+ * the covered prefix.
+ */
+final class GramCover {
+
+	private GramCover() {
+	}
+
+	/**
+	 * @param starts the code point offset of each candidate inside the token
+	 * @param lengths the code point length of each candidate
+	 * @param costs the cost of each candidate, negative ones are never chosen
+	 * @param length the code point length of the token
+	 * @return the indexes of the chosen candidates, or null if the token cannot be covered
+	 */
+	static int[] cheapest(int[] starts, int[] lengths, long[] costs, int length) {
+		// best[e]: cheapest cover of [0, e) whose last gram ends at e
+		long[] best = new long[length + 1];
+		int[] last = new int[length + 1];
+		Arrays.fill(best, Long.MAX_VALUE);
+		Arrays.fill(last, -1);
+		best[0] = 0L;
+		for (int end = 1; end <= length; end++) {
+			for (int i = 0; i < starts.length; i++) {
+				if (costs[i] < 0 || starts[i] + lengths[i] != end) {
+					continue;
+				}
+				// any cover reaching at least the gram start can be extended by it
+				long previous = Long.MAX_VALUE;
+				for (int e = starts[i]; e < end; e++) {
+					previous = Math.min(previous, best[e]);
+				}
+				if (previous == Long.MAX_VALUE) {
+					continue;
+				}
+				long cost = previous + costs[i] + 1;
+				if (cost < best[end]) {
+					best[end] = cost;
+					last[end] = i;
+				}
+			}
+		}
+		if (best[length] == Long.MAX_VALUE) {
+			return null;
+		}
+		List<Integer> chosen = new ArrayList<>();
+		int end = length;
+		while (end > 0) {
+			int i = last[end];
+			chosen.add(i);
+			// continue from the cheapest cover this gram extended
+			long target = best[end] - costs[i] - 1;
+			int previousEnd = -1;
+			for (int e = starts[i]; e < end; e++) {
+				if (best[e] == target) {
+					previousEnd = e;
+					break;
+				}
+			}
+			end = previousEnd;
+		}
+		int[] result = new int[chosen.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = chosen.get(result.length - 1 - i);
+		}
+		return result;
+	}
+}
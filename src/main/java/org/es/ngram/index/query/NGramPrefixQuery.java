@@ -0,0 +1,135 @@
+package org.es.ngram.index.query;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.DocIdSetBuilder;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.query
+ * @date 2024-06-30 12:05
+ * @description Constant score query matching the documents that contain one of the most frequent
+ * completions of a prefix.
+ *
+ * <p>The completions are looked up per segment in the weighted prefix FST of {@link PrefixFstCache},
+ * so the field only needs its whole tokens indexed rather than one term per prefix length, or in its
+ * terms dictionary while the FST of a segment is being built. The top {@code size} completions are
+ * chosen by their document frequency in each segment.
+ */
+public final class NGramPrefixQuery extends Query {
+	private final String field;
+	private final BytesRef prefix;
+	private final int size;
+
+	/**
+	 * @param field the field indexed with edge-ngram-completion-analyzer
+	 * @param prefix the normalized prefix
+	 * @param size how many completions to match per segment
+	 */
+	public NGramPrefixQuery(String field, BytesRef prefix, int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("size must be greater than zero");
+		}
+		this.field = field;
+		this.prefix = BytesRef.deepCopyOf(prefix);
+		this.size = size;
+	}
+
+	public String getField() {
+		return field;
+	}
+
+	public BytesRef getPrefix() {
+		return prefix;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	@Override
+	public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) throws IOException {
+		return new ConstantScoreWeight(this, boost) {
+			@Override
+			public Scorer scorer(LeafReaderContext context) throws IOException {
+				LeafReader reader = context.reader();
+				List<BytesRef> completions = PrefixFstCache.getInstance().completions(reader, field, prefix, size);
+				if (completions.isEmpty()) {
+					return null;
+				}
+				Terms terms = reader.terms(field);
+				TermsEnum termsEnum = terms.iterator();
+				DocIdSetBuilder builder = new DocIdSetBuilder(reader.maxDoc(), terms);
+				PostingsEnum postings = null;
+				for (BytesRef completion : completions) {
+					if (termsEnum.seekExact(completion)) {
+						postings = termsEnum.postings(postings, PostingsEnum.NONE);
+						builder.add(postings);
+					}
+				}
+				DocIdSetIterator iterator = builder.build().iterator();
+				if (null == iterator) {
+					return null;
+				}
+				return new ConstantScoreScorer(this, score(), scoreMode, iterator);
+			}
+
+			@Override
+			public boolean isCacheable(LeafReaderContext ctx) {
+				return true;
+			}
+		};
+	}
+
+	@Override
+	public void visit(QueryVisitor visitor) {
+		if (visitor.acceptField(field)) {
+			visitor.visitLeaf(this);
+		}
+	}
+
+	@Override
+	public String toString(String field) {
+		StringBuilder buffer = new StringBuilder();
+		if (!this.field.equals(field)) {
+			buffer.append(this.field).append(':');
+		}
+		return buffer.append("ngram_prefix(").append(new Term(this.field, prefix).text()).append(", size=").append(size)
+				.append(')').toString();
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return sameClassAs(other) && equalsTo(getClass().cast(other));
+	}
+
+	private boolean equalsTo(NGramPrefixQuery other) {
+		return field.equals(other.field) && prefix.equals(other.prefix) && size == other.size;
+	}
+
+	@Override
+	public int hashCode() {
+		int h = classHash();
+		h = 31 * h + field.hashCode();
+		h = 31 * h + prefix.hashCode();
+		h = 31 * h + size;
+		return h;
+	}
+}
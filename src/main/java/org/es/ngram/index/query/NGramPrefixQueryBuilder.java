@@ -0,0 +1,210 @@
+package org.es.ngram.index.query;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.ParsingException;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.query.AbstractQueryBuilder;
+import org.elasticsearch.index.query.SearchExecutionContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.query
+ * @date 2024-06-30 12:40
+ * @description The ngram_prefix query, top-k prefix completion on a field indexed with
+ * edge-ngram-completion-analyzer.
+ *
+ * <pre>
+ * "ngram_prefix": {
+ *     "field": "title",
+ *     "query": "elas",
+ *     "size": 10
+ * }
+ * </pre>
+ *
+ * <p>The query text goes through the search analyzer of the field. Its last token is completed with
+ * the {@code size} most frequent terms of each segment through {@link NGramPrefixQuery}, the tokens
+ * before it must match as whole terms, in any order.
+ */
+public class NGramPrefixQueryBuilder extends AbstractQueryBuilder<NGramPrefixQueryBuilder> {
+	public static final String NAME = "ngram_prefix";
+	public static final int DEFAULT_SIZE = 10;
+
+	private static final ParseField FIELD_FIELD = new ParseField("field");
+	private static final ParseField QUERY_FIELD = new ParseField("query");
+	private static final ParseField SIZE_FIELD = new ParseField("size");
+
+	private final String fieldName;
+	private final String query;
+	private int size = DEFAULT_SIZE;
+
+	public NGramPrefixQueryBuilder(String fieldName, String query) {
+		if (null == fieldName || fieldName.isEmpty()) {
+			throw new IllegalArgumentException("[" + NAME + "] requires a field");
+		}
+		if (null == query) {
+			throw new IllegalArgumentException("[" + NAME + "] requires a query");
+		}
+		this.fieldName = fieldName;
+		this.query = query;
+	}
+
+	public NGramPrefixQueryBuilder(StreamInput in) throws IOException {
+		super(in);
+		this.fieldName = in.readString();
+		this.query = in.readString();
+		this.size = in.readVInt();
+	}
+
+	@Override
+	protected void doWriteTo(StreamOutput out) throws IOException {
+		out.writeString(fieldName);
+		out.writeString(query);
+		out.writeVInt(size);
+	}
+
+	public String fieldName() {
+		return fieldName;
+	}
+
+	public String query() {
+		return query;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Sets how many completions of the prefix are matched per segment.
+	 */
+	public NGramPrefixQueryBuilder size(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("[" + NAME + "] size must be greater than zero");
+		}
+		this.size = size;
+		return this;
+	}
+
+	@Override
+	protected void doXContent(XContentBuilder builder, Params params) throws IOException {
+		builder.startObject(NAME);
+		builder.field(FIELD_FIELD.getPreferredName(), fieldName);
+		builder.field(QUERY_FIELD.getPreferredName(), query);
+		builder.field(SIZE_FIELD.getPreferredName(), size);
+		printBoostAndQueryName(builder);
+		builder.endObject();
+	}
+
+	public static NGramPrefixQueryBuilder fromXContent(XContentParser parser) throws IOException {
+		String fieldName = null;
+		String query = null;
+		int size = DEFAULT_SIZE;
+		String queryName = null;
+		float boost = AbstractQueryBuilder.DEFAULT_BOOST;
+		String currentFieldName = null;
+		XContentParser.Token token;
+		while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+			if (token == XContentParser.Token.FIELD_NAME) {
+				currentFieldName = parser.currentName();
+			} else if (token.isValue()) {
+				if (FIELD_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+					fieldName = parser.text();
+				} else if (QUERY_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+					query = parser.text();
+				} else if (SIZE_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+					size = parser.intValue();
+				} else if (AbstractQueryBuilder.BOOST_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+					boost = parser.floatValue();
+				} else if (AbstractQueryBuilder.NAME_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+					queryName = parser.text();
+				} else {
+					throw new ParsingException(parser.getTokenLocation(), "[" + NAME + "] query does not support [" + currentFieldName + "]");
+				}
+			} else {
+				throw new ParsingException(parser.getTokenLocation(), "[" + NAME + "] unknown token [" + token + "] after [" + currentFieldName + "]");
+			}
+		}
+		if (null == fieldName) {
+			throw new ParsingException(parser.getTokenLocation(), "[" + NAME + "] requires a [" + FIELD_FIELD.getPreferredName() + "]");
+		}
+		if (null == query) {
+			throw new ParsingException(parser.getTokenLocation(), "[" + NAME + "] requires a [" + QUERY_FIELD.getPreferredName() + "]");
+		}
+		return new NGramPrefixQueryBuilder(fieldName, query).size(size).boost(boost).queryName(queryName);
+	}
+
+	@Override
+	protected Query doToQuery(SearchExecutionContext context) throws IOException {
+		MappedFieldType fieldType = context.getFieldType(fieldName);
+		if (null == fieldType) {
+			return new MatchNoDocsQuery("unmapped field [" + fieldName + "]");
+		}
+		Analyzer searchAnalyzer = fieldType.getTextSearchInfo().getSearchAnalyzer();
+		if (null == searchAnalyzer) {
+			throw new IllegalArgumentException("[" + NAME + "] field [" + fieldName + "] is not a text field");
+		}
+		return buildQuery(searchAnalyzer, fieldType.name(), query, size);
+	}
+
+	/**
+	 * Analyzes the text and completes its last token.
+	 */
+	public static Query buildQuery(Analyzer analyzer, String field, String text, int size) throws IOException {
+		List<BytesRef> tokens = new ArrayList<>();
+		try (TokenStream tokenStream = analyzer.tokenStream(field, text)) {
+			TermToBytesRefAttribute termAtt = tokenStream.addAttribute(TermToBytesRefAttribute.class);
+			tokenStream.reset();
+			while (tokenStream.incrementToken()) {
+				tokens.add(BytesRef.deepCopyOf(termAtt.getBytesRef()));
+			}
+			tokenStream.end();
+		}
+		if (tokens.isEmpty()) {
+			return new MatchNoDocsQuery("[" + NAME + "] query [" + text + "] has no tokens");
+		}
+		Query prefixQuery = new NGramPrefixQuery(field, tokens.get(tokens.size() - 1), size);
+		if (tokens.size() == 1) {
+			return prefixQuery;
+		}
+		BooleanQuery.Builder builder = new BooleanQuery.Builder();
+		for (int i = 0; i < tokens.size() - 1; i++) {
+			builder.add(new TermQuery(new Term(field, tokens.get(i))), BooleanClause.Occur.MUST);
+		}
+		builder.add(prefixQuery, BooleanClause.Occur.MUST);
+		return builder.build();
+	}
+
+	@Override
+	protected boolean doEquals(NGramPrefixQueryBuilder other) {
+		return Objects.equals(fieldName, other.fieldName) && Objects.equals(query, other.query) && size == other.size;
+	}
+
+	@Override
+	protected int doHashCode() {
+		return Objects.hash(fieldName, query, size);
+	}
+
+	@Override
+	public String getWriteableName() {
+		return NAME;
+	}
+}
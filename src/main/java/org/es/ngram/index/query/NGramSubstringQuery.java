@@ -0,0 +1,289 @@
+package org.es.ngram.index.query;
+
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.ConjunctionDISI;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.ArrayUtil;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.query
+ * @date 2024-06-29 15:30
+ * @description Constant score query matching documents that contain every gram clause at its
+ * relative place.
+ *
+ * <p>Each clause is a gram term, the position of the query token it was cut from and its code point
+ * offset inside that token. Clauses sharing a position come from the same query token and must all
+ * occur at one position of the document. If the field indexes offsets they must also start at the
+ * given distances from each other, which pins them to the exact place of the substring; without
+ * offsets only their co-occurrence in one document token is checked. Query tokens must occur at the
+ * same relative positions as in the query.
+ *
+ * <p>Posting lists are intersected first, positions and offsets are only read for the documents
+ * containing every gram.
+ */
+public final class NGramSubstringQuery extends Query {
+	private final String field;
+	private final Term[] terms;
+	private final int[] positions;
+	private final int[] offsets;
+
+	/**
+	 * @param field the field the grams were indexed in
+	 * @param terms the gram terms
+	 * @param positions the relative position of the query token each gram belongs to
+	 * @param offsets the code point offset of each gram inside its query token
+	 */
+	public NGramSubstringQuery(String field, Term[] terms, int[] positions, int[] offsets) {
+		if (terms.length == 0) {
+			throw new IllegalArgumentException("NGramSubstringQuery needs at least one term");
+		}
+		if (terms.length != positions.length || terms.length != offsets.length) {
+			throw new IllegalArgumentException("terms, positions and offsets must have the same length");
+		}
+		Integer[] order = new Integer[terms.length];
+		for (int i = 0; i < order.length; i++) {
+			if (!field.equals(terms[i].field())) {
+				throw new IllegalArgumentException("All terms must be in field [" + field + "]");
+			}
+			order[i] = i;
+		}
+		// group the clauses of one query token together, the matcher relies on it
+		Arrays.sort(order, Comparator.<Integer>comparingInt(i -> positions[i]).thenComparingInt(i -> offsets[i]));
+		this.field = field;
+		this.terms = new Term[terms.length];
+		this.positions = new int[terms.length];
+		this.offsets = new int[terms.length];
+		for (int i = 0; i < order.length; i++) {
+			this.terms[i] = terms[order[i]];
+			this.positions[i] = positions[order[i]];
+			this.offsets[i] = offsets[order[i]];
+		}
+	}
+
+	public String getField() {
+		return field;
+	}
+
+	public Term[] getTerms() {
+		return terms.clone();
+	}
+
+	@Override
+	public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) throws IOException {
+		return new ConstantScoreWeight(this, boost) {
+			@Override
+			public Scorer scorer(LeafReaderContext context) throws IOException {
+				LeafReader reader = context.reader();
+				FieldInfo fieldInfo = reader.getFieldInfos().fieldInfo(field);
+				if (null == fieldInfo) {
+					return null;
+				}
+				IndexOptions indexOptions = fieldInfo.getIndexOptions();
+				if (indexOptions.compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS) < 0) {
+					throw new IllegalStateException("field \"" + field + "\" was indexed without position data; cannot run NGramSubstringQuery");
+				}
+				boolean useOffsets = indexOptions.compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS) >= 0;
+				Terms fieldTerms = reader.terms(field);
+				if (null == fieldTerms) {
+					return null;
+				}
+				TermsEnum termsEnum = fieldTerms.iterator();
+				if (terms.length == 1) {
+					// a single gram has nothing to be placed against
+					if (!termsEnum.seekExact(terms[0].bytes())) {
+						return null;
+					}
+					return new ConstantScoreScorer(this, score(), scoreMode, termsEnum.postings(null, PostingsEnum.NONE));
+				}
+				PostingsEnum[] postings = new PostingsEnum[terms.length];
+				for (int i = 0; i < terms.length; i++) {
+					if (!termsEnum.seekExact(terms[i].bytes())) {
+						return null;
+					}
+					postings[i] = termsEnum.postings(null, useOffsets ? PostingsEnum.OFFSETS : PostingsEnum.POSITIONS);
+				}
+				List<DocIdSetIterator> iterators = new ArrayList<>(Arrays.<DocIdSetIterator>asList(postings));
+				DocIdSetIterator approximation = ConjunctionDISI.intersectIterators(iterators);
+				final Matcher matcher = new Matcher(postings, useOffsets);
+				TwoPhaseIterator twoPhaseIterator = new TwoPhaseIterator(approximation) {
+					@Override
+					public boolean matches() throws IOException {
+						return matcher.matches();
+					}
+
+					@Override
+					public float matchCost() {
+						// reading positions dominates, a few per clause
+						return terms.length * 4f;
+					}
+				};
+				return new ConstantScoreScorer(this, score(), scoreMode, twoPhaseIterator);
+			}
+
+			@Override
+			public boolean isCacheable(LeafReaderContext ctx) {
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Positional check of one segment, run on documents that contain every clause.
+	 */
+	private final class Matcher {
+		private final PostingsEnum[] postings;
+		private final boolean useOffsets;
+		private final int[] freqs;
+		private final int[][] docPositions;
+		private final int[][] docOffsets;
+
+		Matcher(PostingsEnum[] postings, boolean useOffsets) {
+			this.postings = postings;
+			this.useOffsets = useOffsets;
+			this.freqs = new int[postings.length];
+			this.docPositions = new int[postings.length][];
+			this.docOffsets = new int[postings.length][];
+			for (int i = 0; i < postings.length; i++) {
+				docPositions[i] = new int[4];
+				docOffsets[i] = new int[4];
+			}
+		}
+
+		boolean matches() throws IOException {
+			for (int i = 0; i < postings.length; i++) {
+				int freq = postings[i].freq();
+				docPositions[i] = ArrayUtil.grow(docPositions[i], freq);
+				docOffsets[i] = ArrayUtil.grow(docOffsets[i], freq);
+				for (int j = 0; j < freq; j++) {
+					docPositions[i][j] = postings[i].nextPosition();
+					docOffsets[i][j] = useOffsets ? postings[i].startOffset() : -1;
+				}
+				freqs[i] = freq;
+			}
+			// every occurrence of the first clause anchors a candidate placement of the whole query
+			for (int j = 0; j < freqs[0]; j++) {
+				if (j > 0 && docPositions[0][j] == docPositions[0][j - 1]) {
+					continue;
+				}
+				if (matchesAt(docPositions[0][j] - positions[0])) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private boolean matchesAt(int base) {
+			int groupStart = 0;
+			while (groupStart < terms.length) {
+				int groupEnd = groupStart + 1;
+				while (groupEnd < terms.length && positions[groupEnd] == positions[groupStart]) {
+					groupEnd++;
+				}
+				if (!groupMatches(groupStart, groupEnd, base + positions[groupStart])) {
+					return false;
+				}
+				groupStart = groupEnd;
+			}
+			return true;
+		}
+
+		private boolean groupMatches(int groupStart, int groupEnd, int position) {
+			for (int j = 0; j < freqs[groupStart]; j++) {
+				if (docPositions[groupStart][j] != position) {
+					continue;
+				}
+				int baseOffset = useOffsets ? docOffsets[groupStart][j] - offsets[groupStart] : -1;
+				boolean all = true;
+				for (int c = groupStart + 1; c < groupEnd && all; c++) {
+					all = contains(c, position, useOffsets ? baseOffset + offsets[c] : -1);
+				}
+				if (all) {
+					return true;
+				}
+				if (!useOffsets) {
+					return false;
+				}
+			}
+			return false;
+		}
+
+		private boolean contains(int clause, int position, int startOffset) {
+			for (int j = 0; j < freqs[clause]; j++) {
+				int docPosition = docPositions[clause][j];
+				if (docPosition > position) {
+					return false;
+				}
+				if (docPosition == position && (startOffset < 0 || docOffsets[clause][j] == startOffset)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	@Override
+	public void visit(QueryVisitor visitor) {
+		if (visitor.acceptField(field)) {
+			visitor.consumeTerms(this, terms);
+		}
+	}
+
+	@Override
+	public String toString(String field) {
+		StringBuilder buffer = new StringBuilder();
+		if (!this.field.equals(field)) {
+			buffer.append(this.field).append(':');
+		}
+		buffer.append("ngram_substring(");
+		for (int i = 0; i < terms.length; i++) {
+			if (i > 0) {
+				buffer.append(' ');
+			}
+			buffer.append(terms[i].text()).append('@').append(positions[i]).append('+').append(offsets[i]);
+		}
+		return buffer.append(')').toString();
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return sameClassAs(other) && equalsTo(getClass().cast(other));
+	}
+
+	private boolean equalsTo(NGramSubstringQuery other) {
+		return field.equals(other.field) && Arrays.equals(terms, other.terms)
+				&& Arrays.equals(positions, other.positions) && Arrays.equals(offsets, other.offsets);
+	}
+
+	@Override
+	public int hashCode() {
+		int h = classHash();
+		h = 31 * h + field.hashCode();
+		h = 31 * h + Arrays.hashCode(terms);
+		h = 31 * h + Arrays.hashCode(positions);
+		h = 31 * h + Arrays.hashCode(offsets);
+		return h;
+	}
+}
@@ -0,0 +1,339 @@
+package org.es.ngram.index.query;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.ParsingException;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.analysis.CustomAnalyzer;
+import org.elasticsearch.index.analysis.NamedAnalyzer;
+import org.elasticsearch.index.analysis.TokenFilterFactory;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.query.AbstractQueryBuilder;
+import org.elasticsearch.index.query.SearchExecutionContext;
+import org.es.ngram.index.analysis.NGramAnalyzer;
+import org.es.ngram.index.analysis.NGramTokenFilterFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.query
+ * @date 2024-06-29 16:45
+ * @description The ngram_substring query, an exact substring match on a field indexed with
+ * ngram-analyzer.
+ *
+ * <pre>
+ * "ngram_substring": {
+ *     "field": "title",
+ *     "query": "text to find",
+ *     "analyzer": "optional, defaults to the index analyzer of the field"
+ * }
+ * </pre>
+ *
+ * <p>The query text is analyzed with an analyzer that emits every gram, by default the index
+ * analyzer of the field, and each query token is covered by the grams with the lowest document
+ * frequencies in the shard (see {@link GramCover}). Those are run as a {@link NGramSubstringQuery}.
+ * A gram missing from the shard means the substring cannot occur and nothing matches.
+ *
+ * <p>The match is exact within a document token when the field indexes offsets
+ * ({@code "index_options": "offsets"}), otherwise the grams are only checked to occur in the same
+ * token. For queries spanning several tokens the tokens must be consecutive in the document, but
+ * whether the first one ends its document token and the last one starts its own cannot be verified
+ * from grams alone. Query tokens shorter than min_gram only match equal document tokens, and gram
+ * budgets or the adaptive max_gram on the index side can make long document tokens miss matches.
+ *
+ * <p>Fields analyzed with dedupe_grams are rejected: a repeated gram is only indexed at its first
+ * position, so the grams of repeated text can not be verified at theirs. The check covers the
+ * analyzer given, the search analyzer of the field and, without a search_analyzer, its index
+ * analyzer. An index analyzer with dedupe_grams behind a search_analyzer without it can not be seen
+ * from the query, such a field misses matches in repeated text.
+ */
+public class NGramSubstringQueryBuilder extends AbstractQueryBuilder<NGramSubstringQueryBuilder> {
+	public static final String NAME = "ngram_substring";
+
+	private static final ParseField FIELD_FIELD = new ParseField("field");
+	private static final ParseField QUERY_FIELD = new ParseField("query");
+	private static final ParseField ANALYZER_FIELD = new ParseField("analyzer");
+
+	private final String fieldName;
+	private final String query;
+	private String analyzer;
+
+	public NGramSubstringQueryBuilder(String fieldName, String query) {
+		if (null == fieldName || fieldName.isEmpty()) {
+			throw new IllegalArgumentException("[" + NAME + "] requires a field");
+		}
+		if (null == query) {
+			throw new IllegalArgumentException("[" + NAME + "] requires a query");
+		}
+		this.fieldName = fieldName;
+		this.query = query;
+	}
+
+	public NGramSubstringQueryBuilder(StreamInput in) throws IOException {
+		super(in);
+		this.fieldName = in.readString();
+		this.query = in.readString();
+		this.analyzer = in.readOptionalString();
+	}
+
+	@Override
+	protected void doWriteTo(StreamOutput out) throws IOException {
+		out.writeString(fieldName);
+		out.writeString(query);
+		out.writeOptionalString(analyzer);
+	}
+
+	public String fieldName() {
+		return fieldName;
+	}
+
+	public String query() {
+		return query;
+	}
+
+	public String analyzer() {
+		return analyzer;
+	}
+
+	/**
+	 * Sets the analyzer producing the candidate grams, it must emit every gram like ngram-analyzer.
+	 */
+	public NGramSubstringQueryBuilder analyzer(String analyzer) {
+		this.analyzer = analyzer;
+		return this;
+	}
+
+	@Override
+	protected void doXContent(XContentBuilder builder, Params params) throws IOException {
+		builder.startObject(NAME);
+		builder.field(FIELD_FIELD.getPreferredName(), fieldName);
+		builder.field(QUERY_FIELD.getPreferredName(), query);
+		if (null != analyzer) {
+			builder.field(ANALYZER_FIELD.getPreferredName(), analyzer);
+		}
+		printBoostAndQueryName(builder);
+		builder.endObject();
+	}
+
+	public static NGramSubstringQueryBuilder fromXContent(XContentParser parser) throws IOException {
+		String fieldName = null;
+		String query = null;
+		String analyzer = null;
+		String queryName = null;
+		float boost = AbstractQueryBuilder.DEFAULT_BOOST;
+		String currentFieldName = null;
+		XContentParser.Token token;
+		while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+			if (token == XContentParser.Token.FIELD_NAME) {
+				currentFieldName = parser.currentName();
+			} else if (token.isValue()) {
+				if (FIELD_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+					fieldName = parser.text();
+				} else if (QUERY_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+					query = parser.text();
+				} else if (ANALYZER_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+					analyzer = parser.text();
+				} else if (AbstractQueryBuilder.BOOST_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+					boost = parser.floatValue();
+				} else if (AbstractQueryBuilder.NAME_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+					queryName = parser.text();
+				} else {
+					throw new ParsingException(parser.getTokenLocation(), "[" + NAME + "] query does not support [" + currentFieldName + "]");
+				}
+			} else {
+				throw new ParsingException(parser.getTokenLocation(), "[" + NAME + "] unknown token [" + token + "] after [" + currentFieldName + "]");
+			}
+		}
+		if (null == fieldName) {
+			throw new ParsingException(parser.getTokenLocation(), "[" + NAME + "] requires a [" + FIELD_FIELD.getPreferredName() + "]");
+		}
+		if (null == query) {
+			throw new ParsingException(parser.getTokenLocation(), "[" + NAME + "] requires a [" + QUERY_FIELD.getPreferredName() + "]");
+		}
+		return new NGramSubstringQueryBuilder(fieldName, query).analyzer(analyzer).boost(boost).queryName(queryName);
+	}
+
+	@Override
+	protected Query doToQuery(SearchExecutionContext context) throws IOException {
+		MappedFieldType fieldType = context.getFieldType(fieldName);
+		if (null == fieldType) {
+			return new MatchNoDocsQuery("unmapped field [" + fieldName + "]");
+		}
+		if (!fieldType.getTextSearchInfo().hasPositions()) {
+			throw new IllegalArgumentException("[" + NAME + "] field [" + fieldName + "] was indexed without positions");
+		}
+		Analyzer gramAnalyzer;
+		if (null != analyzer) {
+			NamedAnalyzer namedAnalyzer = context.getIndexAnalyzers().get(analyzer);
+			if (null == namedAnalyzer) {
+				throw new IllegalArgumentException("[" + NAME + "] analyzer [" + analyzer + "] not found");
+			}
+			gramAnalyzer = namedAnalyzer;
+		} else {
+			gramAnalyzer = context.getIndexAnalyzer(name -> {
+				throw new IllegalArgumentException("[" + NAME + "] field [" + name + "] is not indexed");
+			});
+		}
+		if (dedupesGrams(gramAnalyzer) || dedupesGrams(fieldType.getTextSearchInfo().getSearchAnalyzer())) {
+			throw new IllegalArgumentException("[" + NAME + "] field [" + fieldName + "] is analyzed with [dedupe_grams], "
+					+ "repeated grams are not indexed at every position");
+		}
+		return buildQuery(gramAnalyzer, context.getIndexReader(), fieldType.name(), query);
+	}
+
+	/**
+	 * Whether the analyzer is an ngram-analyzer or a custom analyzer with an ngram-filter that
+	 * deduplicates grams.
+	 */
+	static boolean dedupesGrams(Analyzer analyzer) {
+		if (analyzer instanceof NamedAnalyzer) {
+			analyzer = ((NamedAnalyzer) analyzer).analyzer();
+		}
+		if (analyzer instanceof NGramAnalyzer) {
+			return ((NGramAnalyzer) analyzer).getDedupeMaxGrams() > 0;
+		}
+		if (analyzer instanceof CustomAnalyzer) {
+			for (TokenFilterFactory tokenFilter : ((CustomAnalyzer) analyzer).tokenFilters()) {
+				if (tokenFilter instanceof NGramTokenFilterFactory && ((NGramTokenFilterFactory) tokenFilter).getDedupeMaxGrams() > 0) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Analyzes the text into grams and covers every query token with its cheapest grams according
+	 * to the document frequencies in the reader.
+	 */
+	public static Query buildQuery(Analyzer analyzer, IndexReader reader, String field, String text) throws IOException {
+		List<QueryToken> tokens = analyze(analyzer, field, text);
+		if (tokens.isEmpty()) {
+			return new MatchNoDocsQuery("[" + NAME + "] query [" + text + "] has no grams");
+		}
+		List<Term> terms = new ArrayList<>();
+		List<Integer> positions = new ArrayList<>();
+		List<Integer> offsets = new ArrayList<>();
+		for (QueryToken token : tokens) {
+			int size = token.grams.size();
+			int[] starts = new int[size];
+			int[] lengths = new int[size];
+			long[] costs = new long[size];
+			for (int i = 0; i < size; i++) {
+				Gram gram = token.grams.get(i);
+				starts[i] = gram.offset;
+				lengths[i] = gram.length;
+				int docFreq = reader.docFreq(new Term(field, gram.bytes));
+				// a gram no document has can not be part of a match
+				costs[i] = docFreq == 0 ? -1 : docFreq;
+			}
+			int[] chosen = GramCover.cheapest(starts, lengths, costs, token.length);
+			if (null == chosen) {
+				return new MatchNoDocsQuery("[" + NAME + "] query [" + text + "] has grams missing from the index");
+			}
+			for (int i : chosen) {
+				Gram gram = token.grams.get(i);
+				terms.add(new Term(field, gram.bytes));
+				positions.add(token.position);
+				offsets.add(gram.offset);
+			}
+		}
+		int[] positionArray = new int[positions.size()];
+		int[] offsetArray = new int[offsets.size()];
+		for (int i = 0; i < positionArray.length; i++) {
+			positionArray[i] = positions.get(i);
+			offsetArray[i] = offsets.get(i);
+		}
+		return new NGramSubstringQuery(field, terms.toArray(new Term[0]), positionArray, offsetArray);
+	}
+
+	/**
+	 * Groups the grams by the query token they were cut from. A token starts with every gram that
+	 * increments the position, gram offsets are taken relative to its first gram.
+	 */
+	private static List<QueryToken> analyze(Analyzer analyzer, String field, String text) throws IOException {
+		List<QueryToken> tokens = new ArrayList<>();
+		try (TokenStream tokenStream = analyzer.tokenStream(field, text)) {
+			TermToBytesRefAttribute termAtt = tokenStream.addAttribute(TermToBytesRefAttribute.class);
+			PositionIncrementAttribute posIncrAtt = tokenStream.addAttribute(PositionIncrementAttribute.class);
+			OffsetAttribute offsetAtt = tokenStream.addAttribute(OffsetAttribute.class);
+			tokenStream.reset();
+			int position = -1;
+			QueryToken current = null;
+			while (tokenStream.incrementToken()) {
+				int posIncr = posIncrAtt.getPositionIncrement();
+				if (posIncr > 0 || null == current) {
+					position += Math.max(posIncr, 1);
+					current = new QueryToken(position, offsetAtt.startOffset());
+					tokens.add(current);
+				}
+				int offset = offsetAtt.startOffset() - current.startOffset;
+				int length = offsetAtt.endOffset() - offsetAtt.startOffset();
+				if (offset < 0 || length <= 0) {
+					continue;
+				}
+				current.grams.add(new Gram(BytesRef.deepCopyOf(termAtt.getBytesRef()), offset, length));
+				current.length = Math.max(current.length, offset + length);
+			}
+			tokenStream.end();
+		}
+		tokens.removeIf(token -> token.grams.isEmpty());
+		return tokens;
+	}
+
+	private static final class QueryToken {
+		private final int position;
+		private final int startOffset;
+		private final List<Gram> grams = new ArrayList<>();
+		private int length;
+
+		QueryToken(int position, int startOffset) {
+			this.position = position;
+			this.startOffset = startOffset;
+		}
+	}
+
+	private static final class Gram {
+		private final BytesRef bytes;
+		private final int offset;
+		private final int length;
+
+		Gram(BytesRef bytes, int offset, int length) {
+			this.bytes = bytes;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	@Override
+	protected boolean doEquals(NGramSubstringQueryBuilder other) {
+		return Objects.equals(fieldName, other.fieldName) && Objects.equals(query, other.query)
+				&& Objects.equals(analyzer, other.analyzer);
+	}
+
+	@Override
+	protected int doHashCode() {
+		return Objects.hash(fieldName, query, analyzer);
+	}
+
+	@Override
+	public String getWriteableName() {
+		return NAME;
+	}
+}
@@ -0,0 +1,351 @@
+package org.es.ngram.index.query;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.PriorityQueue;
+import org.apache.lucene.util.StringHelper;
+import org.apache.lucene.util.fst.Builder;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
+import org.apache.lucene.util.fst.Util;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.breaker.NoopCircuitBreaker;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.unit.ByteSizeValue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * @author yida
+ * @package org.es.ngram.index.query
+ * @date 2024-06-30 11:20
+ * @description Node wide cache of the weighted prefix FSTs of segments.
+ *
+ * <p>For a field indexed with edge-ngram-completion-analyzer the FST maps every term of a segment to
+ * its document frequency, stored as {@code Integer.MAX_VALUE - docFreq} so the shortest paths below
+ * a prefix are its most frequent completions. The first search of a segment schedules the build of
+ * its FST on the build executor and answers from the terms dictionary, like a prefix query would,
+ * until the FST is in the cache. The cache is bounded by the heap its FSTs use, and every FST is
+ * accounted in the circuit breaker before it is cached; an FST the breaker refuses is dropped and
+ * the segment keeps being answered from its terms. An FST is evicted when its segment core is
+ * closed. Terms never change for a segment core, deletions only leave the weights slightly stale.
+ */
+public class PrefixFstCache {
+	public static final Log log = LogFactory.getLog(PrefixFstCache.class);
+
+	private static final PrefixFstCache instance = new PrefixFstCache();
+
+	/** heap the cached FSTs may use, as bytes or a share of the heap */
+	public static final Setting<ByteSizeValue> CACHE_SIZE_SETTING = Setting.memorySizeSetting("ngram.prefix_fst_cache.size", "2%",
+			Setting.Property.NodeScope);
+	/** the circuit breaker cached FSTs are accounted in, limited by breaker.ngram_prefix_fst.limit */
+	public static final String BREAKER_NAME = "ngram_prefix_fst";
+	public static final String BREAKER_DEFAULT_LIMIT = "5%";
+	/** the thread pool FSTs are built on */
+	public static final String THREAD_POOL_NAME = "ngram_prefix_fst";
+
+	private static final long MAX_WEIGHT = Integer.MAX_VALUE;
+
+	/** the cache size used until the plugin configures it */
+	private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+	private volatile Cache<Key, FST<Long>> fsts;
+	private volatile CircuitBreaker breaker = new NoopCircuitBreaker(CircuitBreaker.ACCOUNTING);
+	private volatile Executor executor = Runnable::run;
+	private volatile long maxBytes;
+	/** keys whose FST is being built */
+	private final Set<Key> building = ConcurrentHashMap.newKeySet();
+	private final Set<IndexReader.CacheKey> listening = ConcurrentHashMap.newKeySet();
+
+	private PrefixFstCache() {
+		this.fsts = newCache(DEFAULT_MAX_BYTES);
+	}
+
+	public static PrefixFstCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Sets the heap bound of the cache, the breaker FSTs are accounted in and the executor they are
+	 * built on, dropping the FSTs cached so far.
+	 */
+	public synchronized void configure(long maxBytes, CircuitBreaker breaker, Executor executor) {
+		// released from the breaker they were accounted in
+		fsts.invalidateAll();
+		this.breaker = Objects.requireNonNull(breaker);
+		this.executor = Objects.requireNonNull(executor);
+		this.fsts = newCache(maxBytes);
+	}
+
+	private Cache<Key, FST<Long>> newCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+		return CacheBuilder.<Key, FST<Long>>builder()
+				.setMaximumWeight(maxBytes)
+				.weigher((key, fst) -> fst.ramBytesUsed())
+				.removalListener(notification -> breaker.addWithoutBreaking(-notification.getValue().ramBytesUsed()))
+				.build();
+	}
+
+	/**
+	 * Returns up to size terms of the field in the segment starting with the prefix, most frequent
+	 * first, from the FST of the segment if it is cached and from its terms dictionary otherwise.
+	 */
+	public List<BytesRef> completions(LeafReader reader, String field, BytesRef prefix, int size) throws IOException {
+		final Terms terms = reader.terms(field);
+		if (null == terms) {
+			return Collections.emptyList();
+		}
+		FST<Long> fst = get(reader, field);
+		if (null != fst) {
+			return topCompletions(fst, prefix, size);
+		}
+		return scanCompletions(terms, prefix, size);
+	}
+
+	/**
+	 * Returns the cached FST of the field in the segment, or null after scheduling its build if it is
+	 * not cached yet.
+	 */
+	private FST<Long> get(LeafReader reader, String field) {
+		IndexReader.CacheHelper cacheHelper = reader.getCoreCacheHelper();
+		if (null == cacheHelper) {
+			return null;
+		}
+		Key key = new Key(cacheHelper.getKey(), field);
+		FST<Long> fst = fsts.get(key);
+		if (null != fst || !building.add(key)) {
+			return fst;
+		}
+		// the segment is held open until the FST is cached and the closed listener registered, so
+		// the listener cannot miss the close of the core. The build reads its terms from the segment,
+		// not from the reader of the search, which may be wrapped with the cancellation checks of
+		// that search and must not be kept reachable once it returns
+		LeafReader segment = FilterLeafReader.unwrap(reader);
+		if (!segment.tryIncRef()) {
+			building.remove(key);
+			return null;
+		}
+		try {
+			executor.execute(() -> {
+				try {
+					build(key, cacheHelper, segment);
+				} finally {
+					building.remove(key);
+					decRef(segment);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			log.debug("Prefix FST build for field:[" + field + "] rejected, answering from the terms dictionary");
+			building.remove(key);
+			decRef(segment);
+		}
+		return null;
+	}
+
+	private void build(Key key, IndexReader.CacheHelper cacheHelper, LeafReader segment) {
+		try {
+			long start = System.nanoTime();
+			Terms terms = segment.terms(key.field);
+			if (null == terms) {
+				return;
+			}
+			FST<Long> fst = build(terms);
+			long bytes = fst.ramBytesUsed();
+			try {
+				breaker.addEstimateBytesAndMaybeBreak(bytes, BREAKER_NAME);
+			} catch (CircuitBreakingException e) {
+				log.warn("Prefix FST for field:[" + key.field + "] of " + bytes + " bytes not cached: " + e.getMessage());
+				return;
+			}
+			fsts.put(key, fst);
+			if (listening.add(key.cacheKey)) {
+				cacheHelper.addClosedListener(this::evict);
+			}
+			log.debug("Built prefix FST for field:[" + key.field + "] with " + terms.size() + " terms in "
+					+ (System.nanoTime() - start) / 1000000 + "ms");
+		} catch (IOException | RuntimeException e) {
+			log.warn("Failed to build prefix FST for field:[" + key.field + "]", e);
+		}
+	}
+
+	private static void decRef(LeafReader segment) {
+		try {
+			segment.decRef();
+		} catch (IOException e) {
+			log.warn("Failed to release segment after prefix FST build", e);
+		}
+	}
+
+	/**
+	 * Returns up to size terms starting with the prefix, most frequent first.
+	 */
+	public static List<BytesRef> topCompletions(FST<Long> fst, BytesRef prefix, int size) throws IOException {
+		if (null == fst || size <= 0) {
+			return Collections.emptyList();
+		}
+		FST.Arc<Long> arc = fst.getFirstArc(new FST.Arc<>());
+		FST.BytesReader bytesReader = fst.getBytesReader();
+		Long output = fst.outputs.getNoOutput();
+		for (int i = 0; i < prefix.length; i++) {
+			if (null == fst.findTargetArc(prefix.bytes[prefix.offset + i] & 0xFF, arc, arc, bytesReader)) {
+				return Collections.emptyList();
+			}
+			output = fst.outputs.add(output, arc.output());
+		}
+		Util.TopResults<Long> results = Util.shortestPaths(fst, arc, output, Comparator.<Long>naturalOrder(), size, true);
+		List<BytesRef> completions = new ArrayList<>(results.topN.size());
+		BytesRefBuilder term = new BytesRefBuilder();
+		for (Util.Result<Long> result : results) {
+			term.copyBytes(prefix);
+			for (int i = 0; i < result.input.length; i++) {
+				term.append((byte) result.input.ints[result.input.offset + i]);
+			}
+			completions.add(term.toBytesRef());
+		}
+		return completions;
+	}
+
+	/**
+	 * Returns up to size terms starting with the prefix, most frequent first, by visiting every term
+	 * of the prefix in the terms dictionary.
+	 */
+	static List<BytesRef> scanCompletions(Terms terms, BytesRef prefix, int size) throws IOException {
+		if (size <= 0) {
+			return Collections.emptyList();
+		}
+		TermsEnum termsEnum = terms.iterator();
+		if (termsEnum.seekCeil(prefix) == TermsEnum.SeekStatus.END) {
+			return Collections.emptyList();
+		}
+		PriorityQueue<Completion> queue = new PriorityQueue<Completion>(size) {
+			@Override
+			protected boolean lessThan(Completion a, Completion b) {
+				// the least frequent, then the greatest term, is dropped first
+				return a.docFreq != b.docFreq ? a.docFreq < b.docFreq : a.term.compareTo(b.term) > 0;
+			}
+		};
+		for (BytesRef term = termsEnum.term(); null != term && StringHelper.startsWith(term, prefix); term = termsEnum.next()) {
+			int docFreq = termsEnum.docFreq();
+			Completion top = queue.top();
+			if (queue.size() < size || docFreq > top.docFreq) {
+				queue.insertWithOverflow(new Completion(BytesRef.deepCopyOf(term), docFreq));
+			}
+		}
+		BytesRef[] completions = new BytesRef[queue.size()];
+		for (int i = completions.length - 1; i >= 0; i--) {
+			completions[i] = queue.pop().term;
+		}
+		List<BytesRef> result = new ArrayList<>(completions.length);
+		Collections.addAll(result, completions);
+		return result;
+	}
+
+	/**
+	 * Number of cached FSTs.
+	 */
+	public int size() {
+		return fsts.count();
+	}
+
+	/**
+	 * Heap held by all cached FSTs, in bytes.
+	 */
+	public long ramBytesUsed() {
+		return fsts.weight();
+	}
+
+	/**
+	 * Heap the cached FSTs may use, in bytes.
+	 */
+	public long maxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Number of FSTs being built.
+	 */
+	public int pendingBuilds() {
+		return building.size();
+	}
+
+	private static FST<Long> build(Terms terms) throws IOException {
+		Builder<Long> builder = new Builder<>(FST.INPUT_TYPE.BYTE1, PositiveIntOutputs.getSingleton());
+		IntsRefBuilder scratch = new IntsRefBuilder();
+		TermsEnum termsEnum = terms.iterator();
+		BytesRef term;
+		while ((term = termsEnum.next()) != null) {
+			builder.add(Util.toIntsRef(term, scratch), MAX_WEIGHT - Math.min(termsEnum.docFreq(), MAX_WEIGHT));
+		}
+		return builder.finish();
+	}
+
+	private void evict(IndexReader.CacheKey cacheKey) {
+		listening.remove(cacheKey);
+		List<Key> keys = new ArrayList<>();
+		for (Key key : fsts.keys()) {
+			if (key.cacheKey == cacheKey) {
+				keys.add(key);
+			}
+		}
+		for (Key key : keys) {
+			fsts.invalidate(key);
+		}
+	}
+
+	private static final class Completion {
+		private final BytesRef term;
+		private final int docFreq;
+
+		Completion(BytesRef term, int docFreq) {
+			this.term = term;
+			this.docFreq = docFreq;
+		}
+	}
+
+	private static final class Key {
+		private final IndexReader.CacheKey cacheKey;
+		private final String field;
+
+		Key(IndexReader.CacheKey cacheKey, String field) {
+			this.cacheKey = cacheKey;
+			this.field = field;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) o;
+			return cacheKey == key.cacheKey && field.equals(key.field);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(cacheKey, field);
+		}
+	}
+}
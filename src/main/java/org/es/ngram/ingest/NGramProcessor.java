@@ -0,0 +1,205 @@
+package org.es.ngram.ingest;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.ingest.AbstractProcessor;
+import org.elasticsearch.ingest.ConfigurationUtils;
+import org.elasticsearch.ingest.IngestDocument;
+import org.elasticsearch.ingest.Processor;
+import org.es.ngram.index.analysis.EdgeNGramAnalyzerProvider;
+import org.es.ngram.index.analysis.NGramAnalyzerProvider;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @author yida
+ * @package org.es.ngram.ingest
+ * @date 2024-07-07 10:30
+ * @description The ngram ingest processor, computes the distinct grams of a field at ingest time.
+ *
+ * <pre>
+ * "ngram": {
+ *     "field": "title",
+ *     "target_field": "title_grams",
+ *     "analyzer": "ngram",
+ *     "settings": {"min_gram": 2, "max_gram": 10},
+ *     "ignore_missing": true
+ * }
+ * </pre>
+ *
+ * <p>The field, a string or an array of strings, runs through ngram-analyzer or
+ * edge-ngram-analyzer built from {@code settings} with the analyzer provider schema, and its
+ * distinct grams are written to {@code target_field} (default field + "_grams") in the order they
+ * first appear, for a keyword field. Processors with the same analyzer and settings share one
+ * analyzer, whose token streams are reused per thread. The factory only holds the analyzers
+ * weakly: processors are dropped without notice when their pipeline is updated or deleted, and
+ * the analyzer goes with the last processor using it. Count, time and failures of every
+ * processor show up in the ingest stats of its pipeline.
+ */
+public final class NGramProcessor extends AbstractProcessor {
+	public static final String TYPE = "ngram";
+
+	private final String field;
+	private final String targetField;
+	private final boolean ignoreMissing;
+	private final Analyzer analyzer;
+
+	NGramProcessor(String tag, String description, String field, String targetField, boolean ignoreMissing, Analyzer analyzer) {
+		super(tag, description);
+		this.field = field;
+		this.targetField = targetField;
+		this.ignoreMissing = ignoreMissing;
+		this.analyzer = analyzer;
+	}
+
+	@Override
+	public IngestDocument execute(IngestDocument ingestDocument) throws Exception {
+		Object value = ingestDocument.getFieldValue(field, Object.class, ignoreMissing);
+		if (null == value) {
+			if (ignoreMissing) {
+				return ingestDocument;
+			}
+			throw new IllegalArgumentException("field [" + field + "] is null, cannot extract grams");
+		}
+		Set<String> grams = new LinkedHashSet<>();
+		if (value instanceof List) {
+			for (Object item : (List<?>) value) {
+				if (null != item) {
+					analyze(item.toString(), grams);
+				}
+			}
+		} else {
+			analyze(value.toString(), grams);
+		}
+		ingestDocument.setFieldValue(targetField, new ArrayList<>(grams));
+		return ingestDocument;
+	}
+
+	private void analyze(String text, Set<String> grams) throws IOException {
+		try (TokenStream tokenStream = analyzer.tokenStream(field, text)) {
+			CharTermAttribute termAtt = tokenStream.addAttribute(CharTermAttribute.class);
+			tokenStream.reset();
+			while (tokenStream.incrementToken()) {
+				grams.add(termAtt.toString());
+			}
+			tokenStream.end();
+		}
+	}
+
+	@Override
+	public String getType() {
+		return TYPE;
+	}
+
+	public String getField() {
+		return field;
+	}
+
+	public String getTargetField() {
+		return targetField;
+	}
+
+	public boolean isIgnoreMissing() {
+		return ignoreMissing;
+	}
+
+	public static final class Factory implements Processor.Factory, Closeable {
+		private final Map<String, AnalyzerRef> analyzers = new HashMap<>();
+		private final ReferenceQueue<Analyzer> collected = new ReferenceQueue<>();
+		private final Environment env;
+
+		/**
+		 * @param env the node environment, dialect_dict_paths are resolved in its config directory
+		 */
+		public Factory(Environment env) {
+			this.env = env;
+		}
+
+		@Override
+		public NGramProcessor create(Map<String, Processor.Factory> registry, String tag, String description,
+									 Map<String, Object> config) throws Exception {
+			String field = ConfigurationUtils.readStringProperty(TYPE, tag, config, "field");
+			String targetField = ConfigurationUtils.readStringProperty(TYPE, tag, config, "target_field", field + "_grams");
+			String analyzerType = ConfigurationUtils.readStringProperty(TYPE, tag, config, "analyzer", "ngram");
+			boolean ignoreMissing = ConfigurationUtils.readBooleanProperty(TYPE, tag, config, "ignore_missing", false);
+			Map<String, Object> settingsMap = ConfigurationUtils.readOptionalMap(TYPE, tag, config, "settings");
+			if (!"ngram".equals(analyzerType) && !"edge".equals(analyzerType)) {
+				throw ConfigurationUtils.newConfigurationException(TYPE, tag, "analyzer", "must be [ngram] or [edge]");
+			}
+			Settings settings = null == settingsMap ? Settings.EMPTY : Settings.builder().loadFromMap(settingsMap).build();
+			if (settings.getAsBoolean("hash_grams", false)) {
+				throw ConfigurationUtils.newConfigurationException(TYPE, tag, "settings", "[hash_grams] is not supported, grams are written as text");
+			}
+			// documents are not query strings, caching their analysis would only cost memory
+			final Settings analyzerSettings = settings.filter(key -> !"search_cache_size".equals(key));
+			Analyzer analyzer;
+			try {
+				analyzer = analyzer(analyzerType + analyzerSettings.toString(), analyzerType, analyzerSettings);
+			} catch (IllegalArgumentException e) {
+				throw ConfigurationUtils.newConfigurationException(TYPE, tag, "settings", e);
+			}
+			return new NGramProcessor(tag, description, field, targetField, ignoreMissing, analyzer);
+		}
+
+		/**
+		 * Returns the analyzer of the key, building it if no processor holds it any more.
+		 */
+		private Analyzer analyzer(String key, String analyzerType, Settings analyzerSettings) {
+			synchronized (analyzers) {
+				expunge();
+				AnalyzerRef ref = analyzers.get(key);
+				Analyzer analyzer = null == ref ? null : ref.get();
+				if (null == analyzer) {
+					analyzer = "ngram".equals(analyzerType)
+							? NGramAnalyzerProvider.buildAnalyzer(analyzerSettings, false, env)
+							: EdgeNGramAnalyzerProvider.buildAnalyzer(analyzerSettings, false, env);
+					analyzers.put(key, new AnalyzerRef(key, analyzer, collected));
+				}
+				return analyzer;
+			}
+		}
+
+		private void expunge() {
+			Reference<? extends Analyzer> reference;
+			while ((reference = collected.poll()) != null) {
+				AnalyzerRef ref = (AnalyzerRef) reference;
+				analyzers.remove(ref.key, ref);
+			}
+		}
+
+		@Override
+		public void close() {
+			synchronized (analyzers) {
+				for (AnalyzerRef ref : analyzers.values()) {
+					Analyzer analyzer = ref.get();
+					if (null != analyzer) {
+						analyzer.close();
+					}
+				}
+				analyzers.clear();
+			}
+		}
+	}
+
+	private static final class AnalyzerRef extends WeakReference<Analyzer> {
+		private final String key;
+
+		AnalyzerRef(String key, Analyzer analyzer, ReferenceQueue<Analyzer> queue) {
+			super(analyzer, queue);
+			this.key = key;
+		}
+	}
+}
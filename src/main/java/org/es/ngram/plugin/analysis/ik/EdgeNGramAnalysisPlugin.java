@@ -1,27 +1,138 @@
 package org.es.ngram.plugin.analysis.ik;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.NoopCircuitBreaker;
+import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.IndexScopedSettings;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.settings.SettingsFilter;
+import org.elasticsearch.common.unit.MemorySizeValue;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.env.NodeEnvironment;
 import org.elasticsearch.index.analysis.AnalyzerProvider;
+import org.elasticsearch.index.analysis.CharFilterFactory;
 import org.elasticsearch.index.analysis.TokenFilterFactory;
+import org.elasticsearch.index.analysis.TokenizerFactory;
 import org.elasticsearch.indices.analysis.AnalysisModule;
+import org.elasticsearch.indices.breaker.BreakerSettings;
+import org.elasticsearch.ingest.Processor;
+import org.elasticsearch.plugins.ActionPlugin;
 import org.elasticsearch.plugins.AnalysisPlugin;
+import org.elasticsearch.plugins.CircuitBreakerPlugin;
+import org.elasticsearch.plugins.IngestPlugin;
 import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.plugins.SearchPlugin;
+import org.elasticsearch.repositories.RepositoriesService;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestHandler;
+import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.threadpool.ExecutorBuilder;
+import org.elasticsearch.threadpool.FixedExecutorBuilder;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.watcher.ResourceWatcherService;
+import org.es.ngram.index.analysis.CharClassTokenFilterFactory;
+import org.es.ngram.index.analysis.DialectTokenFilterFactory;
 import org.es.ngram.index.analysis.EdgeNGramAnalyzerProvider;
+import org.es.ngram.index.analysis.EdgeNGramCompletionAnalyzerProvider;
+import org.es.ngram.index.analysis.EdgeNGramTokenizerFactory;
+import org.es.ngram.index.analysis.HybridScriptTokenizerFactory;
 import org.es.ngram.index.analysis.NGramAnalyzerProvider;
+import org.es.ngram.index.analysis.NGramSearchAnalyzerProvider;
+import org.es.ngram.index.analysis.NGramTokenFilterFactory;
+import org.es.ngram.index.analysis.NormalizingCharFilterFactory;
 import org.es.ngram.index.analysis.STConvertTokenFilterFactory;
 import org.es.ngram.index.analysis.StopwordTokenFilterFactory;
+import org.es.ngram.index.query.NGramPrefixQueryBuilder;
+import org.es.ngram.index.query.NGramSubstringQueryBuilder;
+import org.es.ngram.index.query.PrefixFstCache;
+import org.es.ngram.ingest.NGramProcessor;
+import org.es.ngram.rest.RestNGramEstimateAction;
+import org.es.ngram.rest.RestNGramStatsAction;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
-public class EdgeNGramAnalysisPlugin extends Plugin implements AnalysisPlugin {
+public class EdgeNGramAnalysisPlugin extends Plugin implements AnalysisPlugin, SearchPlugin, IngestPlugin, ActionPlugin,
+        CircuitBreakerPlugin {
     public static String PLUGIN_NAME = "edge-ngram";
 
+    private NGramProcessor.Factory ngramProcessorFactory;
+
+    private CircuitBreaker prefixFstBreaker = new NoopCircuitBreaker(PrefixFstCache.BREAKER_NAME);
+
+    @Override
+    public List<Setting<?>> getSettings() {
+        return Collections.singletonList(PrefixFstCache.CACHE_SIZE_SETTING);
+    }
+
+    @Override
+    public List<ExecutorBuilder<?>> getExecutorBuilders(Settings settings) {
+        return Collections.singletonList(new FixedExecutorBuilder(settings, PrefixFstCache.THREAD_POOL_NAME, 1, 64,
+                "thread_pool." + PrefixFstCache.THREAD_POOL_NAME));
+    }
+
+    @Override
+    public BreakerSettings getCircuitBreaker(Settings settings) {
+        long limit = MemorySizeValue.parseBytesSizeValueOrHeapRatio(PrefixFstCache.BREAKER_DEFAULT_LIMIT,
+                "breaker." + PrefixFstCache.BREAKER_NAME + ".limit").getBytes();
+        return BreakerSettings.updateFromSettings(new BreakerSettings(PrefixFstCache.BREAKER_NAME, limit, 1.0d,
+                CircuitBreaker.Type.MEMORY, CircuitBreaker.Durability.TRANSIENT), settings);
+    }
+
+    @Override
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.prefixFstBreaker = circuitBreaker;
+    }
+
+    @Override
+    public Collection<Object> createComponents(Client client, ClusterService clusterService, ThreadPool threadPool,
+                                               ResourceWatcherService resourceWatcherService, ScriptService scriptService,
+                                               NamedXContentRegistry xContentRegistry, Environment environment,
+                                               NodeEnvironment nodeEnvironment, NamedWriteableRegistry namedWriteableRegistry,
+                                               IndexNameExpressionResolver indexNameExpressionResolver,
+                                               Supplier<RepositoriesService> repositoriesServiceSupplier) {
+        PrefixFstCache.getInstance().configure(PrefixFstCache.CACHE_SIZE_SETTING.get(environment.settings()).getBytes(),
+                prefixFstBreaker, threadPool.executor(PrefixFstCache.THREAD_POOL_NAME));
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Map<String, AnalysisModule.AnalysisProvider<CharFilterFactory>> getCharFilters() {
+        Map<String, AnalysisModule.AnalysisProvider<CharFilterFactory>> extra = new HashMap<>();
+        extra.put("normalize-char-filter", NormalizingCharFilterFactory::getNormalizingCharFilterFactory);
+        return extra;
+    }
+
     @Override
     public Map<String, AnalysisModule.AnalysisProvider<TokenFilterFactory>> getTokenFilters() {
         Map<String, AnalysisModule.AnalysisProvider<TokenFilterFactory>> extra = new HashMap<>();
         extra.put("stopword-filter", StopwordTokenFilterFactory::getStopwordTokenFilterFactory);
         extra.put("tsconvert-filter", STConvertTokenFilterFactory::getSTConvertTokenFilterFactory);
+        extra.put("ngram-filter", NGramTokenFilterFactory::getNGramTokenFilterFactory);
+        extra.put("dialect-filter", DialectTokenFilterFactory::getDialectTokenFilterFactory);
+        extra.put("char-class-filter", CharClassTokenFilterFactory::getCharClassTokenFilterFactory);
+        return extra;
+    }
+
+    @Override
+    public Map<String, AnalysisModule.AnalysisProvider<TokenizerFactory>> getTokenizers() {
+        Map<String, AnalysisModule.AnalysisProvider<TokenizerFactory>> extra = new HashMap<>();
+        extra.put("edge-ngram-tokenizer", EdgeNGramTokenizerFactory::getEdgeNGramTokenizerFactory);
+        extra.put("hybrid-script-tokenizer", HybridScriptTokenizerFactory::getHybridScriptTokenizerFactory);
         return extra;
     }
 
@@ -29,7 +140,37 @@ public class EdgeNGramAnalysisPlugin extends Plugin implements AnalysisPlugin {
     public Map<String, AnalysisModule.AnalysisProvider<AnalyzerProvider<? extends Analyzer>>> getAnalyzers() {
         Map<String, AnalysisModule.AnalysisProvider<AnalyzerProvider<? extends Analyzer>>> extra = new HashMap<>();
         extra.put("edge-ngram-analyzer", EdgeNGramAnalyzerProvider::getEdgeNGramAnalyzerProvider);
+        extra.put("edge-ngram-completion-analyzer", EdgeNGramCompletionAnalyzerProvider::getEdgeNGramCompletionAnalyzerProvider);
         extra.put("ngram-analyzer", NGramAnalyzerProvider::getNGramAnalyzerProvider);
+        extra.put("ngram-search-analyzer", NGramSearchAnalyzerProvider::getNGramSearchAnalyzerProvider);
         return extra;
     }
+
+    @Override
+    public List<QuerySpec<?>> getQueries() {
+        return Arrays.asList(
+                new QuerySpec<>(NGramSubstringQueryBuilder.NAME, NGramSubstringQueryBuilder::new, NGramSubstringQueryBuilder::fromXContent),
+                new QuerySpec<>(NGramPrefixQueryBuilder.NAME, NGramPrefixQueryBuilder::new, NGramPrefixQueryBuilder::fromXContent));
+    }
+
+    @Override
+    public Map<String, Processor.Factory> getProcessors(Processor.Parameters parameters) {
+        ngramProcessorFactory = new NGramProcessor.Factory(parameters.env);
+        return Collections.singletonMap(NGramProcessor.TYPE, ngramProcessorFactory);
+    }
+
+    @Override
+    public List<RestHandler> getRestHandlers(Settings settings, RestController restController, ClusterSettings clusterSettings,
+                                             IndexScopedSettings indexScopedSettings, SettingsFilter settingsFilter,
+                                             IndexNameExpressionResolver indexNameExpressionResolver,
+                                             Supplier<DiscoveryNodes> nodesInCluster) {
+        return Arrays.asList(new RestNGramStatsAction(), new RestNGramEstimateAction());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (null != ngramProcessorFactory) {
+            ngramProcessorFactory.close();
+        }
+    }
 }
@@ -0,0 +1,315 @@
+package org.es.ngram.rest;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.analysis.Analyzer;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.Randomness;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.index.mapper.SeqNoFieldMapper;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.es.ngram.index.analysis.EdgeNGramAnalyzer;
+import org.es.ngram.index.analysis.EdgeNGramAnalyzerProvider;
+import org.es.ngram.index.analysis.NGramAnalyzer;
+import org.es.ngram.index.analysis.NGramAnalyzerProvider;
+import org.es.ngram.stats.AnalyzerStats;
+import org.es.ngram.stats.GramEstimator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @author yida
+ * @package org.es.ngram.rest
+ * @date 2024-07-09 10:30
+ * @description {@code POST /_ngram/estimate}, the grams and index size an analyzer setup produces
+ * for sample documents, to plan a change of min_gram or max_gram.
+ *
+ * <pre>
+ * POST /_ngram/estimate
+ * {
+ *     "analyzer": "ngram",
+ *     "settings": {"min_gram": 2, "max_gram": 10},
+ *     "text": ["first document", ["second", "document"]]
+ * }
+ *
+ * POST /_ngram/estimate
+ * {
+ *     "analyzer": "edge",
+ *     "settings": {"min_gram": 1, "max_gram": 20},
+ *     "index": "products",
+ *     "field": "title",
+ *     "sample_size": 1000
+ * }
+ * </pre>
+ *
+ * <p>A document of {@code text} is a string or an array of strings. With {@code index} a random
+ * sample of that many documents is scrolled through and their {@code field} analyzed, and the
+ * postings are also extrapolated to all documents of the index. Analysis runs on the analyze
+ * thread pool. See {@link GramEstimator} for the estimates.
+ */
+public class RestNGramEstimateAction extends BaseRestHandler {
+	public static final Log log = LogFactory.getLog(RestNGramEstimateAction.class);
+
+	public static final int DEFAULT_SAMPLE_SIZE = 1000;
+	public static final int MAX_SAMPLE_SIZE = 10000;
+	/** documents fetched and analyzed at a time when sampling an index */
+	public static final int SAMPLE_BATCH_SIZE = 500;
+	private static final TimeValue SAMPLE_SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+
+	private static final Set<String> FIELDS = new HashSet<>(Arrays.asList("analyzer", "settings", "text", "index", "field", "sample_size"));
+
+	@Override
+	public String getName() {
+		return "ngram_estimate_action";
+	}
+
+	@Override
+	public List<Route> routes() {
+		return Arrays.asList(
+				new Route(RestRequest.Method.GET, "/_ngram/estimate"),
+				new Route(RestRequest.Method.POST, "/_ngram/estimate"));
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) throws IOException {
+		Map<String, Object> body;
+		try (XContentParser parser = request.contentOrSourceParamParser()) {
+			body = parser.map();
+		}
+		for (String key : body.keySet()) {
+			if (!FIELDS.contains(key)) {
+				throw new IllegalArgumentException("unknown field [" + key + "], expected one of " + FIELDS);
+			}
+		}
+		String analyzerType = XContentMapValues.nodeStringValue(body.get("analyzer"), "ngram");
+		if (!"ngram".equals(analyzerType) && !"edge".equals(analyzerType)) {
+			throw new IllegalArgumentException("[analyzer] must be [ngram] or [edge]");
+		}
+		Object settingsMap = body.get("settings");
+		if (null != settingsMap && !(settingsMap instanceof Map)) {
+			throw new IllegalArgumentException("[settings] must be an object");
+		}
+		Object text = body.get("text");
+		String index = XContentMapValues.nodeStringValue(body.get("index"), null);
+		String field = XContentMapValues.nodeStringValue(body.get("field"), null);
+		int sampleSize = XContentMapValues.nodeIntegerValue(body.get("sample_size"), DEFAULT_SAMPLE_SIZE);
+		if ((null == text) == (null == index)) {
+			throw new IllegalArgumentException("exactly one of [text] and [index] is required");
+		}
+		if (null != index && null == field) {
+			throw new IllegalArgumentException("[field] is required with [index]");
+		}
+		if (sampleSize < 1 || sampleSize > MAX_SAMPLE_SIZE) {
+			throw new IllegalArgumentException("[sample_size] must be between 1 and " + MAX_SAMPLE_SIZE);
+		}
+		Settings settings = null == settingsMap ? Settings.EMPTY
+				: Settings.builder().loadFromMap((Map<String, Object>) settingsMap).build();
+		// samples are documents, not query strings
+		settings = settings.filter(key -> !"search_cache_size".equals(key));
+		// bad settings fail here, before anything is searched; without an Environment
+		// dialect_dict_paths is rejected, so a request can not make the node open files
+		final AnalyzerStats stats = new AnalyzerStats();
+		final Analyzer analyzer = buildAnalyzer(analyzerType, settings, stats);
+
+		if (null != text) {
+			List<Object> documents = text instanceof List ? (List<Object>) text : Collections.singletonList(text);
+			return channel -> client.threadPool().executor(ThreadPool.Names.ANALYZE).execute(new AbstractRunnable() {
+				@Override
+				protected void doRun() throws Exception {
+					try (GramEstimator estimator = new GramEstimator(analyzer, stats)) {
+						for (Object document : documents) {
+							estimator.addDocument(values(document));
+						}
+						channel.sendResponse(new BytesRestResponse(RestStatus.OK, estimate(estimator, null, channel.newBuilder())));
+					}
+				}
+
+				@Override
+				public void onFailure(Exception e) {
+					sendFailure(channel, e);
+				}
+
+				@Override
+				public void onAfter() {
+					analyzer.close();
+				}
+			});
+		}
+		return channel -> new IndexSampler(client, channel, analyzer, stats, index, field, sampleSize).start();
+	}
+
+	private static XContentBuilder estimate(GramEstimator estimator, Long indexDocuments, XContentBuilder builder) throws IOException {
+		builder.startObject();
+		estimator.toXContent(builder, ToXContent.EMPTY_PARAMS);
+		if (null != indexDocuments) {
+			builder.field("index_documents", indexDocuments.longValue());
+			builder.field("extrapolated_postings_bytes", estimator.extrapolatedPostingsBytes(indexDocuments));
+		}
+		return builder.endObject();
+	}
+
+	private static void sendFailure(RestChannel channel, Exception e) {
+		try {
+			channel.sendResponse(new BytesRestResponse(channel, e));
+		} catch (Exception inner) {
+			inner.addSuppressed(e);
+			log.warn("Failed to send the failure of an ngram estimate", inner);
+		}
+	}
+
+	/**
+	 * Scrolls through a random sample of the index in batches of {@link #SAMPLE_BATCH_SIZE} and
+	 * analyzes each batch on the analyze thread pool as it arrives, so neither the whole sample
+	 * nor its analysis is held on a network or search thread.
+	 */
+	private static final class IndexSampler implements ActionListener<SearchResponse> {
+		private final NodeClient client;
+		private final RestChannel channel;
+		private final Analyzer analyzer;
+		private final GramEstimator estimator;
+		private final String index;
+		private final String field;
+		private final int sampleSize;
+		private int sampled;
+		private long indexDocuments;
+		private String scrollId;
+		private boolean closed;
+
+		IndexSampler(NodeClient client, RestChannel channel, Analyzer analyzer, AnalyzerStats stats, String index, String field,
+					 int sampleSize) {
+			this.client = client;
+			this.channel = channel;
+			this.analyzer = analyzer;
+			this.estimator = new GramEstimator(analyzer, stats);
+			this.index = index;
+			this.field = field;
+			this.sampleSize = sampleSize;
+		}
+
+		void start() {
+			// a fixed seed keeps the random order stable across the pages of the scroll
+			SearchRequest searchRequest = new SearchRequest(index).scroll(SAMPLE_SCROLL_KEEP_ALIVE).source(new SearchSourceBuilder()
+					.query(QueryBuilders.functionScoreQuery(ScoreFunctionBuilders.randomFunction()
+							.seed(Randomness.get().nextInt()).setField(SeqNoFieldMapper.NAME)))
+					.size(Math.min(sampleSize, SAMPLE_BATCH_SIZE))
+					.trackTotalHits(true)
+					.fetchSource(field, null));
+			client.search(searchRequest, this);
+		}
+
+		@Override
+		public void onResponse(SearchResponse response) {
+			client.threadPool().executor(ThreadPool.Names.ANALYZE).execute(new AbstractRunnable() {
+				@Override
+				protected void doRun() throws Exception {
+					analyze(response);
+				}
+
+				@Override
+				public void onFailure(Exception e) {
+					IndexSampler.this.onFailure(e);
+				}
+			});
+		}
+
+		private void analyze(SearchResponse response) throws IOException {
+			if (null == scrollId) {
+				indexDocuments = response.getHits().getTotalHits().value;
+			}
+			scrollId = response.getScrollId();
+			SearchHit[] hits = response.getHits().getHits();
+			for (int i = 0; i < hits.length && sampled < sampleSize; i++, sampled++) {
+				estimator.addDocument(values(XContentMapValues.extractValue(field, hits[i].getSourceAsMap())));
+			}
+			if (hits.length > 0 && sampled < sampleSize) {
+				client.searchScroll(new SearchScrollRequest(scrollId).scroll(SAMPLE_SCROLL_KEEP_ALIVE), this);
+				return;
+			}
+			try {
+				channel.sendResponse(new BytesRestResponse(RestStatus.OK, estimate(estimator, indexDocuments, channel.newBuilder())));
+			} finally {
+				close();
+			}
+		}
+
+		@Override
+		public void onFailure(Exception e) {
+			try {
+				sendFailure(channel, e);
+			} finally {
+				close();
+			}
+		}
+
+		private void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			if (null != scrollId) {
+				ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+				clearScrollRequest.addScrollId(scrollId);
+				client.clearScroll(clearScrollRequest, ActionListener.wrap(response -> {},
+						e -> log.warn("Failed to clear the scroll of an ngram estimate", e)));
+				scrollId = null;
+			}
+			estimator.close();
+			analyzer.close();
+		}
+	}
+
+	private static List<String> values(Object document) {
+		if (null == document) {
+			return Collections.emptyList();
+		}
+		if (document instanceof List) {
+			List<String> values = new ArrayList<>();
+			for (Object value : (List<?>) document) {
+				if (null != value) {
+					values.add(value.toString());
+				}
+			}
+			return values;
+		}
+		return Collections.singletonList(document.toString());
+	}
+
+	private static Analyzer buildAnalyzer(String analyzerType, Settings settings, AnalyzerStats stats) {
+		if ("ngram".equals(analyzerType)) {
+			NGramAnalyzer analyzer = NGramAnalyzerProvider.buildAnalyzer(settings, false);
+			analyzer.setAnalyzerStats(stats);
+			return analyzer;
+		}
+		EdgeNGramAnalyzer analyzer = EdgeNGramAnalyzerProvider.buildAnalyzer(settings, false);
+		analyzer.setAnalyzerStats(stats);
+		return analyzer;
+	}
+}
@@ -0,0 +1,71 @@
+package org.es.ngram.rest;
+
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestStatus;
+import org.es.ngram.config.DialectDictRegistry;
+import org.es.ngram.config.StopwordDictRegistry;
+import org.es.ngram.index.query.PrefixFstCache;
+import org.es.ngram.stats.AnalysisStats;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author yida
+ * @package org.es.ngram.rest
+ * @date 2024-07-08 14:00
+ * @description {@code GET /_ngram/stats}, the analysis metrics and cache sizes of the node that
+ * receives the request.
+ *
+ * <p>The stats are node local: ask every node, e.g. through a client per node, to get the
+ * cluster view.
+ */
+public class RestNGramStatsAction extends BaseRestHandler {
+
+	@Override
+	public String getName() {
+		return "ngram_stats_action";
+	}
+
+	@Override
+	public List<Route> routes() {
+		return Collections.singletonList(new Route(RestRequest.Method.GET, "/_ngram/stats"));
+	}
+
+	@Override
+	protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) throws IOException {
+		final String nodeId = client.getLocalNodeId();
+		return channel -> {
+			XContentBuilder builder = channel.newBuilder();
+			builder.startObject();
+			builder.field("node_id", nodeId);
+			AnalysisStats.getInstance().toXContent(builder, ToXContent.EMPTY_PARAMS);
+			cachesToXContent(builder);
+			builder.endObject();
+			channel.sendResponse(new BytesRestResponse(RestStatus.OK, builder));
+		};
+	}
+
+	static void cachesToXContent(XContentBuilder builder) throws IOException {
+		builder.startObject("stopword_registry");
+		builder.field("resident_dictionaries", StopwordDictRegistry.getInstance().residentCount());
+		builder.field("ram_bytes_used", StopwordDictRegistry.getInstance().ramBytesUsed());
+		builder.endObject();
+		builder.startObject("dialect_registry");
+		builder.field("resident_dictionaries", DialectDictRegistry.getInstance().residentCount());
+		builder.field("ram_bytes_used", DialectDictRegistry.getInstance().ramBytesUsed());
+		builder.endObject();
+		builder.startObject("prefix_fst_cache");
+		builder.field("size", PrefixFstCache.getInstance().size());
+		builder.field("ram_bytes_used", PrefixFstCache.getInstance().ramBytesUsed());
+		builder.field("max_bytes", PrefixFstCache.getInstance().maxBytes());
+		builder.field("pending_builds", PrefixFstCache.getInstance().pendingBuilds());
+		builder.endObject();
+	}
+}
@@ -0,0 +1,114 @@
+package org.es.ngram.stats;
+
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author yida
+ * @package org.es.ngram.stats
+ * @date 2024-07-08 10:30
+ * @description Node wide analysis metrics of the plugin, served by {@code GET /_ngram/stats}.
+ *
+ * <p>Counters are registered by the name of the analyzer or token filter in the index settings
+ * and shared by every index that uses that name, so the numbers are per node and per name.
+ * They only grow, until the node restarts.
+ */
+public final class AnalysisStats implements ToXContentFragment {
+	private static final AnalysisStats instance = new AnalysisStats();
+
+	private final ConcurrentMap<String, AnalyzerStats> analyzers = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, StopwordFilterStats> stopwordFilters = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, ConvertStats> convertFilters = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, GramBudgetStats> ngramFilters = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, DictionaryLoads> dictionaries = new ConcurrentHashMap<>();
+
+	public static AnalysisStats getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Counters of the analyzer of the given name.
+	 */
+	public AnalyzerStats analyzer(String name) {
+		return analyzers.computeIfAbsent(name, key -> new AnalyzerStats());
+	}
+
+	/**
+	 * Counters of the stopword filter of the given name.
+	 */
+	public StopwordFilterStats stopwordFilter(String name) {
+		return stopwordFilters.computeIfAbsent(name, key -> new StopwordFilterStats());
+	}
+
+	/**
+	 * Counters of the tsconvert filter of the given name.
+	 */
+	public ConvertStats convertFilter(String name) {
+		return convertFilters.computeIfAbsent(name, key -> new ConvertStats());
+	}
+
+	/**
+	 * Gram budget counters of the ngram filter of the given name.
+	 */
+	public GramBudgetStats ngramFilter(String name) {
+		return ngramFilters.computeIfAbsent(name, key -> new GramBudgetStats());
+	}
+
+	/**
+	 * Records that a dictionary was loaded from disk.
+	 */
+	public void dictionaryLoaded(String dictPath, int words, long nanos) {
+		dictionaries.computeIfAbsent(dictPath, key -> new DictionaryLoads()).add(words, nanos);
+	}
+
+	@Override
+	public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+		fields(builder, params, "analyzers", analyzers);
+		fields(builder, params, "stopword_filters", stopwordFilters);
+		fields(builder, params, "convert_filters", convertFilters);
+		fields(builder, params, "ngram_filters", ngramFilters);
+		fields(builder, params, "dictionaries", dictionaries);
+		return builder;
+	}
+
+	private static void fields(XContentBuilder builder, Params params, String name,
+							   Map<String, ? extends ToXContentFragment> stats) throws IOException {
+		builder.startObject(name);
+		for (Map.Entry<String, ? extends ToXContentFragment> entry : new TreeMap<>(stats).entrySet()) {
+			builder.startObject(entry.getKey());
+			entry.getValue().toXContent(builder, params);
+			builder.endObject();
+		}
+		builder.endObject();
+	}
+
+	private static final class DictionaryLoads implements ToXContentFragment {
+		private final LongAdder loads = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		private volatile int words;
+		private volatile long lastNanos;
+
+		void add(int words, long nanos) {
+			this.loads.increment();
+			this.nanos.add(nanos);
+			this.words = words;
+			this.lastNanos = nanos;
+		}
+
+		@Override
+		public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+			builder.field("loads", loads.sum());
+			builder.field("words", words);
+			builder.field("load_time_in_nanos", nanos.sum());
+			builder.field("last_load_time_in_nanos", lastNanos);
+			return builder;
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package org.es.ngram.stats;
+
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author yida
+ * @package org.es.ngram.stats
+ * @date 2024-07-08 10:15
+ * @description Counters of an analyzer, summed over every index using an analyzer of that name.
+ *
+ * <p>Filters count per document and add their totals once in end(), so a gram costs no more than
+ * a local increment. Grams per token are kept in a histogram with power of two buckets: 1, 2-3,
+ * 4-7, ... and {@value #MAX_BUCKET_START} and more. Inputs replayed from a search analysis cache
+ * are not analyzed and not counted here, they show up as hits of that cache.
+ */
+public final class AnalyzerStats implements ToXContentFragment {
+	public static final int BUCKETS = 11;
+	public static final int MAX_BUCKET_START = 1 << (BUCKETS - 1);
+
+	private final LongAdder documents = new LongAdder();
+	private final LongAdder inputChars = new LongAdder();
+	private final LongAdder tokens = new LongAdder();
+	private final LongAdder grams = new LongAdder();
+	private final LongAdder[] gramsPerToken = new LongAdder[BUCKETS];
+	private final ConvertStats convert = new ConvertStats();
+	private final SearchCacheStats searchCache = new SearchCacheStats();
+	private final GramBudgetStats gramBudget = new GramBudgetStats();
+
+	public AnalyzerStats() {
+		for (int i = 0; i < BUCKETS; i++) {
+			gramsPerToken[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Returns the histogram bucket of a token with the given number of grams, which must be
+	 * greater than zero.
+	 */
+	public static int bucket(int gramCount) {
+		return Math.min(31 - Integer.numberOfLeadingZeros(gramCount), BUCKETS - 1);
+	}
+
+	/**
+	 * Adds the counts of one document.
+	 *
+	 * @param inputChars chars read from the input
+	 * @param tokens tokens, that is positions, emitted
+	 * @param grams terms emitted
+	 * @param histogram tokens per bucket of {@link #bucket(int)}
+	 */
+	public void add(long inputChars, long tokens, long grams, long[] histogram) {
+		this.documents.increment();
+		this.inputChars.add(inputChars);
+		this.tokens.add(tokens);
+		this.grams.add(grams);
+		for (int i = 0; i < BUCKETS; i++) {
+			if (histogram[i] != 0) {
+				gramsPerToken[i].add(histogram[i]);
+			}
+		}
+	}
+
+	/**
+	 * Counters of the conversion step of the analyzer.
+	 */
+	public ConvertStats convert() {
+		return convert;
+	}
+
+	/**
+	 * Counters of the search analysis cache of the analyzer.
+	 */
+	public SearchCacheStats searchCache() {
+		return searchCache;
+	}
+
+	/**
+	 * Counters of the gram budget of the analyzer.
+	 */
+	public GramBudgetStats gramBudget() {
+		return gramBudget;
+	}
+
+	public long documents() {
+		return documents.sum();
+	}
+
+	public long inputChars() {
+		return inputChars.sum();
+	}
+
+	public long tokens() {
+		return tokens.sum();
+	}
+
+	public long grams() {
+		return grams.sum();
+	}
+
+	public long gramsPerToken(int bucket) {
+		return gramsPerToken[bucket].sum();
+	}
+
+	@Override
+	public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+		builder.field("documents", documents());
+		builder.field("input_chars", inputChars());
+		builder.field("tokens", tokens());
+		builder.field("grams", grams());
+		builder.startObject("grams_per_token");
+		for (int i = 0; i < BUCKETS; i++) {
+			int from = 1 << i;
+			String label = i == BUCKETS - 1 ? from + "+" : i == 0 ? "1" : from + "-" + ((from << 1) - 1);
+			builder.field(label, gramsPerToken(i));
+		}
+		builder.endObject();
+		builder.startObject("st_convert");
+		convert.toXContent(builder, params);
+		builder.endObject();
+		builder.startObject("search_cache");
+		searchCache.toXContent(builder, params);
+		builder.endObject();
+		builder.startObject("gram_budget");
+		gramBudget.toXContent(builder, params);
+		builder.endObject();
+		return builder;
+	}
+}
@@ -0,0 +1,52 @@
+package org.es.ngram.stats;
+
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author yida
+ * @package org.es.ngram.stats
+ * @date 2024-07-08 10:05
+ * @description Counters of the traditional/simplified conversion of a chain.
+ */
+public final class ConvertStats implements ToXContentFragment {
+	private final LongAdder terms = new LongAdder();
+	private final LongAdder converted = new LongAdder();
+	private final LongAdder nanos = new LongAdder();
+
+	/**
+	 * Adds the counts of one document.
+	 *
+	 * @param terms terms seen
+	 * @param converted terms that went through the converter
+	 * @param nanos time spent converting them
+	 */
+	public void add(long terms, long converted, long nanos) {
+		this.terms.add(terms);
+		this.converted.add(converted);
+		this.nanos.add(nanos);
+	}
+
+	public long terms() {
+		return terms.sum();
+	}
+
+	public long converted() {
+		return converted.sum();
+	}
+
+	public long nanos() {
+		return nanos.sum();
+	}
+
+	@Override
+	public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+		builder.field("terms", terms());
+		builder.field("converted", converted());
+		builder.field("convert_time_in_nanos", nanos());
+		return builder;
+	}
+}
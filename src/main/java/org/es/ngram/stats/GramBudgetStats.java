@@ -0,0 +1,61 @@
+package org.es.ngram.stats;
+
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author yida
+ * @package org.es.ngram.stats
+ * @date 2024-07-08 10:25
+ * @description Counters of the gram budgets of an analyzer or ngram filter, summed over every
+ * index using one of that name.
+ */
+public final class GramBudgetStats implements ToXContentFragment {
+	private final LongAdder tokenLimitHits = new LongAdder();
+	private final LongAdder documentLimitHits = new LongAdder();
+	private final LongAdder adaptiveHits = new LongAdder();
+
+	public void tokenLimitHit() {
+		tokenLimitHits.increment();
+	}
+
+	public void documentLimitHit() {
+		documentLimitHits.increment();
+	}
+
+	public void adaptiveHit() {
+		adaptiveHits.increment();
+	}
+
+	/**
+	 * Tokens whose grams were reduced by max_grams_per_token.
+	 */
+	public long tokenLimitHits() {
+		return tokenLimitHits.sum();
+	}
+
+	/**
+	 * Documents that ran out of their max_grams_per_document budget.
+	 */
+	public long documentLimitHits() {
+		return documentLimitHits.sum();
+	}
+
+	/**
+	 * Tokens that got a lower max gram length from adaptive_max_gram.
+	 */
+	public long adaptiveHits() {
+		return adaptiveHits.sum();
+	}
+
+	@Override
+	public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+		builder.field("token_limit_hits", tokenLimitHits());
+		builder.field("document_limit_hits", documentLimitHits());
+		builder.field("adaptive_hits", adaptiveHits());
+		return builder;
+	}
+}
@@ -0,0 +1,153 @@
+package org.es.ngram.stats;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.elasticsearch.common.hash.MurmurHash3;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.search.aggregations.metrics.HyperLogLogPlusPlus;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * @author yida
+ * @package org.es.ngram.stats
+ * @date 2024-07-09 09:40
+ * @description Estimates the index size a gram analyzer produces for a sample of documents.
+ *
+ * <p>Documents are analyzed one at a time and their grams are not kept: a per document hash of
+ * the terms gives the (document, term) pairs, which make up the doc and freq postings, and the
+ * terms new to a document are fed to a HyperLogLog++ sketch for the number of distinct terms.
+ * Memory is the sketch, about {@code 2^precision} bytes, plus the terms of the largest document.
+ * Counts and the grams-per-token histogram come from the {@link AnalyzerStats} of the analyzer,
+ * where every value of a document counts as a document.
+ *
+ * <p>Sizes assume postings with positions and no offsets: per (document, term) pair
+ * {@value #DOC_FREQ_BYTES} bytes of doc delta and freq, per gram {@value #POSITION_BYTES} byte of
+ * position delta, per distinct term its bytes plus {@value #TERM_METADATA_BYTES} bytes of term
+ * metadata. Prefix sharing in the terms dictionary is ignored, so terms are overestimated.
+ */
+public final class GramEstimator implements Closeable, ToXContentFragment {
+	public static final int DEFAULT_PRECISION = 14;
+	public static final double DOC_FREQ_BYTES = 2d;
+	public static final double POSITION_BYTES = 1d;
+	public static final double TERM_METADATA_BYTES = 4d;
+
+	private static final String FIELD = "_estimate";
+
+	private final Analyzer analyzer;
+	private final AnalyzerStats stats;
+	private final HyperLogLogPlusPlus distinctTerms;
+	private final BytesRefHash documentTerms = new BytesRefHash();
+	private final MurmurHash3.Hash128 hash = new MurmurHash3.Hash128();
+
+	private long documents;
+	private long termBytes;
+	private long documentTermPairs;
+
+	/**
+	 * @param analyzer the analyzer, counting into stats
+	 * @param stats fresh stats set on the analyzer
+	 */
+	public GramEstimator(Analyzer analyzer, AnalyzerStats stats) {
+		this.analyzer = analyzer;
+		this.stats = stats;
+		this.distinctTerms = new HyperLogLogPlusPlus(DEFAULT_PRECISION, BigArrays.NON_RECYCLING_INSTANCE, 1);
+	}
+
+	/**
+	 * Analyzes the values of one document.
+	 */
+	public void addDocument(Iterable<String> values) throws IOException {
+		documentTerms.clear();
+		documentTerms.reinit();
+		for (String value : values) {
+			analyze(value);
+		}
+		documentTermPairs += documentTerms.size();
+		documents++;
+	}
+
+	private void analyze(String text) throws IOException {
+		try (TokenStream tokenStream = analyzer.tokenStream(FIELD, text)) {
+			TermToBytesRefAttribute termAtt = tokenStream.addAttribute(TermToBytesRefAttribute.class);
+			tokenStream.reset();
+			while (tokenStream.incrementToken()) {
+				BytesRef term = termAtt.getBytesRef();
+				termBytes += term.length;
+				if (documentTerms.add(term) >= 0) {
+					MurmurHash3.hash128(term.bytes, term.offset, term.length, 0, hash);
+					distinctTerms.collect(0, hash.h1);
+				}
+			}
+			tokenStream.end();
+		}
+	}
+
+	public long documents() {
+		return documents;
+	}
+
+	public long distinctTerms() {
+		return distinctTerms.cardinality(0);
+	}
+
+	public long termBytes() {
+		return termBytes;
+	}
+
+	public long documentTermPairs() {
+		return documentTermPairs;
+	}
+
+	/**
+	 * Estimated bytes of the terms dictionary.
+	 */
+	public long estimatedTermsBytes() {
+		long grams = stats.grams();
+		double averageTermBytes = grams == 0 ? 0d : (double) termBytes / grams;
+		return Math.round(distinctTerms() * (averageTermBytes + TERM_METADATA_BYTES));
+	}
+
+	/**
+	 * Estimated bytes of the doc, freq and position postings.
+	 */
+	public long estimatedPostingsBytes() {
+		return Math.round(documentTermPairs * DOC_FREQ_BYTES + stats.grams() * POSITION_BYTES);
+	}
+
+	/**
+	 * Estimated bytes of the postings of the given number of documents like the sample. Postings
+	 * grow linearly with the documents, distinct terms do not, so the terms are not extrapolated.
+	 */
+	public long extrapolatedPostingsBytes(long documents) {
+		return this.documents == 0 ? 0L : Math.round((double) estimatedPostingsBytes() / this.documents * documents);
+	}
+
+	@Override
+	public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+		long grams = stats.grams();
+		builder.field("documents", documents);
+		builder.startObject("analysis");
+		stats.toXContent(builder, params);
+		builder.endObject();
+		builder.field("distinct_grams", distinctTerms());
+		builder.field("document_gram_pairs", documentTermPairs);
+		builder.field("gram_bytes", termBytes);
+		builder.field("average_gram_bytes", grams == 0 ? 0d : (double) termBytes / grams);
+		builder.field("estimated_terms_bytes", estimatedTermsBytes());
+		builder.field("estimated_postings_bytes", estimatedPostingsBytes());
+		builder.field("estimated_total_bytes", estimatedTermsBytes() + estimatedPostingsBytes());
+		return builder;
+	}
+
+	@Override
+	public void close() {
+		distinctTerms.close();
+	}
+}
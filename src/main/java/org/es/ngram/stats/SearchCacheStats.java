@@ -0,0 +1,75 @@
+package org.es.ngram.stats;
+
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author yida
+ * @package org.es.ngram.stats
+ * @date 2024-07-08 10:20
+ * @description Counters of the search analysis caches of an analyzer, summed over every index
+ * using an analyzer of that name.
+ */
+public final class SearchCacheStats implements ToXContentFragment {
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder bypassed = new LongAdder();
+
+	public void hit() {
+		hits.increment();
+	}
+
+	public void miss() {
+		misses.increment();
+	}
+
+	public void evicted() {
+		evictions.increment();
+	}
+
+	public void bypassed() {
+		bypassed.increment();
+	}
+
+	public long hits() {
+		return hits.sum();
+	}
+
+	public long misses() {
+		return misses.sum();
+	}
+
+	public long evictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Inputs analyzed without the cache because they were too long.
+	 */
+	public long bypassedInputs() {
+		return bypassed.sum();
+	}
+
+	/**
+	 * Hits over lookups, 0 before the first lookup.
+	 */
+	public double hitRate() {
+		long hits = hits();
+		long lookups = hits + misses();
+		return lookups == 0 ? 0d : (double) hits / lookups;
+	}
+
+	@Override
+	public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+		builder.field("hits", hits());
+		builder.field("misses", misses());
+		builder.field("evictions", evictions());
+		builder.field("bypassed", bypassedInputs());
+		builder.field("hit_rate", hitRate());
+		return builder;
+	}
+}
@@ -0,0 +1,50 @@
+package org.es.ngram.stats;
+
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author yida
+ * @package org.es.ngram.stats
+ * @date 2024-07-08 10:10
+ * @description Counters of a stopword filter.
+ */
+public final class StopwordFilterStats implements ToXContentFragment {
+	private final LongAdder tokens = new LongAdder();
+	private final LongAdder stopwords = new LongAdder();
+
+	/**
+	 * Adds the counts of one document.
+	 */
+	public void add(long tokens, long stopwords) {
+		this.tokens.add(tokens);
+		this.stopwords.add(stopwords);
+	}
+
+	public long tokens() {
+		return tokens.sum();
+	}
+
+	public long stopwords() {
+		return stopwords.sum();
+	}
+
+	/**
+	 * Stopwords over tokens checked, 0 before the first token.
+	 */
+	public double hitRatio() {
+		long tokens = tokens();
+		return tokens == 0 ? 0d : (double) stopwords() / tokens;
+	}
+
+	@Override
+	public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+		builder.field("tokens", tokens());
+		builder.field("stopwords", stopwords());
+		builder.field("hit_ratio", hitRatio());
+		return builder;
+	}
+}
@@ -0,0 +1,282 @@
+package org.es.ngram.tools;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.env.Environment;
+import org.es.ngram.index.analysis.EdgeNGramAnalyzerProvider;
+import org.es.ngram.index.analysis.NGramAnalyzerProvider;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author yida
+ * @package org.es.ngram.tools
+ * @date 2024-07-06 09:50
+ * @description Pre-analyzes a newline delimited JSON corpus into gram arrays for keyword fields.
+ *
+ * <p>Each line is a JSON document. Every {@code --field} (a dotted path) is analyzed with
+ * ngram-analyzer or edge-ngram-analyzer built from the same settings as the index analyzer, and its
+ * grams are added to the document as a string array under the field name plus {@code --suffix}.
+ * Lines are read in batches that are analyzed on a work stealing pool while the output is written
+ * in input order, with at most two batches per thread in flight, so memory stays flat whatever the
+ * corpus size. Every thread reuses the token streams of the shared analyzer. Progress and the final
+ * docs/sec go to stderr, a line that is not a JSON object is written unchanged and counted.
+ *
+ * <pre>
+ * java -cp ... org.es.ngram.tools.BulkPreAnalyzer --field title [--field body.text] [--analyzer ngram|edge]
+ *     [--settings analyzer.json] [--set min_gram=2] [--input corpus.ndjson] [--output out.ndjson]
+ *     [--suffix _grams] [--threads n] [--batch 1000] [--config-dir dir]
+ * </pre>
+ *
+ * <p>{@code dialect_dict_paths} are resolved in {@code --config-dir}, the current directory by
+ * default, and must be inside it, like in the config directory of a node.
+ */
+public class BulkPreAnalyzer {
+	private static final long REPORT_INTERVAL_NANOS = 10_000_000_000L;
+
+	private final Analyzer analyzer;
+	private final List<String> fields;
+	private final String suffix;
+
+	private final AtomicLong failures = new AtomicLong();
+
+	public BulkPreAnalyzer(Analyzer analyzer, List<String> fields, String suffix) {
+		this.analyzer = analyzer;
+		this.fields = fields;
+		this.suffix = suffix;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String input = "-";
+		String output = "-";
+		String analyzerType = "ngram";
+		String suffix = "_grams";
+		int threads = Runtime.getRuntime().availableProcessors();
+		int batchSize = 1000;
+		Path configDir = Paths.get("");
+		List<String> fields = new ArrayList<>();
+		Settings.Builder settings = Settings.builder();
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (i + 1 == args.length) {
+				usage("missing value of " + arg);
+			}
+			String value = args[++i];
+			switch (arg) {
+				case "--input":
+					input = value;
+					break;
+				case "--output":
+					output = value;
+					break;
+				case "--field":
+					fields.add(value);
+					break;
+				case "--analyzer":
+					analyzerType = value;
+					break;
+				case "--settings":
+					settings.loadFromPath(Paths.get(value));
+					break;
+				case "--set":
+					int eq = value.indexOf('=');
+					if (eq <= 0) {
+						usage("--set expects key=value, got " + value);
+					}
+					settings.put(value.substring(0, eq), value.substring(eq + 1));
+					break;
+				case "--suffix":
+					suffix = value;
+					break;
+				case "--threads":
+					threads = Integer.parseInt(value);
+					break;
+				case "--batch":
+					batchSize = Integer.parseInt(value);
+					break;
+				case "--config-dir":
+					configDir = Paths.get(value);
+					break;
+				default:
+					usage("unknown option " + arg);
+			}
+		}
+		if (fields.isEmpty()) {
+			usage("at least one --field is required");
+		}
+		if (threads < 1 || batchSize < 1) {
+			usage("--threads and --batch must be greater than zero");
+		}
+		Settings analyzerSettings = settings.build();
+		if (analyzerSettings.getAsBoolean("hash_grams", false)) {
+			usage("hash_grams can not be used, grams are written as text");
+		}
+		// documents are not query strings, caching their analysis would only cost memory
+		analyzerSettings = analyzerSettings.filter(key -> !"search_cache_size".equals(key));
+		configDir = configDir.toAbsolutePath();
+		Environment env = new Environment(Settings.builder().put(Environment.PATH_HOME_SETTING.getKey(), configDir.toString()).build(), configDir);
+		Analyzer analyzer;
+		if ("ngram".equals(analyzerType)) {
+			analyzer = NGramAnalyzerProvider.buildAnalyzer(analyzerSettings, false, env);
+		} else if ("edge".equals(analyzerType)) {
+			analyzer = EdgeNGramAnalyzerProvider.buildAnalyzer(analyzerSettings, false, env);
+		} else {
+			usage("--analyzer must be ngram or edge");
+			return;
+		}
+
+		try (BufferedReader reader = "-".equals(input)
+				? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+				: Files.newBufferedReader(Paths.get(input), StandardCharsets.UTF_8);
+			 BufferedWriter writer = "-".equals(output)
+					 ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+					 : Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8)) {
+			new BulkPreAnalyzer(analyzer, fields, suffix).run(reader, writer, threads, batchSize);
+		} finally {
+			analyzer.close();
+		}
+	}
+
+	/**
+	 * Analyzes every line of the reader and writes the documents with their grams, in order.
+	 */
+	public void run(BufferedReader reader, BufferedWriter writer, int threads, int batchSize) throws IOException, InterruptedException {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		ArrayDeque<Future<List<String>>> inFlight = new ArrayDeque<>();
+		final int maxInFlight = threads * 2;
+		long start = System.nanoTime();
+		long lastReport = start;
+		long docs = 0L;
+		try {
+			List<String> batch = new ArrayList<>(batchSize);
+			String line;
+			while (true) {
+				line = reader.readLine();
+				if (null != line && !line.isEmpty()) {
+					batch.add(line);
+				}
+				if (batch.size() == batchSize || (null == line && !batch.isEmpty())) {
+					final List<String> lines = batch;
+					inFlight.add(pool.submit(() -> analyzeBatch(lines)));
+					batch = new ArrayList<>(batchSize);
+				}
+				while (!inFlight.isEmpty() && (inFlight.size() >= maxInFlight || null == line)) {
+					docs += write(inFlight.poll(), writer);
+				}
+				long now = System.nanoTime();
+				if (now - lastReport >= REPORT_INTERVAL_NANOS) {
+					report(docs, now - start, false);
+					lastReport = now;
+				}
+				if (null == line) {
+					break;
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		writer.flush();
+		report(docs, System.nanoTime() - start, true);
+	}
+
+	private long write(Future<List<String>> future, BufferedWriter writer) throws IOException, InterruptedException {
+		List<String> lines;
+		try {
+			lines = future.get();
+		} catch (ExecutionException e) {
+			throw new IOException("Analyzing a batch failed", e.getCause());
+		}
+		for (String line : lines) {
+			writer.write(line);
+			writer.write('\n');
+		}
+		return lines.size();
+	}
+
+	private List<String> analyzeBatch(List<String> lines) {
+		List<String> out = new ArrayList<>(lines.size());
+		for (String line : lines) {
+			try {
+				out.add(analyzeDocument(line));
+			} catch (Exception e) {
+				failures.incrementAndGet();
+				out.add(line);
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Adds the grams of every configured field to the JSON document.
+	 */
+	public String analyzeDocument(String json) throws IOException {
+		Map<String, Object> document = XContentHelper.convertToMap(JsonXContent.jsonXContent, json, true);
+		for (String field : fields) {
+			Object value = XContentMapValues.extractValue(field, document);
+			if (null == value) {
+				continue;
+			}
+			List<String> grams = new ArrayList<>();
+			if (value instanceof List) {
+				for (Object item : (List<?>) value) {
+					if (null != item) {
+						analyze(field, item.toString(), grams);
+					}
+				}
+			} else {
+				analyze(field, value.toString(), grams);
+			}
+			document.put(field + suffix, grams);
+		}
+		XContentBuilder builder = JsonXContent.contentBuilder();
+		builder.map(document);
+		return Strings.toString(builder);
+	}
+
+	private void analyze(String field, String text, List<String> grams) throws IOException {
+		try (TokenStream tokenStream = analyzer.tokenStream(field, text)) {
+			CharTermAttribute termAtt = tokenStream.addAttribute(CharTermAttribute.class);
+			tokenStream.reset();
+			while (tokenStream.incrementToken()) {
+				grams.add(termAtt.toString());
+			}
+			tokenStream.end();
+		}
+	}
+
+	private void report(long docs, long elapsedNanos, boolean done) {
+		double seconds = elapsedNanos / 1e9;
+		System.err.println((done ? "done: " : "progress: ") + docs + " docs in " + String.format("%.1f", seconds) + "s, "
+				+ String.format("%.0f", seconds > 0 ? docs / seconds : 0d) + " docs/sec, " + failures.get() + " failed");
+	}
+
+	private static void usage(String message) {
+		System.err.println(message);
+		System.err.println("Usage: BulkPreAnalyzer --field <path> [--field <path>] [--analyzer ngram|edge] [--settings <file>]"
+				+ " [--set key=value] [--input <file>|-] [--output <file>|-] [--suffix _grams] [--threads n] [--batch n] [--config-dir <dir>]");
+		System.exit(1);
+	}
+}
@@ -0,0 +1,47 @@
+package org.es.ngram.tools;
+
+import org.es.ngram.index.analysis.STConverter;
+import org.es.ngram.utils.DoubleArrayTrie;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * @author yida
+ * @package org.es.ngram.tools
+ * @date 2024-07-14 09:30
+ * @description Compiles t2s.properties into the trie file that {@link STConverter} maps at runtime.
+ *
+ * <p>Runs in the prepare-package phase of the build, which ships the file next to the plugin jar,
+ * and reads the mapped file back to check its tries hold the same arrays as the ones it was
+ * written from, so they convert alike.
+ *
+ * <pre>
+ * java -cp ... org.es.ngram.tools.ConvertDictCompiler target/t2s.dat
+ * </pre>
+ */
+public class ConvertDictCompiler {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Usage: ConvertDictCompiler <output file>");
+			System.exit(1);
+		}
+		Path output = Paths.get(args[0]);
+		if (null != output.getParent()) {
+			Files.createDirectories(output.getParent());
+		}
+		List<DoubleArrayTrie> tries = STConverter.compileTries();
+		DoubleArrayTrie.write(tries, output);
+		List<DoubleArrayTrie> mapped = DoubleArrayTrie.map(output);
+		for (int i = 0; i < tries.size(); i++) {
+			if (!mapped.get(i).sameContent(tries.get(i))) {
+				throw new IOException("[" + output + "] does not read back as written");
+			}
+		}
+		System.out.println("wrote " + tries.get(0).size() + " conversions to " + output + " (" + Files.size(output) + " bytes)");
+	}
+}
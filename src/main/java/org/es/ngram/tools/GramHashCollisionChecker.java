@@ -0,0 +1,89 @@
+package org.es.ngram.tools;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
+import org.apache.lucene.util.BytesRef;
+import org.es.ngram.index.analysis.EdgeNGramAnalyzer;
+import org.es.ngram.index.analysis.HashedTermAttributeImpl;
+import org.es.ngram.index.analysis.NGramAnalyzer;
+import org.es.ngram.index.analysis.STConvertType;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @author yida
+ * @package org.es.ngram.tools
+ * @date 2024-07-02 11:05
+ * @description Measures the hash collisions of hash_grams over a sample corpus.
+ *
+ * <p>Every line of the corpus is analyzed with the text grams of ngram-analyzer (or
+ * edge-ngram-analyzer), each distinct gram is hashed the way a hashed chain indexes it and two
+ * distinct grams sharing a hash are reported as a collision, next to the count expected for a random
+ * hash of that width.
+ *
+ * <pre>
+ * java -cp ... org.es.ngram.tools.GramHashCollisionChecker corpus.txt [hash_width] [min_gram] [max_gram] [ngram|edge]
+ * </pre>
+ */
+public class GramHashCollisionChecker {
+	private static final int MAX_REPORTED = 20;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: GramHashCollisionChecker <corpus> [hash_width] [min_gram] [max_gram] [ngram|edge]");
+			System.exit(1);
+		}
+		int hashWidth = args.length > 1 ? Integer.parseInt(args[1]) : HashedTermAttributeImpl.DEFAULT_HASH_WIDTH;
+		int minGram = args.length > 2 ? Integer.parseInt(args[2]) : NGramAnalyzer.DEFAULT_MIN_GRAM_SIZE;
+		int maxGram = args.length > 3 ? Integer.parseInt(args[3]) : NGramAnalyzer.DEFAULT_MAX_GRAM_SIZE;
+		boolean edge = args.length > 4 && "edge".equals(args[4]);
+		HashedTermAttributeImpl.checkWidth(hashWidth);
+
+		Map<BytesRef, String> grams = new HashMap<>();
+		long lines = 0L;
+		long gramCount = 0L;
+		Set<String> collided = new HashSet<>();
+		try (Analyzer analyzer = edge ? new EdgeNGramAnalyzer(minGram, maxGram, false, STConvertType.TRADITIONAL_2_SIMPLE)
+				: new NGramAnalyzer(minGram, maxGram, false, STConvertType.TRADITIONAL_2_SIMPLE);
+			 BufferedReader reader = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines++;
+				try (TokenStream tokenStream = analyzer.tokenStream("", line)) {
+					CharTermAttribute termAtt = tokenStream.addAttribute(CharTermAttribute.class);
+					TermToBytesRefAttribute bytesAtt = tokenStream.addAttribute(TermToBytesRefAttribute.class);
+					tokenStream.reset();
+					while (tokenStream.incrementToken()) {
+						gramCount++;
+						BytesRef hash = HashedTermAttributeImpl.hash(bytesAtt.getBytesRef(), hashWidth);
+						String gram = termAtt.toString();
+						String previous = grams.putIfAbsent(hash, gram);
+						if (null != previous && !previous.equals(gram) && collided.add(gram) && collided.size() <= MAX_REPORTED) {
+							System.out.println("collision: [" + previous + "] [" + gram + "] => " + hash);
+						}
+					}
+					tokenStream.end();
+				}
+			}
+		}
+		long distinct = grams.size() + collided.size();
+		// birthday bound: n^2 / 2^(bits + 1)
+		double expected = (double) distinct * distinct / Math.pow(2, hashWidth * 8 + 1);
+		System.out.println("lines: " + lines);
+		System.out.println("grams: " + gramCount);
+		System.out.println("distinct grams: " + distinct);
+		System.out.println("hash width: " + hashWidth + " bytes");
+		System.out.println("colliding grams: " + collided.size());
+		System.out.println("expected collisions: " + String.format("%.6f", expected));
+	}
+}
@@ -0,0 +1,230 @@
+package org.es.ngram.utils;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * @author yida
+ * @package org.es.ngram.utils
+ * @date 2024-07-11 09:30
+ * @description Immutable set of code points compiled from ranges and Unicode scripts, for per char
+ * filtering without regular expressions.
+ *
+ * <p>BMP code points are looked up in a two level bitmap: the high byte of the char picks a block of
+ * 256 bits and the low byte a bit in it. Identical blocks are stored once, so the all-clear and
+ * all-set blocks of large ranges such as the CJK ideographs cost nothing, and a table usually fits
+ * in a few hundred bytes. Supplementary code points are looked up by binary search over the sorted,
+ * merged ranges above the BMP. A spec is a single char, a range like {@code a-z}, a hex range like
+ * {@code U+4E00-U+9FA5}, or a script like {@code script:han}.
+ */
+public final class CharClassTable {
+	/** the chars the analyzers have always meant to keep: ASCII letters and digits and CJK ideographs */
+	public static final List<String> DEFAULT_SPECS = Collections.unmodifiableList(Arrays.asList("a-z", "A-Z", "0-9", "U+4E00-U+9FA5"));
+
+	private static final String SCRIPT_PREFIX = "script:";
+	private static final int BMP_SIZE = 0x10000;
+	/** longs per block of 256 chars */
+	private static final int BLOCK_LONGS = 4;
+
+	/** offset in blocks of the block of each high byte */
+	private final char[] blockIndex;
+	private final long[] blocks;
+	/** start and end (inclusive) of each supplementary range, sorted and merged */
+	private final int[] supplementary;
+
+	private CharClassTable(char[] blockIndex, long[] blocks, int[] supplementary) {
+		this.blockIndex = blockIndex;
+		this.blocks = blocks;
+		this.supplementary = supplementary;
+	}
+
+	/**
+	 * Returns true if the code point is in the set.
+	 */
+	public boolean contains(int codePoint) {
+		if (codePoint < BMP_SIZE) {
+			return (blocks[blockIndex[codePoint >>> 8] + ((codePoint >>> 6) & 3)] & (1L << codePoint)) != 0;
+		}
+		int low = 0;
+		int high = supplementary.length / 2 - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (codePoint < supplementary[2 * mid]) {
+				high = mid - 1;
+			} else if (codePoint > supplementary[2 * mid + 1]) {
+				low = mid + 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if every code point of the slice is in the set.
+	 */
+	public boolean containsAll(char[] buffer, int offset, int length) {
+		final int end = offset + length;
+		for (int i = offset; i < end; ) {
+			char c = buffer[i];
+			if (!Character.isSurrogate(c)) {
+				if (!contains(c)) {
+					return false;
+				}
+				i++;
+			} else {
+				int codePoint = Character.codePointAt(buffer, i, end);
+				if (!contains(codePoint)) {
+					return false;
+				}
+				i += Character.charCount(codePoint);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Bytes held by the lookup arrays.
+	 */
+	public long ramBytesUsed() {
+		return blockIndex.length * 2L + blocks.length * 8L + supplementary.length * 4L;
+	}
+
+	/**
+	 * Compiles the given specs.
+	 *
+	 * @throws IllegalArgumentException if a spec is not a char, a range, a hex range or a script
+	 */
+	public static CharClassTable compile(List<String> specs) {
+		Builder builder = new Builder();
+		for (String spec : specs) {
+			builder.add(spec);
+		}
+		return builder.build();
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public static final class Builder {
+		private final long[] bmp = new long[BMP_SIZE >>> 6];
+		private final List<int[]> supplementary = new ArrayList<>();
+
+		private Builder() {
+		}
+
+		/**
+		 * Adds the code points {@code from} to {@code to}, both inclusive.
+		 */
+		public Builder addRange(int from, int to) {
+			if (from < 0 || to > Character.MAX_CODE_POINT || from > to) {
+				throw new IllegalArgumentException("invalid code point range [" + from + ", " + to + "]");
+			}
+			for (int cp = from; cp <= Math.min(to, BMP_SIZE - 1); cp++) {
+				bmp[cp >>> 6] |= 1L << cp;
+			}
+			if (to >= BMP_SIZE) {
+				supplementary.add(new int[]{Math.max(from, BMP_SIZE), to});
+			}
+			return this;
+		}
+
+		/**
+		 * Adds every code point of the script.
+		 */
+		public Builder addScript(Character.UnicodeScript script) {
+			int runStart = -1;
+			for (int cp = 0; cp <= Character.MAX_CODE_POINT + 1; cp++) {
+				boolean in = cp <= Character.MAX_CODE_POINT && Character.UnicodeScript.of(cp) == script;
+				if (in && runStart < 0) {
+					runStart = cp;
+				} else if (!in && runStart >= 0) {
+					addRange(runStart, cp - 1);
+					runStart = -1;
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * Adds a spec: a single char, {@code a-z}, {@code U+4E00}, {@code U+4E00-U+9FA5} or
+		 * {@code script:han}, the script named as in {@link Character.UnicodeScript#forName(String)}.
+		 */
+		public Builder add(String spec) {
+			if (spec.regionMatches(true, 0, SCRIPT_PREFIX, 0, SCRIPT_PREFIX.length())) {
+				String name = spec.substring(SCRIPT_PREFIX.length()).trim();
+				try {
+					return addScript(Character.UnicodeScript.forName(name.toUpperCase(Locale.ROOT)));
+				} catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException("invalid char class [" + spec + "], unknown script [" + name + "]", e);
+				}
+			}
+			if (spec.startsWith("U+") || spec.startsWith("u+")) {
+				int dash = spec.indexOf('-');
+				int from = parseHex(dash < 0 ? spec : spec.substring(0, dash), spec);
+				int to = dash < 0 ? from : parseHex(spec.substring(dash + 1), spec);
+				return addRange(from, to);
+			}
+			int[] codePoints = spec.codePoints().toArray();
+			if (codePoints.length == 1) {
+				return addRange(codePoints[0], codePoints[0]);
+			}
+			if (codePoints.length == 3 && codePoints[1] == '-') {
+				return addRange(codePoints[0], codePoints[2]);
+			}
+			throw new IllegalArgumentException("invalid char class [" + spec + "], expected a char, a-z, U+4E00-U+9FA5 or script:han");
+		}
+
+		private static int parseHex(String hex, String spec) {
+			if (!hex.startsWith("U+") && !hex.startsWith("u+")) {
+				throw new IllegalArgumentException("invalid char class [" + spec + "], expected U+XXXX-U+XXXX");
+			}
+			try {
+				return Integer.parseInt(hex.substring(2), 16);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("invalid char class [" + spec + "], expected U+XXXX-U+XXXX", e);
+			}
+		}
+
+		public CharClassTable build() {
+			char[] blockIndex = new char[BMP_SIZE >>> 8];
+			Map<LongBuffer, Integer> offsets = new HashMap<>();
+			long[] blocks = new long[0];
+			for (int block = 0; block < blockIndex.length; block++) {
+				LongBuffer bits = LongBuffer.wrap(bmp, block * BLOCK_LONGS, BLOCK_LONGS).slice();
+				Integer offset = offsets.get(bits);
+				if (null == offset) {
+					offset = blocks.length;
+					blocks = Arrays.copyOf(blocks, blocks.length + BLOCK_LONGS);
+					bits.get(blocks, offset, BLOCK_LONGS);
+					offsets.put(LongBuffer.wrap(blocks, offset, BLOCK_LONGS).slice(), offset);
+				}
+				blockIndex[block] = (char) offset.intValue();
+			}
+
+			supplementary.sort((a, b) -> Integer.compare(a[0], b[0]));
+			List<int[]> merged = new ArrayList<>();
+			for (int[] range : supplementary) {
+				int[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+				if (null != last && range[0] <= last[1] + 1) {
+					last[1] = Math.max(last[1], range[1]);
+				} else {
+					merged.add(new int[]{range[0], range[1]});
+				}
+			}
+			int[] ranges = new int[merged.size() * 2];
+			for (int i = 0; i < merged.size(); i++) {
+				ranges[2 * i] = merged.get(i)[0];
+				ranges[2 * i + 1] = merged.get(i)[1];
+			}
+			return new CharClassTable(blockIndex, blocks, ranges);
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package org.es.ngram.utils;
+
+import org.apache.lucene.util.ArrayUtil;
+
+import java.util.Arrays;
+
+/**
+ * @author yida
+ * @package org.es.ngram.utils
+ * @date 2024-07-01 10:15
+ * @description Reusable open addressing hash set of char slices.
+ *
+ * <p>Added slices are copied into one growing char pool, so adding and looking up never allocates a
+ * String or a per entry object. The set holds at most {@code maxSize} slices, once full a slice that is not
+ * in the set yet is refused with {@link AddResult#FULL} while lookups keep working. {@link #clear()} only touches the slots
+ * that were used, so clearing a set that saw few entries is cheap whatever its capacity.
+ */
+public final class CharSliceHashSet {
+	private static final int EMPTY = -1;
+
+	private final int maxSize;
+
+	/** entry index per slot, EMPTY if free */
+	private int[] table;
+	private int mask;
+
+	private char[] pool = new char[64];
+	private int poolLength;
+
+	/** per entry: start in the pool, length, hash and slot */
+	private int[] starts = new int[16];
+	private int[] lengths = new int[16];
+	private int[] hashes = new int[16];
+	private int[] slots = new int[16];
+	private int size;
+
+	/**
+	 * @param maxSize the most slices the set will hold
+	 */
+	public CharSliceHashSet(int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be greater than zero");
+		}
+		this.maxSize = maxSize;
+		this.table = new int[16];
+		this.mask = table.length - 1;
+		Arrays.fill(table, EMPTY);
+	}
+
+	/**
+	 * Result of {@link #add(char[], int, int)}.
+	 */
+	public enum AddResult {
+		/** the slice was not in the set and has been added */
+		ADDED,
+		/** the slice was already in the set */
+		PRESENT,
+		/** the slice was not in the set and the set is full */
+		FULL
+	}
+
+	/**
+	 * Adds the slice unless it is already in the set or the set is full.
+	 */
+	public AddResult add(char[] buffer, int offset, int length) {
+		final int hash = hash(buffer, offset, length);
+		int slot = hash & mask;
+		int entry;
+		while ((entry = table[slot]) != EMPTY) {
+			if (hashes[entry] == hash && equals(entry, buffer, offset, length)) {
+				return AddResult.PRESENT;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (size >= maxSize) {
+			return AddResult.FULL;
+		}
+		pool = ArrayUtil.grow(pool, poolLength + length);
+		System.arraycopy(buffer, offset, pool, poolLength, length);
+		if (size == starts.length) {
+			int capacity = ArrayUtil.oversize(size + 1, Integer.BYTES);
+			starts = Arrays.copyOf(starts, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+			hashes = Arrays.copyOf(hashes, capacity);
+			slots = Arrays.copyOf(slots, capacity);
+		}
+		starts[size] = poolLength;
+		lengths[size] = length;
+		hashes[size] = hash;
+		slots[size] = slot;
+		table[slot] = size;
+		poolLength += length;
+		size++;
+		if (size * 2 > table.length) {
+			rehash();
+		}
+		return AddResult.ADDED;
+	}
+
+	/**
+	 * Number of slices in the set.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isFull() {
+		return size >= maxSize;
+	}
+
+	/**
+	 * Empties the set, keeping its buffers for reuse.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			table[slots[i]] = EMPTY;
+		}
+		size = 0;
+		poolLength = 0;
+	}
+
+	private boolean equals(int entry, char[] buffer, int offset, int length) {
+		if (lengths[entry] != length) {
+			return false;
+		}
+		final int start = starts[entry];
+		for (int i = 0; i < length; i++) {
+			if (pool[start + i] != buffer[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rehash() {
+		table = new int[table.length << 1];
+		mask = table.length - 1;
+		Arrays.fill(table, EMPTY);
+		for (int entry = 0; entry < size; entry++) {
+			int slot = hashes[entry] & mask;
+			while (table[slot] != EMPTY) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = entry;
+			slots[entry] = slot;
+		}
+	}
+
+	private static int hash(char[] buffer, int offset, int length) {
+		int h = 0;
+		for (int i = offset, end = offset + length; i < end; i++) {
+			h = 31 * h + buffer[i];
+		}
+		// spread the bits, linear probing is sensitive to clustered low bits
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		h ^= (h >>> 13);
+		return h;
+	}
+}
@@ -0,0 +1,511 @@
+package org.es.ngram.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * @author yida
+ * @package org.es.ngram.utils
+ * @date 2024-06-20 10:12
+ * @description Immutable double-array trie over chars mapping keys to replacement strings.
+ *
+ * <p>A transition from node {@code p} on char {@code c} lands on {@code t = base[p] + c + 1}
+ * and is valid when {@code check[t] == p + 1}. The end of a key is encoded as a transition on
+ * code {@code 0}, whose {@code base} slot holds {@code -(valueId + 1)}. Replacement strings are
+ * packed into a single char pool, so lookups and rewrites never allocate.
+ *
+ * <p>The arrays are held in buffers: a trie compiled at runtime wraps heap arrays, a trie written
+ * with {@link #write(List, Path)} is read back by {@link #map(Path)} as views of a read only
+ * memory mapped file, with no parsing and no copy on the heap.
+ */
+public final class DoubleArrayTrie {
+	private static final int ROOT = 0;
+	private static final int TERMINAL_CODE = 0;
+	private static final int INITIAL_CAPACITY = 1 << 16;
+
+	/** "DATR", the first int of a file written by {@link #write(List, Path)} */
+	private static final int FILE_MAGIC = 0x44415452;
+	private static final int FILE_VERSION = 1;
+
+	private final IntBuffer base;
+	private final IntBuffer check;
+	private final CharBuffer values;
+	private final IntBuffer valueOffsets;
+	private final int checkLength;
+	private final int size;
+	private final int maxKeyLength;
+	private final int maxExpansion;
+	/** one bit per BMP char, set if some key starts with it, so most chars are ruled out with one load */
+	private final long[] keyStarts = new long[1 << 10];
+	/** the array behind values, or null if they are mapped */
+	private final char[] valueArray;
+	private final int valueArrayOffset;
+
+	private DoubleArrayTrie(IntBuffer base, IntBuffer check, CharBuffer values, IntBuffer valueOffsets,
+							int size, int maxKeyLength, int maxExpansion) {
+		this.base = base;
+		this.check = check;
+		this.values = values;
+		this.valueOffsets = valueOffsets;
+		this.checkLength = check.limit();
+		this.size = size;
+		this.maxKeyLength = maxKeyLength;
+		this.maxExpansion = maxExpansion;
+		this.valueArray = values.hasArray() ? values.array() : null;
+		this.valueArrayOffset = values.hasArray() ? values.arrayOffset() : 0;
+		final int rootBase = base.get(ROOT);
+		for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+			int t = rootBase + c + 1;
+			if (t >= 0 && t < checkLength && check.get(t) == ROOT + 1) {
+				keyStarts[c >>> 6] |= 1L << c;
+			}
+		}
+	}
+
+	/**
+	 * Compiles the given key/value mappings. Empty keys are ignored.
+	 *
+	 * @param mappings key to replacement mappings
+	 * @return the compiled trie
+	 */
+	public static DoubleArrayTrie build(Map<String, String> mappings) {
+		SortedMap<String, String> sorted = (mappings instanceof SortedMap && ((SortedMap<String, String>) mappings).comparator() == null) ?
+				(SortedMap<String, String>) mappings : new TreeMap<>(mappings);
+		return new Builder(sorted).build();
+	}
+
+	/**
+	 * Finds the longest key starting at {@code offset}.
+	 *
+	 * @param buffer the chars to match against
+	 * @param offset the first char to match
+	 * @param end    the exclusive upper bound of the match
+	 * @return {@code -1} if no key matches, otherwise the match length in the upper 32 bits and
+	 * the value id in the lower 32 bits
+	 */
+	public long longestMatch(char[] buffer, int offset, int end) {
+		long match = -1L;
+		int p = ROOT;
+		for (int i = offset; i < end; i++) {
+			int t = base.get(p) + buffer[i] + 1;
+			if (t >= checkLength || check.get(t) != p + 1) {
+				break;
+			}
+			p = t;
+			int terminal = base.get(p) + TERMINAL_CODE;
+			if (terminal >= 0 && terminal < checkLength && check.get(terminal) == p + 1) {
+				match = ((long) (i - offset + 1) << 32) | (-base.get(terminal) - 1);
+			}
+		}
+		return match;
+	}
+
+	/**
+	 * Returns true if some key starts with the given char.
+	 */
+	public boolean isKeyStart(char c) {
+		return (keyStarts[c >>> 6] & (1L << c)) != 0;
+	}
+
+	/**
+	 * Returns true if any char in the given range starts a key, i.e. if {@link #rewrite} could
+	 * change it.
+	 */
+	public boolean containsKeyStart(char[] buffer, int offset, int length) {
+		final int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			if (isKeyStart(buffer[i])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Rewrites {@code src} left to right, replacing the longest key at each position with its
+	 * value and copying unmatched chars through unchanged.
+	 *
+	 * @param src     the chars to rewrite
+	 * @param offset  the first char to rewrite
+	 * @param length  the number of chars to rewrite
+	 * @param dest    the output buffer, with room for at least {@link #maxRewrittenLength(int)} chars
+	 * @param destOffset the first output position
+	 * @return the number of chars written to {@code dest}
+	 */
+	public int rewrite(char[] src, int offset, int length, char[] dest, int destOffset) {
+		if (dest.length - destOffset < maxRewrittenLength(length)) {
+			throw new IllegalArgumentException("dest must have room for at least " + maxRewrittenLength(length) + " chars");
+		}
+		final int end = offset + length;
+		int out = destOffset;
+		int i = offset;
+		while (i < end) {
+			long match = longestMatch(src, i, end);
+			if (match < 0) {
+				dest[out++] = src[i++];
+				continue;
+			}
+			out += copyValue((int) match, dest, out);
+			i += (int) (match >>> 32);
+		}
+		return out - destOffset;
+	}
+
+	/**
+	 * Upper bound of the output length of {@link #rewrite} for an input of the given length.
+	 */
+	public int maxRewrittenLength(int length) {
+		return length * maxExpansion;
+	}
+
+	public int valueLength(int valueId) {
+		return valueOffsets.get(valueId + 1) - valueOffsets.get(valueId);
+	}
+
+	/**
+	 * Copies the value of a match into {@code dest}, returns its length.
+	 */
+	public int copyValue(int valueId, char[] dest, int destOffset) {
+		final int start = valueOffsets.get(valueId);
+		final int length = valueOffsets.get(valueId + 1) - start;
+		if (null != valueArray) {
+			System.arraycopy(valueArray, valueArrayOffset + start, dest, destOffset, length);
+			return length;
+		}
+		for (int i = 0; i < length; i++) {
+			dest[destOffset + i] = values.get(start + i);
+		}
+		return length;
+	}
+
+	/**
+	 * Number of keys in the trie.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int getMaxKeyLength() {
+		return maxKeyLength;
+	}
+
+	/**
+	 * Returns true if the arrays are views of a mapped file rather than heap arrays.
+	 */
+	public boolean isMapped() {
+		return base.isDirect();
+	}
+
+	/**
+	 * Approximate memory used by the trie arrays, on the heap or mapped, in bytes.
+	 */
+	public long ramBytesUsed() {
+		return 4L * base.limit() + 4L * checkLength + 2L * values.limit() + 4L * valueOffsets.limit() + 8L * keyStarts.length;
+	}
+
+	/**
+	 * Returns true if the other trie has the same base, check, value offset and value arrays, so it
+	 * finds the same keys and rewrites them to the same values, e.g. when it was read back by
+	 * {@link #map(Path)} from a file written from this one.
+	 */
+	public boolean sameContent(DoubleArrayTrie other) {
+		return size == other.size && maxKeyLength == other.maxKeyLength && maxExpansion == other.maxExpansion
+				&& checkLength == other.checkLength
+				&& head(base, checkLength).equals(head(other.base, checkLength))
+				&& head(check, checkLength).equals(head(other.check, checkLength))
+				&& head(valueOffsets, valueOffsets.limit()).equals(head(other.valueOffsets, other.valueOffsets.limit()))
+				&& head(values, values.limit()).equals(head(other.values, other.values.limit()));
+	}
+
+	/**
+	 * A view of the first {@code length} elements of the buffer, its position and limit untouched.
+	 */
+	private static IntBuffer head(IntBuffer buffer, int length) {
+		IntBuffer head = buffer.duplicate();
+		head.clear();
+		head.limit(length);
+		return head;
+	}
+
+	private static CharBuffer head(CharBuffer buffer, int length) {
+		CharBuffer head = buffer.duplicate();
+		head.clear();
+		head.limit(length);
+		return head;
+	}
+
+	/**
+	 * Writes the tries to a little endian file that {@link #map(Path)} reads back.
+	 */
+	public static void write(List<DoubleArrayTrie> tries, Path path) throws IOException {
+		int bytes = 3 * 4;
+		for (DoubleArrayTrie trie : tries) {
+			bytes += 6 * 4 + 4 * (2 * trie.checkLength + trie.valueOffsets.limit()) + align(2 * trie.values.limit());
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(FILE_MAGIC).putInt(FILE_VERSION).putInt(tries.size());
+		for (DoubleArrayTrie trie : tries) {
+			buffer.putInt(trie.size).putInt(trie.maxKeyLength).putInt(trie.maxExpansion)
+					.putInt(trie.checkLength).putInt(trie.valueOffsets.limit()).putInt(trie.values.limit());
+			for (int i = 0; i < trie.checkLength; i++) {
+				buffer.putInt(trie.base.get(i));
+			}
+			for (int i = 0; i < trie.checkLength; i++) {
+				buffer.putInt(trie.check.get(i));
+			}
+			for (int i = 0; i < trie.valueOffsets.limit(); i++) {
+				buffer.putInt(trie.valueOffsets.get(i));
+			}
+			for (int i = 0; i < trie.values.limit(); i++) {
+				buffer.putChar(trie.values.get(i));
+			}
+			buffer.position(align(buffer.position()));
+		}
+		buffer.flip();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Maps a file written by {@link #write(List, Path)} read only and returns its tries, whose
+	 * arrays are views of the mapping. The mapping stays valid after the file is closed and is
+	 * shared with every other process mapping the file.
+	 *
+	 * @throws IOException if the file can not be read or was not written by {@link #write(List, Path)}
+	 */
+	public static List<DoubleArrayTrie> map(Path path) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		if (buffer.remaining() < 3 * 4 || buffer.getInt() != FILE_MAGIC) {
+			throw new IOException("[" + path + "] is not a trie file");
+		}
+		int version = buffer.getInt();
+		if (version != FILE_VERSION) {
+			throw new IOException("[" + path + "] has version " + version + ", expected " + FILE_VERSION);
+		}
+		int count = buffer.getInt();
+		List<DoubleArrayTrie> tries = new ArrayList<>(count);
+		for (int t = 0; t < count; t++) {
+			if (buffer.remaining() < 6 * 4) {
+				throw new IOException("[" + path + "] is truncated");
+			}
+			int size = buffer.getInt();
+			int maxKeyLength = buffer.getInt();
+			int maxExpansion = buffer.getInt();
+			int checkLength = buffer.getInt();
+			int valueOffsetsLength = buffer.getInt();
+			int valuesLength = buffer.getInt();
+			IntBuffer base = region(buffer, 4 * checkLength, path).asIntBuffer();
+			IntBuffer check = region(buffer, 4 * checkLength, path).asIntBuffer();
+			IntBuffer valueOffsets = region(buffer, 4 * valueOffsetsLength, path).asIntBuffer();
+			CharBuffer values = region(buffer, align(2 * valuesLength), path).asCharBuffer();
+			values.limit(valuesLength);
+			tries.add(new DoubleArrayTrie(base, check, values, valueOffsets, size, maxKeyLength, maxExpansion));
+		}
+		return tries;
+	}
+
+	/**
+	 * Returns the next {@code bytes} bytes of the buffer as a buffer of their own and skips them.
+	 */
+	private static ByteBuffer region(ByteBuffer buffer, int bytes, Path path) throws IOException {
+		if (bytes < 0 || buffer.remaining() < bytes) {
+			throw new IOException("[" + path + "] is truncated");
+		}
+		ByteBuffer region = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		region.limit(bytes);
+		buffer.position(buffer.position() + bytes);
+		return region;
+	}
+
+	private static int align(int bytes) {
+		return (bytes + 3) & ~3;
+	}
+
+	private static final class Builder {
+		private final String[] keys;
+		private final String[] vals;
+		private int[] base = new int[INITIAL_CAPACITY];
+		private int[] check = new int[INITIAL_CAPACITY];
+		private boolean[] usedBase = new boolean[INITIAL_CAPACITY];
+		private int nextCheckPos;
+		private int maxIndex;
+
+		private static final class Node {
+			final int code;
+			final int depth;
+			final int left;
+			int right;
+
+			Node(int code, int depth, int left) {
+				this.code = code;
+				this.depth = depth;
+				this.left = left;
+			}
+		}
+
+		Builder(SortedMap<String, String> sorted) {
+			List<String> keyList = new ArrayList<>(sorted.size());
+			List<String> valueList = new ArrayList<>(sorted.size());
+			for (Map.Entry<String, String> entry : sorted.entrySet()) {
+				if (entry.getKey() == null || entry.getKey().isEmpty()) {
+					continue;
+				}
+				keyList.add(entry.getKey());
+				valueList.add(entry.getValue() == null ? "" : entry.getValue());
+			}
+			this.keys = keyList.toArray(new String[0]);
+			this.vals = valueList.toArray(new String[0]);
+		}
+
+		DoubleArrayTrie build() {
+			check[ROOT] = -1;
+			maxIndex = ROOT;
+			if (keys.length > 0) {
+				Node root = new Node(-1, 0, 0);
+				root.right = keys.length;
+				int rootBase = insert(fetch(root), ROOT);
+				base[ROOT] = rootBase;
+			} else {
+				base[ROOT] = 1;
+			}
+
+			int length = maxIndex + 1;
+			int[] finalBase = new int[length];
+			int[] finalCheck = new int[length];
+			System.arraycopy(base, 0, finalBase, 0, length);
+			System.arraycopy(check, 0, finalCheck, 0, length);
+
+			int poolLength = 0;
+			int maxKeyLength = 0;
+			int maxExpansion = 1;
+			for (int i = 0; i < keys.length; i++) {
+				poolLength += vals[i].length();
+				maxKeyLength = Math.max(maxKeyLength, keys[i].length());
+				int expansion = (vals[i].length() + keys[i].length() - 1) / keys[i].length();
+				maxExpansion = Math.max(maxExpansion, expansion);
+			}
+			char[] values = new char[poolLength];
+			int[] valueOffsets = new int[keys.length + 1];
+			int pos = 0;
+			for (int i = 0; i < keys.length; i++) {
+				valueOffsets[i] = pos;
+				vals[i].getChars(0, vals[i].length(), values, pos);
+				pos += vals[i].length();
+			}
+			valueOffsets[keys.length] = pos;
+			return new DoubleArrayTrie(IntBuffer.wrap(finalBase), IntBuffer.wrap(finalCheck), CharBuffer.wrap(values),
+					IntBuffer.wrap(valueOffsets), keys.length, maxKeyLength, maxExpansion);
+		}
+
+		private List<Node> fetch(Node parent) {
+			List<Node> siblings = new ArrayList<>();
+			int prev = -1;
+			for (int i = parent.left; i < parent.right; i++) {
+				String key = keys[i];
+				if (key.length() < parent.depth) {
+					continue;
+				}
+				int code = key.length() == parent.depth ? TERMINAL_CODE : key.charAt(parent.depth) + 1;
+				if (code != prev) {
+					if (!siblings.isEmpty()) {
+						siblings.get(siblings.size() - 1).right = i;
+					}
+					siblings.add(new Node(code, parent.depth + 1, i));
+					prev = code;
+				}
+			}
+			if (!siblings.isEmpty()) {
+				siblings.get(siblings.size() - 1).right = parent.right;
+			}
+			return siblings;
+		}
+
+		private int insert(List<Node> siblings, int parent) {
+			final int firstCode = siblings.get(0).code;
+			final int lastCode = siblings.get(siblings.size() - 1).code;
+			int pos = Math.max(firstCode + 1, nextCheckPos) - 1;
+			int nonZero = 0;
+			boolean first = true;
+			int begin;
+			outer:
+			while (true) {
+				pos++;
+				ensureCapacity(pos + 1);
+				if (check[pos] != 0) {
+					nonZero++;
+					continue;
+				} else if (first) {
+					nextCheckPos = pos;
+					first = false;
+				}
+				begin = pos - firstCode;
+				ensureCapacity(begin + lastCode + 1);
+				if (usedBase[begin]) {
+					continue;
+				}
+				for (Node sibling : siblings) {
+					if (check[begin + sibling.code] != 0) {
+						continue outer;
+					}
+				}
+				break;
+			}
+			if (1.0 * nonZero / (pos - nextCheckPos + 1) >= 0.95) {
+				nextCheckPos = pos;
+			}
+			usedBase[begin] = true;
+			for (Node sibling : siblings) {
+				check[begin + sibling.code] = parent + 1;
+				maxIndex = Math.max(maxIndex, begin + sibling.code);
+			}
+			for (Node sibling : siblings) {
+				int index = begin + sibling.code;
+				if (sibling.code == TERMINAL_CODE) {
+					base[index] = -sibling.left - 1;
+				} else {
+					// insert may grow the arrays, so resolve the field only after it returns
+					int childBase = insert(fetch(sibling), index);
+					base[index] = childBase;
+				}
+			}
+			return begin;
+		}
+
+		private void ensureCapacity(int required) {
+			if (required <= base.length) {
+				return;
+			}
+			int capacity = base.length;
+			while (capacity < required) {
+				capacity <<= 1;
+			}
+			int[] newBase = new int[capacity];
+			int[] newCheck = new int[capacity];
+			boolean[] newUsed = new boolean[capacity];
+			System.arraycopy(base, 0, newBase, 0, base.length);
+			System.arraycopy(check, 0, newCheck, 0, check.length);
+			System.arraycopy(usedBase, 0, newUsed, 0, usedBase.length);
+			base = newBase;
+			check = newCheck;
+			usedBase = newUsed;
+		}
+	}
+}
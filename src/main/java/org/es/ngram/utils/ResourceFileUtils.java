@@ -295,6 +295,31 @@ public class ResourceFileUtils {
 		return inputStream2Reader(inputStream, charset);
 	}
 
+	/**
+	 * Returns the last modified time of the given resource location, resolved the same way as
+	 * {@link #getReader(String, String)}, or 0 if it cannot be determined.
+	 */
+	public static long lastModified(String resourceLocation) {
+		Assert.notNull(resourceLocation, "Resource location must not be null");
+		String path = resourceLocation;
+		if (resourceLocation.startsWith(CLASSPATH_URL_PREFIX)) {
+			path = resourceLocation.substring(CLASSPATH_URL_PREFIX.length());
+		}
+		try {
+			URL url = ResourceFileUtils.class.getResource(path.startsWith("/") ? path : "/" + path);
+			if (null == url) {
+				url = ClassUtils.getDefaultClassLoader().getResource(path.startsWith("/") ? path.substring(1) : path);
+			}
+			if (null != url) {
+				return url.openConnection().getLastModified();
+			}
+			return new File(path).lastModified();
+		} catch (Exception e) {
+			log.error("Get last modified time of resource:[" + resourceLocation + "] occur exception:" + e.getMessage());
+			return 0L;
+		}
+	}
+
 	public static Reader getReader(String resourceLocation) throws FileNotFoundException {
 		return getReader(resourceLocation, "UTF-8");
 	}
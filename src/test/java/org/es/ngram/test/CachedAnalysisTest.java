@@ -0,0 +1,113 @@
+package org.es.ngram.test;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.es.ngram.index.analysis.EdgeNGramAnalyzer;
+import org.es.ngram.index.analysis.NGramAnalyzer;
+import org.es.ngram.index.analysis.SearchAnalysisCache;
+import org.es.ngram.utils.CharClassTable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author yida
+ * @package org.es.ngram.test
+ * @date 2024-07-18 11:30
+ * @description Checks that an analyzer with a search analysis cache emits the same tokens as the
+ * same chain without the cache, whether an input is recorded, replayed or too long to be cached.
+ */
+public class CachedAnalysisTest {
+	public static void main(String[] args) throws IOException {
+		Random random = new Random(42);
+		CharClassTable keepChars = CharClassTable.compile(CharClassTable.DEFAULT_SPECS);
+		// a small cache, so entries get evicted and recorded again
+		SearchAnalysisCache ngramCache = new SearchAnalysisCache(64, 16);
+		SearchAnalysisCache normalizedCache = new SearchAnalysisCache(64, 16);
+		SearchAnalysisCache edgeCache = new SearchAnalysisCache(64, 16);
+		Analyzer[][] pairs = {
+				{NGramAnalyzer.builder().minGram(1).maxGram(3).build(),
+						NGramAnalyzer.builder().minGram(1).maxGram(3).searchAnalysisCache(ngramCache).build()},
+				{NGramAnalyzer.builder().minGram(2).maxGram(3).keepChars(keepChars).build(),
+						NGramAnalyzer.builder().minGram(2).maxGram(3).keepChars(keepChars).searchAnalysisCache(normalizedCache).build()},
+				{EdgeNGramAnalyzer.builder().minGram(1).maxGram(4).keepOrignalTerm(true).build(),
+						EdgeNGramAnalyzer.builder().minGram(1).maxGram(4).keepOrignalTerm(true).searchAnalysisCache(edgeCache).build()}
+		};
+		// inputs drawn from a small pool repeat, so most of them are replayed
+		String[] pool = new String[200];
+		for (int i = 0; i < pool.length; i++) {
+			pool[i] = randomText(random);
+		}
+		int tokens = 0;
+		for (int iter = 0; iter < 20000; iter++) {
+			String text = pool[random.nextInt(pool.length)];
+			for (Analyzer[] pair : pairs) {
+				List<String> expected = tokens(pair[0], text);
+				List<String> actual = tokens(pair[1], text);
+				if (!expected.equals(actual)) {
+					throw new AssertionError("cached analysis of [" + text + "] gives " + actual + ", expected " + expected);
+				}
+				tokens += actual.size();
+			}
+		}
+		for (SearchAnalysisCache cache : new SearchAnalysisCache[]{ngramCache, normalizedCache, edgeCache}) {
+			if (cache.hits() == 0 || cache.misses() == 0 || cache.bypassed() == 0 || cache.evictions() == 0) {
+				throw new AssertionError("hits " + cache.hits() + ", misses " + cache.misses() + ", bypassed " + cache.bypassed()
+						+ ", evictions " + cache.evictions() + ": not every path of the cache was taken");
+			}
+		}
+		System.out.println(tokens + " tokens match the uncached chains, hit rate " + ngramCache.hitRate());
+	}
+
+	/**
+	 * Every token with its attributes, then the final offset and position increment.
+	 */
+	private static List<String> tokens(Analyzer analyzer, String text) throws IOException {
+		List<String> tokens = new ArrayList<>();
+		try (TokenStream stream = analyzer.tokenStream("field", text)) {
+			CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+			OffsetAttribute offsetAtt = stream.addAttribute(OffsetAttribute.class);
+			PositionIncrementAttribute posIncAtt = stream.addAttribute(PositionIncrementAttribute.class);
+			PositionLengthAttribute posLenAtt = stream.addAttribute(PositionLengthAttribute.class);
+			TypeAttribute typeAtt = stream.addAttribute(TypeAttribute.class);
+			stream.reset();
+			while (stream.incrementToken()) {
+				tokens.add(termAtt + "@" + offsetAtt.startOffset() + "-" + offsetAtt.endOffset() + "+" + posIncAtt.getPositionIncrement()
+						+ "/" + posLenAtt.getPositionLength() + ":" + typeAtt.type());
+			}
+			stream.end();
+			tokens.add("end@" + offsetAtt.endOffset() + "+" + posIncAtt.getPositionIncrement());
+		}
+		return tokens;
+	}
+
+	private static String randomText(Random random) {
+		StringBuilder builder = new StringBuilder();
+		// mostly short enough to be cached, now and then past maxInputLength
+		int length = random.nextInt(random.nextInt(5) == 0 ? 40 : 16);
+		for (int i = 0; i < length; i++) {
+			int kind = random.nextInt(10);
+			if (kind < 2) {
+				builder.append(' ');
+			} else if (kind < 4) {
+				builder.append((char) ('a' + random.nextInt(26)));
+			} else if (kind < 5) {
+				builder.append((char) ('A' + random.nextInt(26)));
+			} else if (kind < 8) {
+				builder.append((char) (0x4E00 + random.nextInt(0x51A6)));
+			} else if (kind < 9) {
+				builder.append((char) ('0' + random.nextInt(10)));
+			} else {
+				builder.append(",.-!".charAt(random.nextInt(4)));
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,121 @@
+package org.es.ngram.test;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.es.ngram.index.analysis.EdgeNGramTokenizer;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author yida
+ * @package org.es.ngram.test
+ * @date 2024-07-19 09:50
+ * @description Checks the grams and offsets of EdgeNGramTokenizer against the edge grams of the
+ * trimmed input, and that the final offset covers the input read, past the end of the last gram.
+ */
+public class EdgeNGramTokenizerTest {
+	public static void main(String[] args) throws IOException {
+		Random random = new Random(42);
+		int tokens = 0;
+		for (int iter = 0; iter < 5000; iter++) {
+			EdgeNGramTokenizer.Side side = random.nextBoolean() ? EdgeNGramTokenizer.Side.FRONT : EdgeNGramTokenizer.Side.BACK;
+			int minGram = 1 + random.nextInt(3);
+			int maxGram = minGram + random.nextInt(5);
+			int maxInputLength = random.nextInt(4) == 0 ? 1 + random.nextInt(30) : EdgeNGramTokenizer.DEFAULT_MAX_INPUT_LENGTH;
+			String text = randomText(random);
+			String read = prefix(text, maxInputLength);
+			List<String> expected = expectedTokens(read, side, minGram, maxGram);
+			List<String> actual = new ArrayList<>();
+			int lastEndOffset = 0;
+			EdgeNGramTokenizer tokenizer = new EdgeNGramTokenizer(TokenStream.DEFAULT_TOKEN_ATTRIBUTE_FACTORY, side, minGram, maxGram, maxInputLength);
+			tokenizer.setReader(new StringReader(text));
+			try (TokenStream stream = tokenizer) {
+				CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+				OffsetAttribute offsetAtt = stream.addAttribute(OffsetAttribute.class);
+				stream.reset();
+				while (stream.incrementToken()) {
+					actual.add(termAtt + "@" + offsetAtt.startOffset() + "-" + offsetAtt.endOffset());
+					lastEndOffset = Math.max(lastEndOffset, offsetAtt.endOffset());
+				}
+				stream.end();
+				int finalOffset = offsetAtt.endOffset();
+				if (finalOffset < lastEndOffset) {
+					throw new AssertionError("final offset " + finalOffset + " of [" + text + "] is before the last end offset " + lastEndOffset);
+				}
+				if (finalOffset != Math.min(text.length(), maxInputLength)) {
+					throw new AssertionError("final offset " + finalOffset + " of [" + text + "] with maxInputLength " + maxInputLength
+							+ ", expected " + Math.min(text.length(), maxInputLength));
+				}
+			}
+			if (!expected.equals(actual)) {
+				throw new AssertionError(side.getLabel() + " grams " + minGram + "-" + maxGram + " of [" + text + "] are " + actual
+						+ ", expected " + expected);
+			}
+			tokens += actual.size();
+		}
+		System.out.println(tokens + " grams match the edges of their input");
+	}
+
+	/**
+	 * The code points of the text read within maxInputLength chars.
+	 */
+	private static String prefix(String text, int maxInputLength) {
+		int end = 0;
+		while (end < text.length()) {
+			int next = end + Character.charCount(text.codePointAt(end));
+			if (next > maxInputLength) {
+				break;
+			}
+			end = next;
+		}
+		return text.substring(0, end);
+	}
+
+	private static List<String> expectedTokens(String text, EdgeNGramTokenizer.Side side, int minGram, int maxGram) {
+		List<Integer> starts = new ArrayList<>();
+		for (int i = 0; i < text.length(); i += Character.charCount(text.codePointAt(i))) {
+			starts.add(i);
+		}
+		int first = 0;
+		while (first < starts.size() && Character.isWhitespace(text.codePointAt(starts.get(first)))) {
+			first++;
+		}
+		int last = starts.size();
+		while (last > first && Character.isWhitespace(text.codePointAt(starts.get(last - 1)))) {
+			last--;
+		}
+		starts.add(text.length());
+		List<String> tokens = new ArrayList<>();
+		for (int size = minGram; size <= maxGram && size <= last - first; size++) {
+			int from = side == EdgeNGramTokenizer.Side.FRONT ? first : last - size;
+			int start = starts.get(from);
+			int end = starts.get(from + size);
+			tokens.add(text.substring(start, end) + "@" + start + "-" + end);
+		}
+		return tokens;
+	}
+
+	private static String randomText(Random random) {
+		StringBuilder builder = new StringBuilder();
+		// now and then longer than the read buffer of the tokenizer
+		int length = random.nextInt(random.nextInt(10) == 0 ? 3000 : 20);
+		for (int i = 0; i < length; i++) {
+			int kind = random.nextInt(10);
+			if (kind < 3) {
+				builder.append(random.nextBoolean() ? ' ' : '\t');
+			} else if (kind < 6) {
+				builder.append((char) ('a' + random.nextInt(26)));
+			} else if (kind < 9) {
+				builder.append((char) (0x4E00 + random.nextInt(0x51A6)));
+			} else {
+				builder.appendCodePoint(0x1F600 + random.nextInt(80));
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,122 @@
+package org.es.ngram.test;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.UnicodeUtil;
+import org.es.ngram.index.analysis.EdgeNGramAnalyzer;
+import org.es.ngram.index.analysis.GramTermAttributeImpl;
+import org.es.ngram.index.analysis.NGramAnalyzer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @author yida
+ * @package org.es.ngram.test
+ * @date 2024-07-18 10:10
+ * @description Checks that the UTF-8 slices the gram filters hand to the indexer are the bytes
+ * UnicodeUtil encodes for the char term of every gram.
+ */
+public class GramTermAttributeTest {
+	public static void main(String[] args) throws IOException {
+		Random random = new Random(42);
+		checkEncodeUTF8(random);
+		Analyzer[] analyzers = {
+				NGramAnalyzer.builder().minGram(1).maxGram(3).build(),
+				NGramAnalyzer.builder().minGram(2).maxGram(4).keepOrignalTerm(true).build(),
+				NGramAnalyzer.builder().minGram(1).maxGram(2).dedupeMaxGrams(4096).build(),
+				EdgeNGramAnalyzer.builder().minGram(1).maxGram(5).build(),
+				EdgeNGramAnalyzer.builder().minGram(2).maxGram(3).keepOrignalTerm(true).dedupeMaxGrams(4096).build()
+		};
+		int grams = 0;
+		int slices = 0;
+		for (int iter = 0; iter < 3000; iter++) {
+			String text = randomText(random, 40);
+			for (Analyzer analyzer : analyzers) {
+				try (TokenStream stream = analyzer.tokenStream("field", text)) {
+					CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+					TermToBytesRefAttribute bytesAtt = stream.addAttribute(TermToBytesRefAttribute.class);
+					if (!(bytesAtt instanceof GramTermAttributeImpl)) {
+						throw new AssertionError("the analyzer does not install GramTermAttributeImpl");
+					}
+					stream.reset();
+					while (stream.incrementToken()) {
+						BytesRef actual = bytesAtt.getBytesRef();
+						BytesRef expected = new BytesRef(termAtt);
+						if (!actual.bytesEquals(expected)) {
+							throw new AssertionError("gram [" + termAtt + "] of [" + text + "] is indexed as " + actual + ", expected " + expected);
+						}
+						if (actual.offset > 0) {
+							slices++;
+						}
+						grams++;
+					}
+					stream.end();
+				}
+			}
+		}
+		if (slices == 0) {
+			throw new AssertionError("no gram was handed over as a slice");
+		}
+		System.out.println(grams + " grams, " + slices + " of them slices past the first byte, match UnicodeUtil");
+	}
+
+	/**
+	 * encodeUTF8 against UnicodeUtil, unpaired surrogates included, and its code point offsets
+	 * against the encoding of every prefix.
+	 */
+	private static void checkEncodeUTF8(Random random) {
+		for (int iter = 0; iter < 5000; iter++) {
+			char[] chars = randomText(random, 60).toCharArray();
+			byte[] out = new byte[3 * chars.length];
+			int[] offsets = new int[chars.length + 1];
+			int length = GramTermAttributeImpl.encodeUTF8(chars, chars.length, out, offsets);
+			byte[] expected = new byte[UnicodeUtil.maxUTF8Length(chars.length)];
+			int expectedLength = UnicodeUtil.UTF16toUTF8(chars, 0, chars.length, expected);
+			if (length != expectedLength || !Arrays.equals(Arrays.copyOf(out, length), Arrays.copyOf(expected, expectedLength))) {
+				throw new AssertionError("encodeUTF8 of " + Arrays.toString(chars) + " differs from UnicodeUtil");
+			}
+			int codePoint = 0;
+			for (int i = 0; i <= chars.length; codePoint++) {
+				int prefixLength = UnicodeUtil.UTF16toUTF8(chars, 0, i, expected);
+				if (offsets[codePoint] != prefixLength) {
+					throw new AssertionError("code point " + codePoint + " of " + Arrays.toString(chars) + " starts at byte "
+							+ offsets[codePoint] + ", expected " + prefixLength);
+				}
+				if (i == chars.length) {
+					break;
+				}
+				i += Character.isHighSurrogate(chars[i]) && i + 1 < chars.length && Character.isLowSurrogate(chars[i + 1]) ? 2 : 1;
+			}
+		}
+	}
+
+	private static String randomText(Random random, int maxLength) {
+		StringBuilder builder = new StringBuilder();
+		int length = random.nextInt(maxLength);
+		for (int i = 0; i < length; i++) {
+			int kind = random.nextInt(10);
+			if (kind < 2) {
+				builder.append(' ');
+			} else if (kind < 4) {
+				builder.append((char) ('a' + random.nextInt(26)));
+			} else if (kind < 5) {
+				// Latin-1 and Greek, two bytes
+				builder.append((char) (0xE0 + random.nextInt(0x300)));
+			} else if (kind < 8) {
+				builder.append((char) (0x4E00 + random.nextInt(0x51A6)));
+			} else if (kind < 9) {
+				// emoji, a surrogate pair
+				builder.appendCodePoint(0x1F600 + random.nextInt(80));
+			} else {
+				// unpaired surrogate
+				builder.append((char) (0xD800 + random.nextInt(0x800)));
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,151 @@
+package org.es.ngram.test;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.es.ngram.index.analysis.HybridScriptTokenizer;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author yida
+ * @package org.es.ngram.test
+ * @date 2024-07-18 14:40
+ * @description Checks the grams, positions and offsets of HybridScriptTokenizer against a direct
+ * windowing of every CJK run and word of random mixed script text.
+ */
+public class HybridScriptTokenizerTest {
+	public static void main(String[] args) throws IOException {
+		Random random = new Random(42);
+		int tokens = 0;
+		for (int iter = 0; iter < 3000; iter++) {
+			int minGram = 1 + random.nextInt(3);
+			int maxGram = minGram + random.nextInt(3);
+			String text = randomText(random);
+			List<String> expected = expectedTokens(text, minGram, maxGram);
+			List<String> actual = new ArrayList<>();
+			try (TokenStream tokenizer = tokenizer(text, minGram, maxGram)) {
+				CharTermAttribute termAtt = tokenizer.addAttribute(CharTermAttribute.class);
+				OffsetAttribute offsetAtt = tokenizer.addAttribute(OffsetAttribute.class);
+				PositionIncrementAttribute posIncAtt = tokenizer.addAttribute(PositionIncrementAttribute.class);
+				TypeAttribute typeAtt = tokenizer.addAttribute(TypeAttribute.class);
+				tokenizer.reset();
+				while (tokenizer.incrementToken()) {
+					String term = termAtt.toString();
+					if (!term.equals(text.substring(offsetAtt.startOffset(), offsetAtt.endOffset()))) {
+						throw new AssertionError("token [" + term + "] does not match its offsets "
+								+ offsetAtt.startOffset() + "-" + offsetAtt.endOffset() + " in [" + text + "]");
+					}
+					actual.add(token(term, offsetAtt.startOffset(), posIncAtt.getPositionIncrement(), typeAtt.type()));
+				}
+				tokenizer.end();
+				if (offsetAtt.endOffset() != text.length()) {
+					throw new AssertionError("final offset " + offsetAtt.endOffset() + ", expected " + text.length());
+				}
+			}
+			if (!expected.equals(actual)) {
+				throw new AssertionError("grams " + minGram + "-" + maxGram + " of [" + text + "] are " + actual + ", expected " + expected);
+			}
+			tokens += actual.size();
+		}
+		System.out.println(tokens + " tokens match their runs");
+	}
+
+	private static TokenStream tokenizer(String text, int minGram, int maxGram) {
+		HybridScriptTokenizer tokenizer = new HybridScriptTokenizer(TokenStream.DEFAULT_TOKEN_ATTRIBUTE_FACTORY, minGram, maxGram, false,
+				HybridScriptTokenizer.DEFAULT_WORD_MIN_GRAM, HybridScriptTokenizer.DEFAULT_WORD_MAX_GRAM, HybridScriptTokenizer.DEFAULT_MAX_TOKEN_LENGTH);
+		tokenizer.setReader(new StringReader(text));
+		return tokenizer;
+	}
+
+	/**
+	 * Splits the text into runs of CJK code points and of ASCII letters and digits. Words are kept
+	 * whole; a CJK run yields the grams of every size starting at each code point, the first one
+	 * taking a new position, or itself if shorter than minGram.
+	 */
+	private static List<String> expectedTokens(String text, int minGram, int maxGram) {
+		List<String> tokens = new ArrayList<>();
+		int i = 0;
+		while (i < text.length()) {
+			int codePoint = text.codePointAt(i);
+			if (isWord(codePoint)) {
+				int end = i;
+				while (end < text.length() && isWord(text.charAt(end))) {
+					end++;
+				}
+				tokens.add(token(text.substring(i, end), i, 1, HybridScriptTokenizer.WORD_TYPE));
+				i = end;
+			} else if (isCjk(codePoint)) {
+				List<Integer> starts = new ArrayList<>();
+				int end = i;
+				while (end < text.length() && isCjk(text.codePointAt(end))) {
+					starts.add(end);
+					end += Character.charCount(text.codePointAt(end));
+				}
+				starts.add(end);
+				int count = starts.size() - 1;
+				if (count < minGram) {
+					tokens.add(token(text.substring(i, end), i, 1, HybridScriptTokenizer.CJK_TYPE));
+				}
+				for (int start = 0; start + minGram <= count; start++) {
+					for (int size = minGram; size <= maxGram && start + size <= count; size++) {
+						tokens.add(token(text.substring(starts.get(start), starts.get(start + size)), starts.get(start),
+								size == minGram ? 1 : 0, HybridScriptTokenizer.CJK_TYPE));
+					}
+				}
+				i = end;
+			} else {
+				i += Character.charCount(codePoint);
+			}
+		}
+		return tokens;
+	}
+
+	private static String token(String term, int startOffset, int positionIncrement, String type) {
+		return term + "@" + startOffset + "+" + positionIncrement + ":" + type;
+	}
+
+	private static boolean isWord(int codePoint) {
+		return codePoint < 0x80 && Character.isLetterOrDigit(codePoint);
+	}
+
+	private static boolean isCjk(int codePoint) {
+		return codePoint >= 0x4E00 && codePoint <= 0x9FA5
+				|| codePoint >= 0x3041 && codePoint <= 0x3096
+				|| codePoint >= 0xAC00 && codePoint <= 0xD7A3
+				|| codePoint >= 0x20000 && codePoint <= 0x2A6D6;
+	}
+
+	private static String randomText(Random random) {
+		StringBuilder builder = new StringBuilder();
+		// now and then longer than the read buffer of the tokenizer
+		int length = random.nextInt(random.nextInt(10) == 0 ? 3000 : 40);
+		for (int i = 0; i < length; i++) {
+			int kind = random.nextInt(12);
+			if (kind < 2) {
+				builder.append(' ');
+			} else if (kind < 3) {
+				// ideographic full stop and comma
+				builder.append(random.nextBoolean() ? '\u3002' : '\u3001');
+			} else if (kind < 5) {
+				builder.append((char) ('a' + random.nextInt(26)));
+			} else if (kind < 9) {
+				builder.append((char) (0x4E00 + random.nextInt(0x51A6)));
+			} else if (kind < 10) {
+				builder.append((char) (0x3041 + random.nextInt(0x56)));
+			} else if (kind < 11) {
+				builder.append((char) (0xAC00 + random.nextInt(0x2BA4)));
+			} else {
+				// CJK extension B, a surrogate pair
+				builder.appendCodePoint(0x20000 + random.nextInt(0xA6D7));
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,55 @@
+package org.es.ngram.test;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.es.ngram.index.analysis.NGramAnalyzer;
+import org.es.ngram.index.analysis.STConvertType;
+import org.es.ngram.index.query.NGramSubstringQueryBuilder;
+
+import java.io.IOException;
+
+/**
+ * @author yida
+ * @package org.es.ngram.test
+ * @date 2024-06-29 18:02
+ * @description Type your description over here.
+ */
+public class NGramSubstringQueryTest {
+	public static void main(String[] args) throws IOException {
+		String[] texts = {"elasticsearch plugin", "lucene search library", "research on search engines", "searching"};
+		NGramAnalyzer analyzer = new NGramAnalyzer(2, 4, false, STConvertType.TRADITIONAL_2_SIMPLE);
+		FieldType fieldType = new FieldType(TextField.TYPE_STORED);
+		fieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+		fieldType.freeze();
+		Directory directory = new ByteBuffersDirectory();
+		try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(analyzer))) {
+			for (String text : texts) {
+				Document document = new Document();
+				document.add(new Field("title", text, fieldType));
+				writer.addDocument(document);
+			}
+		}
+		try (DirectoryReader reader = DirectoryReader.open(directory)) {
+			IndexSearcher searcher = new IndexSearcher(reader);
+			for (String text : new String[] {"search", "earch plug", "sea", "ticsear", "hcraes"}) {
+				Query query = NGramSubstringQueryBuilder.buildQuery(analyzer, reader, "title", text);
+				System.out.println("[" + text + "] => " + query);
+				for (ScoreDoc scoreDoc : searcher.search(query, 10).scoreDocs) {
+					System.out.println("\t" + searcher.doc(scoreDoc.doc).get("title"));
+				}
+			}
+		}
+		analyzer.close();
+	}
+}
@@ -0,0 +1,42 @@
+package org.es.ngram.test;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.util.AttributeFactory;
+import org.es.ngram.index.analysis.NGramTokenizer;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * @author yida
+ * @package org.es.ngram.test
+ * @date 2024-06-26 11:08
+ * @description Type your description over here.
+ */
+public class NGramTokenizerTest {
+	public static void main(String[] args) throws IOException {
+		StringBuilder stringBuilder = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			stringBuilder.append("lucene ");
+		}
+		stringBuilder.append("elasticsearch");
+		String text = stringBuilder.toString();
+
+		NGramTokenizer tokenizer = new NGramTokenizer(AttributeFactory.DEFAULT_ATTRIBUTE_FACTORY, 2, 3);
+		CharTermAttribute termAtt = tokenizer.addAttribute(CharTermAttribute.class);
+		OffsetAttribute offsetAtt = tokenizer.addAttribute(OffsetAttribute.class);
+		tokenizer.setReader(new StringReader(text));
+		tokenizer.reset();
+		int count = 0;
+		String lastTerm = null;
+		while (tokenizer.incrementToken()) {
+			count++;
+			lastTerm = "[" + termAtt.toString() + "]:(" + offsetAtt.startOffset() + "-->" + offsetAtt.endOffset() + ")";
+		}
+		tokenizer.end();
+		System.out.println("input length:" + text.length() + ", grams:" + count + ", last gram:" + lastTerm
+				+ ", final offset:" + offsetAtt.endOffset());
+		tokenizer.close();
+	}
+}
@@ -0,0 +1,134 @@
+package org.es.ngram.test;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.es.ngram.index.analysis.NormalizingCharFilter;
+import org.es.ngram.index.analysis.STConvertType;
+import org.es.ngram.index.analysis.STConverter;
+import org.es.ngram.utils.CharClassTable;
+import org.es.ngram.utils.DoubleArrayTrie;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author yida
+ * @package org.es.ngram.test
+ * @date 2024-07-16 10:20
+ * @description Checks the offset corrections of NormalizingCharFilter: the original text between
+ * the corrected offsets of every token must normalize to the token itself. With keep sets that
+ * leave out some conversion outputs, the text must also normalize to its conversion with the chars
+ * outside the set dropped.
+ */
+public class NormalizingCharFilterTest {
+	/** traditional chars with a t2s conversion */
+	private static final String TRADITIONAL = "漢語轉換繁體簡體髮發後麵麪臺"
+			+ "灣遊標電腦軟體資訊萬與專業叢東絲兩嚴喪"
+			+ "個臨為麗舉麼義烏樂";
+	/** chars outside the kept classes, some of them lowercasing to more than one char */
+	private static final String DROPPED = "!,.-_·　Àİ";
+
+	public static void main(String[] args) throws IOException {
+		DoubleArrayTrie trie = STConverter.getInstance().trie(STConvertType.TRADITIONAL_2_SIMPLE);
+		// traditional and simplified guo jia, of which only jia is kept
+		CharClassTable jia = CharClassTable.compile(Arrays.asList("a-z", "U+5BB6"));
+		String guoJia = normalize(new NormalizingCharFilter(new StringReader("\u570B\u5BB6 \u56FD\u5BB6"), true, trie, jia, null));
+		if (!guoJia.equals("\u5BB6 \u5BB6")) {
+			throw new AssertionError("converted chars skip the keep set: [" + guoJia + "]");
+		}
+		Random random = new Random(42);
+		int tokens = 0;
+		tokens += checkOffsets(random, trie, CharClassTable.compile(Arrays.asList("a-z", "0-9", "U+4E00-U+9FA5")));
+		for (List<String> specs : Arrays.asList(Arrays.asList("a-z"), Arrays.asList("a-z", "0-9", "U+4E00-U+6FFF"))) {
+			CharClassTable keepChars = CharClassTable.compile(specs);
+			tokens += checkOffsets(random, trie, keepChars);
+			checkConvertedThenKept(random, trie, keepChars);
+		}
+		System.out.println("offsets of " + tokens + " tokens map back to their text");
+	}
+
+	/**
+	 * Filtering with keepChars must equal converting without it, then dropping the chars outside
+	 * keepChars except whitespace.
+	 */
+	private static void checkConvertedThenKept(Random random, DoubleArrayTrie trie, CharClassTable keepChars) throws IOException {
+		for (int iter = 0; iter < 3000; iter++) {
+			String text = randomText(random);
+			String converted = normalize(new NormalizingCharFilter(new StringReader(text), true, trie, null, null));
+			StringBuilder expected = new StringBuilder();
+			converted.codePoints().filter(cp -> Character.isWhitespace(cp) || keepChars.contains(cp)).forEach(expected::appendCodePoint);
+			String actual = normalize(new NormalizingCharFilter(new StringReader(text), true, trie, keepChars, null));
+			if (!actual.equals(expected.toString())) {
+				throw new AssertionError("[" + text + "] normalizes to [" + actual + "], expected [" + expected + "]");
+			}
+		}
+	}
+
+	private static int checkOffsets(Random random, DoubleArrayTrie trie, CharClassTable keepChars) throws IOException {
+		int tokens = 0;
+		for (int iter = 0; iter < 3000; iter++) {
+			String text = randomText(random);
+			Tokenizer tokenizer = new WhitespaceTokenizer();
+			tokenizer.setReader(new NormalizingCharFilter(new StringReader(text), true, trie, keepChars, null));
+			CharTermAttribute termAtt = tokenizer.addAttribute(CharTermAttribute.class);
+			OffsetAttribute offsetAtt = tokenizer.addAttribute(OffsetAttribute.class);
+			tokenizer.reset();
+			while (tokenizer.incrementToken()) {
+				String original = text.substring(offsetAtt.startOffset(), offsetAtt.endOffset());
+				String normalized = normalize(new NormalizingCharFilter(new StringReader(original), true, trie, keepChars, null));
+				if (!normalized.equals(termAtt.toString())) {
+					throw new AssertionError("token [" + termAtt + "] at [" + offsetAtt.startOffset() + "-" + offsetAtt.endOffset()
+							+ "] of [" + text + "] maps back to [" + original + "], which normalizes to [" + normalized + "]");
+				}
+				tokens++;
+			}
+			tokenizer.end();
+			tokenizer.close();
+		}
+		return tokens;
+	}
+
+	private static String normalize(Reader reader) throws IOException {
+		StringBuilder builder = new StringBuilder();
+		// small reads, so the filter is drained in several calls
+		char[] buffer = new char[7];
+		int read;
+		while ((read = reader.read(buffer)) != -1) {
+			builder.append(buffer, 0, read);
+		}
+		return builder.toString();
+	}
+
+	private static String randomText(Random random) {
+		StringBuilder builder = new StringBuilder();
+		// now and then longer than the window of the filter
+		int length = random.nextInt(random.nextInt(10) == 0 ? 5000 : 60);
+		for (int i = 0; i < length; i++) {
+			int kind = random.nextInt(10);
+			if (kind < 2) {
+				builder.append(' ');
+			} else if (kind < 4) {
+				builder.append((char) ('A' + random.nextInt(26)));
+			} else if (kind < 5) {
+				builder.append((char) ('a' + random.nextInt(26)));
+			} else if (kind < 7) {
+				builder.append(TRADITIONAL.charAt(random.nextInt(TRADITIONAL.length())));
+			} else if (kind < 8) {
+				// any ideograph, traditional or simplified
+				builder.append((char) (0x4E00 + random.nextInt(0x51A6)));
+			} else if (kind < 9) {
+				// Deseret, a supplementary script with case
+				builder.appendCodePoint(0x10400 + random.nextInt(80));
+			} else {
+				builder.append(DROPPED.charAt(random.nextInt(DROPPED.length())));
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,25 @@
+package org.es.ngram.test;
+
+import org.es.ngram.index.analysis.STConvertType;
+import org.es.ngram.index.analysis.STConverter;
+
+/**
+ * @author yida
+ * @package org.es.ngram.test
+ * @date 2024-06-20 16:35
+ * @description Type your description over here.
+ */
+public class STConverterTest {
+	public static void main(String[] args) {
+		STConverter converter = STConverter.getInstance();
+		String traditional = "\u570B\u969B\u96FB\u8166\u5DE5\u7A0B\u5E2B3\u5929\u5F8C\u4E0A\u73ED";
+		String simple = converter.convert(STConvertType.TRADITIONAL_2_SIMPLE, traditional);
+		System.out.println("t2s:" + simple);
+		System.out.println("s2t:" + converter.convert(STConvertType.SIMPLE_2_TRADITIONAL, simple));
+
+		char[] src = traditional.toCharArray();
+		char[] dest = new char[converter.maxConvertedLength(STConvertType.TRADITIONAL_2_SIMPLE, src.length)];
+		int length = converter.convert(STConvertType.TRADITIONAL_2_SIMPLE, src, 0, src.length, dest, 0);
+		System.out.println("char[] t2s:" + new String(dest, 0, length) + ", equals:" + simple.equals(new String(dest, 0, length)));
+	}
+}